@@ -0,0 +1,141 @@
+package com.itheima.a01;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    运行时多个线程同时 getBean: 全局锁 vs 按 bean 加锁
+ */
+public class A01_1 {
+
+    private static final int THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ConcurrentSingletonBeanFactory.class)).setLevel(Level.INFO);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 8 个线程各自触发一个 lazy 单例(构造耗时 100ms)");
+        for (int round = 1; round <= 2; round++) {
+            System.out.printf("全局锁: %d ms, 按 bean 加锁: %d ms%n",
+                    createLazy(pool, new DefaultListableBeanFactory()), createLazy(pool, new ConcurrentSingletonBeanFactory()));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 8 个线程反复 getBean 已创建好的单例");
+        for (int round = 1; round <= 2; round++) {
+            System.out.printf("全局锁: 每秒 %d 次, 按 bean 加锁: 每秒 %d 次%n",
+                    readCompleted(pool, new DefaultListableBeanFactory()), readCompleted(pool, new ConcurrentSingletonBeanFactory()));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 两个线程同时从循环依赖的两端开始创建");
+        ConcurrentSingletonBeanFactory beanFactory = new ConcurrentSingletonBeanFactory();
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.registerBean("a", A.class, bd -> bd.setLazyInit(true));
+        context.registerBean("b", B.class, bd -> bd.setLazyInit(true));
+        context.refresh();
+        CountDownLatch ready = new CountDownLatch(1);
+        Future<A> a = pool.submit(() -> { ready.await(); return context.getBean(A.class); });
+        Future<B> b = pool.submit(() -> { ready.await(); return context.getBean(B.class); });
+        ready.countDown();
+        System.out.println(a.get() + " " + b.get() + ", " + beanFactory.getLockStatistics());
+        System.out.println("a.b == b: " + (a.get().b == b.get()) + ", b.a == a: " + (b.get().a == a.get()));
+        context.close();
+        pool.shutdown();
+
+        /*
+            学到了什么
+                a. 已创建好的单例在 singletonObjects(ConcurrentHashMap) 中, 本来就不加锁, 两者读取速度相同
+                b. 原来创建单例时整个过程持有全局锁, 不同的 lazy 单例也只能排队创建
+                c. 按 bean 加锁后, 别的线程不能拿到提前暴露的半成品, 只能等这个 bean 创建完
+                d. 依赖无环时按 bean 加锁不会死锁; 循环依赖被两个线程从两端同时创建时, 需要一方让步重试
+         */
+    }
+
+    private static long createLazy(ExecutorService pool, DefaultListableBeanFactory beanFactory) throws Exception {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        for (int i = 0; i < THREADS; i++) {
+            context.registerBean("slow" + i, Slow.class, bd -> bd.setLazyInit(true));
+        }
+        context.refresh();
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            String name = "slow" + i;
+            futures.add(pool.submit(() -> context.getBean(name)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long cost = (System.nanoTime() - start) / 1_000_000;
+        context.close();
+        return cost;
+    }
+
+    private static long readCompleted(ExecutorService pool, DefaultListableBeanFactory beanFactory) throws Exception {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.registerBean("plain", Plain.class);
+        context.refresh();
+        LongAdder count = new LongAdder();
+        long start = System.nanoTime();
+        long end = start + 500_000_000L;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(pool.submit(() -> {
+                while (System.nanoTime() < end) {
+                    context.getBean("plain");
+                    count.increment();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        context.close();
+        return count.sum() * 1_000_000_000L / (System.nanoTime() - start);
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class Slow {
+        Slow() {
+            sleep(100);
+        }
+    }
+
+    static class Plain {
+    }
+
+    static class A {
+        @Autowired
+        B b;
+
+        A() {
+            sleep(50); // 让两个线程都在创建中
+        }
+    }
+
+    static class B {
+        @Autowired
+        A a;
+
+        B() {
+            sleep(50);
+        }
+    }
+}
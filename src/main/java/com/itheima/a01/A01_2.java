@@ -0,0 +1,96 @@
+package com.itheima.a01;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/*
+    懒加载 + 按上次访问统计排序的后台预热
+ */
+public class A01_2 {
+
+    private static final AtomicInteger created = new AtomicInteger();
+
+    public static void main(String[] args) throws IOException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ConcurrentSingletonBeanFactory.class)).setLevel(Level.INFO);
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(WarmUpBeanFactory.class)).setLevel(Level.DEBUG);
+        Path stats = Paths.get(System.getProperty("java.io.tmpdir"), "a01-warm-up.stats");
+        Files.deleteIfExists(stats);
+
+        run("预热 JVM", new DefaultListableBeanFactory(), true);
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 启动后 150ms 收到第一个请求, 需要 s7、s6");
+        run("全部提前创建", null, false);
+        run("懒加载(step6.properties)", new DefaultListableBeanFactory(), true);
+        run("懒加载 + 预热, 无统计", new WarmUpBeanFactory(stats), true);
+        System.out.println("记录下的访问统计: " + Files.readAllLines(stats).stream().filter(line -> !line.startsWith("#")).collect(Collectors.toList()));
+        run("懒加载 + 预热, 按统计", new WarmUpBeanFactory(stats), true);
+
+        /*
+            学到了什么
+                a. 懒加载把 bean 的创建时间从启动转移到了第一次使用, 总量不变
+                b. refresh 结束后立刻可以接收请求, 后台线程把剩下的单例补齐, 请求越晚到达, 遇到的未创建 bean 越少
+                c. 上次启动后先被用到的 bean 先预热; 请求要的 bean 正在预热时, 按 bean 加锁让请求等它, 不会创建两次
+         */
+    }
+
+    private static void run(String mode, @Nullable DefaultListableBeanFactory beanFactory, boolean lazy) throws IOException {
+        created.set(0);
+        SpringApplication application = new SpringApplication(A01_2.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        application.setLogStartupInfo(false);
+        Properties properties = lazy ? PropertiesLoaderUtils.loadAllProperties("step6.properties") : new Properties();
+        properties.setProperty("spring.main.banner-mode", "off");
+        application.setDefaultProperties(properties);
+        if (beanFactory != null) {
+            application.setApplicationContextFactory(type -> new AnnotationConfigApplicationContext(beanFactory));
+        }
+        application.addInitializers(context -> {
+            for (int i = 0; i < 8; i++) {
+                String name = "s" + i;
+                ((GenericApplicationContext) context).registerBean(name, Service.class, () -> new Service(name));
+            }
+        });
+
+        long start = System.nanoTime();
+        ConfigurableApplicationContext context = application.run();
+        long started = System.nanoTime();
+        sleep(150); // 启动之后的其它准备工作
+        long requestStart = System.nanoTime();
+        context.getBean("s7");
+        context.getBean("s6");
+        long requestEnd = System.nanoTime();
+        context.close();
+        System.out.printf("%-20s 启动 %4d ms, 第一个请求 %4d ms, 共创建 %d 个 Service%n", mode,
+                (started - start) / 1_000_000, (requestEnd - requestStart) / 1_000_000, created.get());
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class Service {
+        Service(String name) {
+            sleep(100);
+            created.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.itheima.a01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationNotAllowedException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanCurrentlyInCreationException;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.FactoryBeanNotInitializedException;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.NullBeans;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 按 bean 加锁创建单例的 BeanFactory
+ * <p>
+ * DefaultSingletonBeanRegistry 创建单例时, 整个创建过程都持有 singletonObjects 这把全局锁:
+ * 运行时多个线程各自触发不同的 lazy 单例, 也只能一个一个地创建; 其它线程查询正在创建的 bean 时同样要等这把锁.
+ * 已创建完成的单例本来就是无锁读取(singletonObjects 是 ConcurrentHashMap), 这里保持不变
+ * <p>
+ * 这里改为每个 bean 一把锁, 不同 bean 可以并行创建:
+ * <ul>
+ *     <li>别的线程正在创建的 bean 只返回完整的对象, 不返回提前暴露的引用(那是给创建线程自己解决循环依赖用的),
+ *     拿不到就去等这个 bean 的锁</li>
+ *     <li>依赖关系无环时, 按 bean 加锁不会死锁; 两个线程分别从循环依赖的两端开始创建时, 嵌套等待前检查等待链,
+ *     成环则让环中线程 id 最大的那个放弃本次创建(抛出 CreationDeadlockException), 它在最外层等对方创建完后重试.
+ *     重试会再次执行被放弃的 bean 的构造方法</li>
+ *     <li>单例 FactoryBean 的 getObject 同样按 FactoryBean 加锁, 不同 FactoryBean 的产品可以并行创建, 每个产品仍只创建一次;
+ *     产品的锁与 bean 的锁参与同一个等待链检查. 创建耗时见 {@link #getProductCreationTimes()}</li>
+ * </ul>
+ */
+public class ConcurrentSingletonBeanFactory extends DefaultListableBeanFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentSingletonBeanFactory.class);
+
+    private final Map<String, CreationLock> locks = new ConcurrentHashMap<>();
+
+    // 正在创建的 bean -> 创建它的线程
+    private final Map<String, Thread> creators = new ConcurrentHashMap<>();
+
+    // 线程 -> 它正在等待的锁, 用来检查等待链是否成环
+    private final Map<Thread, CreationLock> waiting = new ConcurrentHashMap<>();
+
+    // 单例 FactoryBean 的产品, 代替父类私有的 factoryBeanObjectCache
+    private final Map<String, Object> products = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> productCreationNanos = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Deque<CreationLock>> held = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private volatile boolean destroying;
+
+    private final LongAdder contended = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    @Override
+    @Nullable
+    protected Object getSingleton(String beanName, boolean allowEarlyReference) {
+        // 不提前暴露时父类只查 singletonObjects 和已有的提前引用, 不加锁
+        Object singleton = super.getSingleton(beanName, false);
+        // 没有 bean 正在创建时(运行时的常态)不再多查一次
+        Thread creator = creators.isEmpty() ? null : creators.get(beanName);
+        if (creator != null && creator != Thread.currentThread()) {
+            return null; // 别的线程的半成品, 由调用方走 getSingleton(beanName, singletonFactory), 在那里等锁
+        }
+        if (singleton != null || !allowEarlyReference) {
+            return singleton;
+        }
+        return super.getSingleton(beanName, true);
+    }
+
+    @Override
+    public Object getSingleton(String beanName, ObjectFactory<?> singletonFactory) {
+        Assert.notNull(beanName, "Bean name must not be null");
+        return locked(beanName, () -> containsSingleton(beanName) ? super.getSingleton(beanName, false) : null,
+                () -> create(beanName, singletonFactory));
+    }
+
+    /**
+     * 持有 key 对应的锁执行 creator; existing 在加锁前后各查一次, 已有结果就不再创建
+     */
+    private Object locked(String key, Supplier<Object> existing, Supplier<Object> creator) {
+        boolean outermost = held.get().isEmpty();
+        while (true) {
+            Object object = existing.get();
+            if (object != null) {
+                return object;
+            }
+            CreationLock lock = locks.computeIfAbsent(key, CreationLock::new);
+            acquire(lock);
+            CreationLock conflict = null;
+            held.get().push(lock);
+            try {
+                object = existing.get(); // 等锁期间已被别的线程创建好
+                return object != null ? object : creator.get();
+            } catch (BeansException ex) {
+                CreationDeadlockException deadlock = outermost ? findDeadlock(ex) : null;
+                if (deadlock == null) {
+                    throw ex;
+                }
+                conflict = deadlock.lock;
+            } finally {
+                held.get().pop();
+                lock.unlock();
+            }
+            // 已释放本线程持有的所有锁, 等对方创建完再重试
+            log.debug("创建 {} 时与其它线程互相等待, 等 {} 创建完后重试", key, conflict.beanName);
+            retries.increment();
+            conflict.lock();
+            conflict.unlock();
+        }
+    }
+
+    private Object create(String beanName, ObjectFactory<?> singletonFactory) {
+        if (destroying) {
+            throw new BeanCreationNotAllowedException(beanName,
+                    "Singleton bean creation not allowed while singletons of this factory are in destruction " +
+                    "(Do not request a bean from a BeanFactory in a destroy method implementation!)");
+        }
+        creators.put(beanName, Thread.currentThread());
+        try {
+            beforeSingletonCreation(beanName);
+            Object singleton;
+            try {
+                singleton = singletonFactory.getObject();
+            } catch (IllegalStateException ex) {
+                // 与父类一样: 单例在此期间已经出现, 就用它
+                if (containsSingleton(beanName)) {
+                    return super.getSingleton(beanName, false);
+                }
+                throw ex;
+            } finally {
+                afterSingletonCreation(beanName);
+            }
+            addSingleton(beanName, singleton);
+            return singleton;
+        } finally {
+            creators.remove(beanName);
+        }
+    }
+
+    @Override
+    @Nullable
+    protected Object getCachedObjectForFactoryBean(String beanName) {
+        Object object = products.get(beanName);
+        return object != null ? object : super.getCachedObjectForFactoryBean(beanName);
+    }
+
+    // 单例 FactoryBean 的产品: 父类在全局锁内调用 getObject, 这里改为每个 FactoryBean 一把锁(与 bean 的锁在同一张等待图中)
+    @Override
+    protected Object getObjectFromFactoryBean(FactoryBean<?> factory, String beanName, boolean shouldPostProcess) {
+        if (!factory.isSingleton() || !containsSingleton(beanName)) {
+            return super.getObjectFromFactoryBean(factory, beanName, shouldPostProcess); // 父类对非单例本来就不加锁
+        }
+        return locked(FACTORY_BEAN_PREFIX + beanName, () -> getCachedObjectForFactoryBean(beanName),
+                () -> createProduct(factory, beanName, shouldPostProcess));
+    }
+
+    // 与父类的 getObjectFromFactoryBean 相同, 只是缓存换成了 products
+    private Object createProduct(FactoryBean<?> factory, String beanName, boolean shouldPostProcess) {
+        long start = System.nanoTime();
+        Object object;
+        try {
+            object = factory.getObject();
+        } catch (FactoryBeanNotInitializedException ex) {
+            throw new BeanCurrentlyInCreationException(beanName, ex.toString());
+        } catch (Throwable ex) {
+            throw new BeanCreationException(beanName, "FactoryBean threw exception on object creation", ex);
+        }
+        if (object == null) {
+            if (isSingletonCurrentlyInCreation(beanName)) {
+                throw new BeanCurrentlyInCreationException(
+                        beanName, "FactoryBean which is currently in creation returned null from getObject");
+            }
+            object = NullBeans.create(); // 与父类一样用 NullBean 代替 null, 同样缓存
+        }
+        // getObject 中自定义的 getBean 可能已经放进去了
+        Object alreadyThere = products.get(beanName);
+        if (alreadyThere != null) {
+            return alreadyThere;
+        }
+        if (shouldPostProcess) {
+            if (isSingletonCurrentlyInCreation(beanName)) {
+                return object; // 暂时返回未经后处理的对象, 也不缓存
+            }
+            beforeSingletonCreation(beanName);
+            try {
+                object = postProcessObjectFromFactoryBean(object, beanName);
+            } catch (Throwable ex) {
+                throw new BeanCreationException(beanName, "Post-processing of FactoryBean's singleton object failed", ex);
+            } finally {
+                afterSingletonCreation(beanName);
+            }
+        }
+        if (containsSingleton(beanName)) {
+            products.put(beanName, object);
+            long nanos = System.nanoTime() - start;
+            productCreationNanos.put(beanName, nanos);
+            log.debug("FactoryBean {} 创建产品耗时 {} ms", beanName, nanos / 1_000_000);
+        }
+        return object;
+    }
+
+    @Override
+    protected void removeSingleton(String beanName) {
+        super.removeSingleton(beanName);
+        products.remove(beanName);
+    }
+
+    @Override
+    protected void clearSingletonCache() {
+        super.clearSingletonCache();
+        products.clear();
+    }
+
+    /**
+     * 各 FactoryBean 创建产品(getObject 及后处理)的耗时, 从大到小
+     */
+    public Map<String, Duration> getProductCreationTimes() {
+        Map<String, Duration> times = new LinkedHashMap<>();
+        productCreationNanos.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(e -> times.put(e.getKey(), Duration.ofNanos(e.getValue())));
+        return times;
+    }
+
+    // 最外层(没有持有任何锁)直接等, 不会成环; 嵌套时边等边检查等待链
+    private void acquire(CreationLock lock) {
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.increment();
+        if (held.get().isEmpty()) {
+            lock.lock();
+            return;
+        }
+        Thread current = Thread.currentThread();
+        waiting.put(current, lock);
+        try {
+            while (true) {
+                List<Thread> cycle = cycle(lock);
+                if (cycle != null && isVictim(current, cycle)) {
+                    throw new CreationDeadlockException(lock);
+                }
+                if (lock.tryLock(10, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BeanCreationNotAllowedException(lock.beanName, "等待单例创建时线程被中断");
+        } finally {
+            waiting.remove(current);
+        }
+    }
+
+    // 沿着 锁 -> 持有者 -> 持有者在等的锁 走下去, 回到当前线程就是成环
+    @Nullable
+    private List<Thread> cycle(CreationLock lock) {
+        Thread current = Thread.currentThread();
+        List<Thread> chain = new ArrayList<>();
+        Set<Thread> visited = new HashSet<>();
+        Thread owner = lock.owner();
+        while (owner != null && visited.add(owner)) {
+            chain.add(owner);
+            if (owner == current) {
+                return chain;
+            }
+            CreationLock next = waiting.get(owner);
+            owner = next != null ? next.owner() : null;
+        }
+        return null;
+    }
+
+    // 环中每个线程都可能检查到同一个环, 只让 id 最大的放弃
+    private static boolean isVictim(Thread current, List<Thread> cycle) {
+        for (Thread thread : cycle) {
+            if (thread.getId() > current.getId()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static CreationDeadlockException findDeadlock(Throwable ex) {
+        while (ex != null) {
+            if (ex instanceof CreationDeadlockException) {
+                return (CreationDeadlockException) ex;
+            }
+            ex = ex.getCause();
+        }
+        return null;
+    }
+
+    // 父类在全局锁内设置销毁标记, 正在进行的创建都已结束; 这里等正在创建的 bean 结束
+    @Override
+    public void destroySingletons() {
+        destroying = true;
+        try {
+            for (String beanName : creators.keySet()) {
+                CreationLock lock = locks.get(beanName);
+                if (lock != null && !lock.isHeldByCurrentThread()) {
+                    lock.lock();
+                    lock.unlock();
+                }
+            }
+            super.destroySingletons();
+        } finally {
+            destroying = false;
+        }
+    }
+
+    public String getLockStatistics() {
+        return "contended=" + contended.sum() + ", retries=" + retries.sum();
+    }
+
+    private static class CreationLock extends ReentrantLock {
+        private final String beanName;
+
+        CreationLock(String beanName) {
+            this.beanName = beanName;
+        }
+
+        @Nullable
+        Thread owner() {
+            return getOwner();
+        }
+    }
+
+    /**
+     * 嵌套创建时等待其它线程持有的锁会成环, 本线程放弃这次创建.
+     * 不继承 BeanCurrentlyInCreationException: getBeansOfType 等会把那种异常当作"跳过该 bean"而吞掉, 最外层就无从重试
+     */
+    @SuppressWarnings("serial")
+    public static class CreationDeadlockException extends BeanCreationException {
+        private final transient CreationLock lock;
+
+        CreationDeadlockException(CreationLock lock) {
+            super(lock.beanName, "Bean '" + lock.beanName + "' is being created by another thread that waits for this thread");
+            this.lock = lock;
+        }
+    }
+}
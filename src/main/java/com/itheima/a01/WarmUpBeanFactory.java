@@ -0,0 +1,312 @@
+package com.itheima.a01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartFactoryBean;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 懒加载 + 后台预热的 BeanFactory
+ * <p>
+ * spring.main.lazy-initialization=true 让 refresh 很快结束, 但 bean 的创建都推迟到了头几个请求里.
+ * 这里在容器发布 ContextRefreshedEvent 时(refresh 成功结束, Lifecycle 已启动)启动几个后台线程, 把剩下的 lazy 单例逐个创建出来:
+ * <ul>
+ *     <li>预热顺序按上次运行记录的访问统计: 启动后越早被请求的 bean 越先预热, 没有记录的排在最后, 按注册顺序</li>
+ *     <li>请求线程要的 bean 正在被预热线程创建时, 父类的按 bean 加锁让它等这次创建完成, 不会重复创建</li>
+ *     <li>关闭时停止预热, 并把本次的访问统计合并写回文件, 供下次启动使用</li>
+ * </ul>
+ * 监听器在构造时作为单例注册进来, 容器 registerListeners 时就能找到它; 单独使用 BeanFactory 时不会预热
+ * 懒加载的开关对所有 bean 一视同仁, 这里也一样: 标注了 @Lazy 的 bean 同样会被预热
+ */
+public class WarmUpBeanFactory extends ConcurrentSingletonBeanFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUpBeanFactory.class);
+
+    private static final String STARTER_BEAN_NAME = WarmUpBeanFactory.class.getName() + ".starter";
+
+    @Nullable
+    private final Path statsFile;
+
+    private int warmUpThreads = 2;
+
+    private long recordWindowNanos = Duration.ofMinutes(1).toNanos();
+
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+    // 上次运行的统计
+    private final Map<String, AccessStats> previous = new HashMap<>();
+
+    // 本次运行的统计, 只记录请求线程的访问
+    private final Map<String, AccessStats> current = new ConcurrentHashMap<>();
+
+    private volatile long recordingSince;
+
+    private volatile boolean recorded;
+
+    private volatile boolean cancelled;
+
+    private final CountDownLatch warmedUp = new CountDownLatch(1);
+
+    private final AtomicInteger warmedUpCount = new AtomicInteger();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    /**
+     * @param statsFile 访问统计文件, 为 null 时不读写统计, 按注册顺序预热
+     */
+    public WarmUpBeanFactory(@Nullable Path statsFile) {
+        this.statsFile = statsFile;
+        if (statsFile != null && Files.exists(statsFile)) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(statsFile)) {
+                properties.load(in);
+                for (String beanName : properties.stringPropertyNames()) {
+                    previous.put(beanName, AccessStats.parse(properties.getProperty(beanName)));
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("读取访问统计 {} 失败, 按注册顺序预热", statsFile, e);
+                previous.clear();
+            }
+        }
+        registerSingleton(STARTER_BEAN_NAME, new WarmUpStarter());
+    }
+
+    public void setWarmUpThreads(int warmUpThreads) {
+        Assert.isTrue(warmUpThreads > 0, "warmUpThreads must be positive");
+        this.warmUpThreads = warmUpThreads;
+    }
+
+    /**
+     * refresh 结束后多长时间内记录访问统计, 之后的 getBean 不再有额外开销
+     */
+    public void setRecordWindow(Duration recordWindow) {
+        this.recordWindowNanos = recordWindow.toNanos();
+    }
+
+    /**
+     * 关闭时最多等预热线程多久, 超过后不再等待
+     */
+    public void setShutdownTimeout(Duration shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    private void startWarmUp() {
+        List<String> candidates = warmUpOrder();
+        recordingSince = System.nanoTime();
+        recorded = true;
+        if (candidates.isEmpty()) {
+            warmedUp.countDown();
+            return;
+        }
+        log.debug("后台预热 {} 个 lazy 单例: {}", candidates.size(), candidates);
+        Queue<String> queue = new ConcurrentLinkedQueue<>(candidates);
+        AtomicInteger running = new AtomicInteger(Math.min(warmUpThreads, candidates.size()));
+        for (int i = 0; i < running.get(); i++) {
+            Thread worker = new WarmUpThread(() -> {
+                try {
+                    String beanName;
+                    while (!cancelled && (beanName = queue.poll()) != null) {
+                        warmUp(beanName);
+                    }
+                } finally {
+                    if (running.decrementAndGet() == 0) {
+                        warmedUp.countDown();
+                    }
+                }
+            }, "warm-up-" + (i + 1));
+            synchronized (workers) {
+                if (cancelled) { // 已经在关闭
+                    warmedUp.countDown();
+                    break;
+                }
+                workers.add(worker);
+                worker.start();
+            }
+        }
+    }
+
+    // 上次被访问过的按首次访问时间排在前面, 其余按注册顺序
+    private List<String> warmUpOrder() {
+        List<String> candidates = new ArrayList<>();
+        for (String beanName : getBeanDefinitionNames()) {
+            RootBeanDefinition bd = getMergedLocalBeanDefinition(beanName);
+            if (!bd.isAbstract() && bd.isSingleton() && bd.isLazyInit() && !containsSingleton(beanName)) {
+                candidates.add(beanName);
+            }
+        }
+        Map<String, Integer> registration = new HashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            registration.put(candidates.get(i), i);
+        }
+        candidates.sort(Comparator
+                .comparingLong((String name) -> previous.containsKey(name) ? previous.get(name).firstAccessMillis : Long.MAX_VALUE)
+                .thenComparing(name -> -(previous.containsKey(name) ? previous.get(name).hits : 0L))
+                .thenComparing(registration::get));
+        return candidates;
+    }
+
+    // 与 preInstantiateSingletons 一样, FactoryBean 只创建工厂本身, 除非它要求提前创建产品
+    private void warmUp(String beanName) {
+        try {
+            if (isFactoryBean(beanName)) {
+                Object factory = getBean(FACTORY_BEAN_PREFIX + beanName);
+                if (factory instanceof SmartFactoryBean && ((SmartFactoryBean<?>) factory).isEagerInit()) {
+                    getBean(beanName);
+                }
+            } else {
+                getBean(beanName);
+            }
+            warmedUpCount.incrementAndGet();
+        } catch (BeansException e) {
+            // 预热失败不影响运行, 请求时会再次创建并把异常抛给调用方
+            if (!cancelled) {
+                log.debug("预热 {} 失败", beanName, e);
+            }
+        }
+    }
+
+    @Override
+    protected <T> T doGetBean(String name, @Nullable Class<T> requiredType, @Nullable Object[] args, boolean typeCheckOnly)
+            throws BeansException {
+        long since = recordingSince;
+        if (since != 0 && !(Thread.currentThread() instanceof WarmUpThread) && !STARTER_BEAN_NAME.equals(name)) {
+            long elapsed = System.nanoTime() - since;
+            if (elapsed < recordWindowNanos) {
+                current.computeIfAbsent(transformedBeanName(name), k -> new AccessStats(elapsed / 1_000_000)).count.increment();
+            } else {
+                recordingSince = 0; // 过了记录窗口
+            }
+        }
+        return super.doGetBean(name, requiredType, args, typeCheckOnly);
+    }
+
+    /**
+     * 等待预热结束, 返回是否在超时前结束
+     */
+    public boolean awaitWarmUp(long timeout, TimeUnit unit) throws InterruptedException {
+        return warmedUp.await(timeout, unit);
+    }
+
+    public int getWarmedUpCount() {
+        return warmedUpCount.get();
+    }
+
+    @Override
+    public void destroySingletons() {
+        List<Thread> threads;
+        synchronized (workers) {
+            cancelled = true;
+            threads = new ArrayList<>(workers);
+            workers.clear();
+        }
+        // 正在创建的 bean 创建完, 线程就会退出; 卡住的不再等, 它们是守护线程
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        for (Thread worker : threads) {
+            if (worker == Thread.currentThread()) {
+                continue;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedJoin(worker, Math.max(deadline - System.nanoTime(), 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (worker.isAlive()) {
+                log.warn("预热线程 {} 在 {} ms 内没有结束, 不再等待", worker.getName(), shutdownTimeout.toMillis());
+            }
+        }
+        super.destroySingletons();
+        saveStats();
+    }
+
+    // 本次访问过的用本次的统计, 本次没用到的保留上次的, 免得一次短暂运行冲掉积累的顺序
+    private void saveStats() {
+        if (statsFile == null || !recorded) {
+            return;
+        }
+        Properties properties = new Properties();
+        previous.forEach((beanName, stats) -> properties.setProperty(beanName, stats.toString()));
+        current.forEach((beanName, stats) -> properties.setProperty(beanName, stats.toString()));
+        try {
+            Path tmp = Files.createTempFile(statsFile.toAbsolutePath().getParent(), statsFile.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "beanName=首次访问距 refresh 结束的毫秒数,访问次数");
+            }
+            Files.move(tmp, statsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存访问统计 {} 失败", statsFile, e);
+        }
+    }
+
+    // refresh 成功结束后开始预热, 只认自己所在的容器(子容器的事件也会传给父容器的监听器)
+    private class WarmUpStarter implements ApplicationListener<ContextRefreshedEvent> {
+        @Override
+        public void onApplicationEvent(ContextRefreshedEvent event) {
+            if (event.getApplicationContext().getAutowireCapableBeanFactory() == WarmUpBeanFactory.this
+                && started.compareAndSet(false, true)) {
+                startWarmUp();
+            }
+        }
+    }
+
+    private static class WarmUpThread extends Thread {
+        WarmUpThread(Runnable task, String name) {
+            super(task, name);
+            setDaemon(true);
+        }
+    }
+
+    private static class AccessStats {
+        final long firstAccessMillis;
+        final LongAdder count = new LongAdder();
+        final long hits;
+
+        AccessStats(long firstAccessMillis) {
+            this(firstAccessMillis, 0);
+        }
+
+        AccessStats(long firstAccessMillis, long hits) {
+            this.firstAccessMillis = firstAccessMillis;
+            this.hits = hits;
+        }
+
+        static AccessStats parse(String value) {
+            int comma = value.indexOf(',');
+            return new AccessStats(Long.parseLong(value.substring(0, comma)), Long.parseLong(value.substring(comma + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return firstAccessMillis + "," + (hits + count.sum());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.itheima.a02;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.ResourceEntityResolver;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    缓存 XML 解析出的 bean 定义, 内容不变时跳过 DOM 解析和 xsd 校验
+ */
+public class A02_1 {
+
+    public static void main(String[] args) throws IOException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.springframework")).setLevel(Level.INFO);
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.itheima")).setLevel(Level.INFO);
+        Path cache = Files.createTempDirectory("xml-bean-definitions");
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. ClassPathXmlApplicationContext 换上带缓存的 reader");
+        for (int i = 1; i <= 2; i++) {
+            CachingXmlApplicationContext context = new CachingXmlApplicationContext(cache, "a02.xml");
+            context.refresh();
+            System.out.printf("第%d次 命中 %d, 未命中 %d; bean2.bean1: %s%n", i, context.reader.getCacheHits(),
+                    context.reader.getCacheMisses(), context.getBean(A02.Bean2.class).getBean1());
+            context.close();
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 3000 个 bean(属性、引用、集合、内部 bean、别名、没有 id 的 bean)的 XML");
+        Resource xml = largeXml(3000);
+        for (int round = 1; round <= 6; round++) {
+            long start = System.nanoTime();
+            DefaultListableBeanFactory plain = new DefaultListableBeanFactory();
+            new XmlBeanDefinitionReader(plain).loadBeanDefinitions(xml);
+            long plainCost = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            DefaultListableBeanFactory cached = new DefaultListableBeanFactory();
+            CachingXmlBeanDefinitionReader reader = new CachingXmlBeanDefinitionReader(cached, cache);
+            reader.loadBeanDefinitions(xml);
+            long cachedCost = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("第%d轮 解析 %d ms; 带缓存 %d ms(%s), 结果相同: %s%n", round, plainCost, cachedCost,
+                    reader.getCacheHits() > 0 ? "命中" : "未命中", describe(plain).equals(describe(cached)));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 注册表里已有同类的匿名 bean 时, 生成的名字按注册表重新编号");
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        new XmlBeanDefinitionReader(beanFactory).loadBeanDefinitions(xml);
+        new CachingXmlBeanDefinitionReader(beanFactory, cache).loadBeanDefinitions(xml);
+        List<String> generated = Arrays.stream(beanFactory.getBeanDefinitionNames()).filter(name -> name.contains("#")).toList();
+        System.out.println(generated.size() + " 个: " + generated.subList(0, 2) + " ... " + generated.subList(generated.size() - 2, generated.size()));
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 4. <context:annotation-config/> 读进已经注册过内部后处理器、不允许覆盖的 BeanFactory");
+        Resource annotationConfigXml = annotationConfigXml();
+        for (int i = 1; i <= 2; i++) {
+            DefaultListableBeanFactory plain = new DefaultListableBeanFactory();
+            plain.setAllowBeanDefinitionOverriding(false);
+            AnnotationConfigUtils.registerAnnotationConfigProcessors(plain);
+            int plainCount = new XmlBeanDefinitionReader(plain).loadBeanDefinitions(annotationConfigXml);
+
+            DefaultListableBeanFactory cached = new DefaultListableBeanFactory();
+            cached.setAllowBeanDefinitionOverriding(false);
+            AnnotationConfigUtils.registerAnnotationConfigProcessors(cached);
+            CachingXmlBeanDefinitionReader reader = new CachingXmlBeanDefinitionReader(cached, cache);
+            int cachedCount = reader.loadBeanDefinitions(annotationConfigXml);
+            System.out.printf("第%d次(%s) 解析 %d 个; 带缓存 %d 个, 结果相同: %s%n", i, reader.getCacheHits() > 0 ? "命中" : "未命中",
+                    plainCount, cachedCount, describe(plain).equals(describe(cached)));
+        }
+
+        /*
+            学到了什么
+                a. XML 的 bean 定义只取决于文件内容(包括 import 的文件)和 profile, 可以按内容摘要缓存
+                b. 解析进暂存注册表, 把 registerBeanDefinition、registerAlias 按顺序记下来, 重放时结果与直接解析相同
+                c. 没有 id 的 bean 名字与注册表已有的内容有关, 不能照搬缓存里的名字
+                d. 组件扫描的结果取决于类路径, 这种 XML 不适合按内容缓存
+                e. 命名空间处理器注册基础设施 bean 前会先看注册表, 恢复时目标中已有的基础设施 bean 要跳过
+         */
+    }
+
+    // 与父类的 loadBeanDefinitions 相同, 只是 reader 换成带缓存的
+    static class CachingXmlApplicationContext extends ClassPathXmlApplicationContext {
+        private final Path cache;
+        CachingXmlBeanDefinitionReader reader;
+
+        CachingXmlApplicationContext(Path cache, String... configLocations) {
+            super(configLocations, false, (ApplicationContext) null);
+            this.cache = cache;
+        }
+
+        @Override
+        protected void loadBeanDefinitions(DefaultListableBeanFactory beanFactory) throws IOException {
+            reader = new CachingXmlBeanDefinitionReader(beanFactory, cache);
+            reader.setEnvironment(getEnvironment());
+            reader.setResourceLoader(this);
+            reader.setEntityResolver(new ResourceEntityResolver(this));
+            initBeanDefinitionReader(reader);
+            loadBeanDefinitions(reader);
+        }
+    }
+
+    // 名字、别名和定义本身(AbstractBeanDefinition.equals 比较类名、属性值、构造参数等)
+    private static List<Object> describe(DefaultListableBeanFactory beanFactory) {
+        List<Object> result = new ArrayList<>();
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            result.add(name);
+            result.add(Arrays.asList(beanFactory.getAliases(name)));
+            result.add(beanFactory.getBeanDefinition(name));
+        }
+        return result;
+    }
+
+    private static Resource annotationConfigXml() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<beans xmlns=\"http://www.springframework.org/schema/beans\" xmlns:context=\"http://www.springframework.org/schema/context\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+                + "xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd "
+                + "http://www.springframework.org/schema/context http://www.springframework.org/schema/context/spring-context.xsd\">\n"
+                + "    <context:annotation-config/>\n"
+                + "    <bean id=\"bean1\" class=\"com.itheima.a02.A02.Bean1\"/>\n"
+                + "</beans>\n";
+        Path file = Files.createTempFile("a02-annotation-config", ".xml");
+        Files.writeString(file, xml);
+        file.toFile().deleteOnExit();
+        return new FileSystemResource(file);
+    }
+
+    private static Resource largeXml(int count) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<beans xmlns=\"http://www.springframework.org/schema/beans\" ")
+                .append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ")
+                .append("xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd\">\n");
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+                case 0:
+                    xml.append("    <bean id=\"bean").append(i).append("\" class=\"com.itheima.a02.A02.Bean1\" lazy-init=\"true\"/>\n");
+                    break;
+                case 1:
+                    xml.append("    <bean id=\"bean").append(i).append("\" name=\"b").append(i).append(",c").append(i)
+                            .append("\" class=\"com.itheima.a02.A02.Bean2\" scope=\"prototype\">\n")
+                            .append("        <property name=\"bean1\" ref=\"bean").append(i - 1).append("\"/>\n")
+                            .append("    </bean>\n");
+                    break;
+                case 2:
+                    xml.append("    <bean id=\"bean").append(i).append("\" class=\"java.util.ArrayList\" lazy-init=\"true\">\n")
+                            .append("        <constructor-arg>\n")
+                            .append("            <list>\n")
+                            .append("                <value>${user.home}</value>\n")
+                            .append("                <ref bean=\"bean").append(i - 2).append("\"/>\n")
+                            .append("                <bean id=\"inner").append(i).append("\" class=\"com.itheima.a02.A02.Bean1\"/>\n")
+                            .append("                <map><entry key=\"k\" value=\"").append(i).append("\"/></map>\n")
+                            .append("            </list>\n")
+                            .append("        </constructor-arg>\n")
+                            .append("    </bean>\n");
+                    break;
+                default:
+                    xml.append("    <bean class=\"com.itheima.a02.A02.Bean1\" lazy-init=\"true\" init-method=\"toString\"/>\n")
+                            .append("    <alias name=\"bean").append(i - 3).append("\" alias=\"alias").append(i).append("\"/>\n");
+            }
+        }
+        xml.append("</beans>\n");
+        Path file = Files.createTempFile("a02-large", ".xml");
+        Files.writeString(file, xml);
+        file.toFile().deleteOnExit();
+        return new FileSystemResource(file);
+    }
+}
@@ -0,0 +1,350 @@
+package com.itheima.a02;
+
+import com.itheima.util.BeanDefinitionCodec;
+import com.itheima.util.Fingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AnnotationAwareAspectJAutoProxyCreator;
+import org.springframework.aop.aspectj.autoproxy.AspectJAwareAdvisorAutoProxyCreator;
+import org.springframework.aop.config.AopConfigUtils;
+import org.springframework.aop.framework.autoproxy.InfrastructureAdvisorAutoProxyCreator;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.parsing.EmptyReaderEventListener;
+import org.springframework.beans.factory.parsing.ImportDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanNameGenerator;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 缓存解析结果的 XmlBeanDefinitionReader
+ * <p>
+ * 每次启动都要把 XML 解析成 DOM、按 xsd 校验, 再逐个元素生成 bean 定义. 这里把一个 XML 文件(连同它 import 的文件)
+ * 解析出的注册操作用 {@link BeanDefinitionCodec} 保存成二进制, 下次内容没变时直接解码并按原来的顺序注册, 不再运行 XML 解析器:
+ * <ul>
+ *     <li>缓存文件按资源位置命名, 文件中记录 XML 和每个被 import 的文件的内容摘要, 以及解析时的 profile, 任何一项不同都重新解析</li>
+ *     <li>解析在暂存注册表中进行, 注册和别名按发生的顺序记下来, 恢复时照样调用目标注册表的方法, 覆盖规则不变</li>
+ *     <li>没有 id 的 bean 名字(如 com.foo.Bean#0)与注册表中已有的 bean 有关, 恢复时用目标注册表重新生成</li>
+ *     <li>暂存注册表是空的, 而 &lt;context:annotation-config/&gt;、组件扫描、AopConfigUtils 等在注册基础设施 bean 前先看注册表里有没有.
+ *     所以恢复时 ROLE_INFRASTRUCTURE 的 bean 目标中已有的跳过, 与直接解析一样; 自动代理创建器按 AopConfigUtils 的规则升级</li>
+ *     <li>包含组件扫描(结果取决于类路径而不是 XML 内容)或编解码不支持的内容时, 照常注册, 不写缓存</li>
+ * </ul>
+ * 不会重放的: ReaderEventListener 的事件, 以及解析时 import 路径里的占位符(按解析时的值记录被 import 的文件)
+ */
+public class CachingXmlBeanDefinitionReader extends XmlBeanDefinitionReader {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingXmlBeanDefinitionReader.class);
+
+    private static final int MAGIC = 0x58424443;
+
+    private static final int VERSION = 2;
+
+    private static final byte REGISTER = 0;
+    private static final byte ALIAS = 1;
+
+    private final Path cacheDirectory;
+
+    private int hits;
+
+    private int misses;
+
+    public CachingXmlBeanDefinitionReader(BeanDefinitionRegistry registry, Path cacheDirectory) {
+        super(registry);
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public int getCacheHits() {
+        return hits;
+    }
+
+    public int getCacheMisses() {
+        return misses;
+    }
+
+    @Override
+    public int loadBeanDefinitions(EncodedResource encodedResource) throws BeanDefinitionStoreException {
+        Resource resource = encodedResource.getResource();
+        byte[] content;
+        try (InputStream in = resource.getInputStream()) {
+            content = StreamUtils.copyToByteArray(in);
+        } catch (IOException e) {
+            return super.loadBeanDefinitions(encodedResource); // 由父类报告读取失败
+        }
+        String location = location(resource);
+        String contentHash = new Fingerprint().add(content).hex();
+        String profiles = profiles();
+        Path file = cacheDirectory.resolve(new Fingerprint().add(location).add(String.valueOf(encodedResource.getEncoding())).hex() + ".bdc");
+
+        BeanDefinitionRegistry registry = getRegistry();
+        int countBefore = registry.getBeanDefinitionCount();
+        List<Operation> operations = load(file, contentHash, profiles);
+        if (operations != null) {
+            hits++;
+            log.debug("使用缓存的 bean 定义: {}", resource);
+        } else {
+            misses++;
+            Staging staging = parse(encodedResource);
+            operations = staging.operations;
+            byte[] bytes = location != null ? encode(staging, resource, contentHash, profiles) : null;
+            if (bytes != null) {
+                save(file, bytes);
+            }
+        }
+        replay(operations, registry);
+        return registry.getBeanDefinitionCount() - countBefore;
+    }
+
+    @Nullable
+    private static String location(Resource resource) {
+        try {
+            return resource.getURL().toString();
+        } catch (IOException e) {
+            return null; // 如 ByteArrayResource, 没法记录位置, 不缓存
+        }
+    }
+
+    private String profiles() {
+        Environment environment = getEnvironment();
+        return Arrays.toString(environment.getActiveProfiles()) + Arrays.toString(environment.getDefaultProfiles());
+    }
+
+    // 用普通的 reader 解析进暂存注册表, import 的文件也由它解析, 一并记录
+    private Staging parse(EncodedResource encodedResource) {
+        Staging staging = new Staging();
+        BeanDefinitionRegistry registry = getRegistry();
+        if (registry instanceof DefaultListableBeanFactory) {
+            staging.setAllowBeanDefinitionOverriding(((DefaultListableBeanFactory) registry).isAllowBeanDefinitionOverriding());
+        }
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(staging);
+        reader.setEnvironment(getEnvironment());
+        reader.setResourceLoader(getResourceLoader());
+        reader.setBeanClassLoader(getBeanClassLoader());
+        reader.setValidationMode(getValidationMode());
+        reader.setEntityResolver(getEntityResolver());
+        BeanNameGenerator generator = getBeanNameGenerator();
+        reader.setBeanNameGenerator((definition, r) -> {
+            String name = generator.generateBeanName(definition, r);
+            staging.generated.add(name);
+            return name;
+        });
+        reader.setEventListener(new EmptyReaderEventListener() {
+            @Override
+            public void importProcessed(ImportDefinition importDefinition) {
+                staging.imports.addAll(Arrays.asList(importDefinition.getActualResources()));
+            }
+        });
+        reader.loadBeanDefinitions(encodedResource);
+        return staging;
+    }
+
+    private void replay(List<Operation> operations, BeanDefinitionRegistry registry) {
+        Map<String, String> renamed = new HashMap<>();
+        for (Operation operation : operations) {
+            if (operation.definition != null) {
+                String name = operation.name;
+                if (!operation.generated && operation.definition.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE
+                    && registry.containsBeanDefinition(name)) {
+                    escalate(name, operation.definition, registry);
+                    continue;
+                }
+                if (operation.generated) {
+                    name = getBeanNameGenerator().generateBeanName(operation.definition, registry);
+                    renamed.put(operation.name, name);
+                }
+                registry.registerBeanDefinition(name, operation.definition);
+                // 与 BeanDefinitionParserDelegate 相同: 生成的名字以类名开头时, 类名没被占用就作为别名
+                String className = operation.definition.getBeanClassName();
+                if (operation.generated && className != null && name.startsWith(className)
+                    && name.length() > className.length() && !registry.isBeanNameInUse(className)) {
+                    registry.registerAlias(name, className);
+                }
+            } else if (!operation.generated) {
+                registry.registerAlias(renamed.getOrDefault(operation.name, operation.name), operation.alias);
+            }
+        }
+    }
+
+    // 目标中已有自动代理创建器时, 解析时 AopConfigUtils 会按优先级升级它的类, 并打开 proxyTargetClass/exposeProxy
+    private static void escalate(String name, BeanDefinition definition, BeanDefinitionRegistry registry) {
+        if (!AopConfigUtils.AUTO_PROXY_CREATOR_BEAN_NAME.equals(name)) {
+            return;
+        }
+        String className = definition.getBeanClassName();
+        if (AnnotationAwareAspectJAutoProxyCreator.class.getName().equals(className)) {
+            AopConfigUtils.registerAspectJAnnotationAutoProxyCreatorIfNecessary(registry);
+        } else if (AspectJAwareAdvisorAutoProxyCreator.class.getName().equals(className)) {
+            AopConfigUtils.registerAspectJAutoProxyCreatorIfNecessary(registry);
+        } else if (InfrastructureAdvisorAutoProxyCreator.class.getName().equals(className)) {
+            AopConfigUtils.registerAutoProxyCreatorIfNecessary(registry);
+        }
+        PropertyValue proxyTargetClass = definition.getPropertyValues().getPropertyValue("proxyTargetClass");
+        if (proxyTargetClass != null && Boolean.TRUE.equals(proxyTargetClass.getValue())) {
+            AopConfigUtils.forceAutoProxyCreatorToUseClassProxying(registry);
+        }
+        PropertyValue exposeProxy = definition.getPropertyValues().getPropertyValue("exposeProxy");
+        if (exposeProxy != null && Boolean.TRUE.equals(exposeProxy.getValue())) {
+            AopConfigUtils.forceAutoProxyCreatorToExposeProxy(registry);
+        }
+    }
+
+    @Nullable
+    private byte[] encode(Staging staging, Resource resource, String contentHash, String profiles) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            BeanDefinitionCodec.writeString(out, contentHash);
+            BeanDefinitionCodec.writeString(out, profiles);
+            out.writeInt(staging.imports.size());
+            for (Resource imported : staging.imports) {
+                String location = location(imported);
+                if (location == null) {
+                    throw new IllegalArgumentException("无法记录位置的 import: " + imported);
+                }
+                BeanDefinitionCodec.writeString(out, location);
+                BeanDefinitionCodec.writeString(out, hash(imported));
+            }
+            out.writeInt(staging.operations.size());
+            for (Operation operation : staging.operations) {
+                BeanDefinitionCodec.writeString(out, operation.name);
+                out.writeBoolean(operation.generated);
+                if (operation.definition != null) {
+                    if (operation.definition instanceof AnnotatedBeanDefinition) {
+                        throw new IllegalArgumentException("包含组件扫描的结果: " + operation.name);
+                    }
+                    out.writeByte(REGISTER);
+                    BeanDefinitionCodec.write(out, operation.definition);
+                } else {
+                    out.writeByte(ALIAS);
+                    BeanDefinitionCodec.writeString(out, operation.alias);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("不缓存 {} 的解析结果: {}", resource, e.toString());
+            return null;
+        }
+    }
+
+    @Nullable
+    private List<Operation> load(Path file, String contentHash, String profiles) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                || !contentHash.equals(BeanDefinitionCodec.readString(in)) || !profiles.equals(BeanDefinitionCodec.readString(in))) {
+                return null;
+            }
+            int imports = in.readInt();
+            for (int i = 0; i < imports; i++) {
+                Resource imported = new UrlResource(BeanDefinitionCodec.readString(in));
+                if (!imported.exists() || !hash(imported).equals(BeanDefinitionCodec.readString(in))) {
+                    log.debug("{} 已变化", imported);
+                    return null;
+                }
+            }
+            int count = in.readInt();
+            List<Operation> operations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = BeanDefinitionCodec.readString(in);
+                boolean generated = in.readBoolean();
+                if (in.readByte() == REGISTER) {
+                    operations.add(new Operation(name, generated, BeanDefinitionCodec.read(in, getBeanClassLoader()), null));
+                } else {
+                    operations.add(new Operation(name, generated, null, BeanDefinitionCodec.readString(in)));
+                }
+            }
+            return operations;
+        } catch (IOException | RuntimeException e) {
+            log.warn("缓存 {} 读取失败, 重新解析: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    private void save(Path file, byte[] bytes) {
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path tmp = Files.createTempFile(cacheDirectory, file.getFileName().toString(), ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存缓存 {} 失败", file, e);
+        }
+    }
+
+    private static String hash(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return new Fingerprint().add(StreamUtils.copyToByteArray(in)).hex();
+        }
+    }
+
+    /**
+     * 一次 registerBeanDefinition 或 registerAlias
+     */
+    private static class Operation {
+        final String name;
+        // 注册: 名字是生成的; 别名: 类名别名, 恢复时按目标注册表重新判断
+        final boolean generated;
+        @Nullable
+        final BeanDefinition definition;
+        @Nullable
+        final String alias;
+
+        Operation(String name, boolean generated, @Nullable BeanDefinition definition, @Nullable String alias) {
+            this.name = name;
+            this.generated = generated;
+            this.definition = definition;
+            this.alias = alias;
+        }
+    }
+
+    private static class Staging extends DefaultListableBeanFactory {
+        final List<Operation> operations = new ArrayList<>();
+        final Set<String> generated = new HashSet<>();
+        final Set<Resource> imports = new LinkedHashSet<>();
+
+        @Override
+        public void registerBeanDefinition(String beanName, BeanDefinition beanDefinition) throws BeanDefinitionStoreException {
+            super.registerBeanDefinition(beanName, beanDefinition);
+            operations.add(new Operation(beanName, generated.contains(beanName), beanDefinition, null));
+        }
+
+        @Override
+        public void registerAlias(String name, String alias) {
+            super.registerAlias(name, alias);
+            // 生成的名字以类名为别名时, 这个别名由 replay 重新判断
+            boolean classNameAlias = generated.contains(name) && alias.equals(getBeanDefinition(name).getBeanClassName());
+            operations.add(new Operation(name, classNameAlias, null, alias));
+        }
+    }
+}
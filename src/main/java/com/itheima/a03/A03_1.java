@@ -0,0 +1,122 @@
+package com.itheima.a03;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValues;
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+/*
+    按 bean 定义预先过滤 bean 后处理器, 对比 MyBeanPostProcessor 在每个回调里判断 beanName
+ */
+public class A03_1 {
+    public static void main(String[] args) {
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> 1. 生命周期回调照常执行");
+        SelectiveBeanFactory beanFactory = new SelectiveBeanFactory();
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.register(LifeCycleBean.class, MyBeanPostProcessor.class);
+        context.refresh();
+        context.close();
+        System.out.println(beanFactory.getSelectiveStatistics());
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> 2. 30 个处理器 × 8000 个 bean");
+        // 容器日志用的是实际类名, SelectiveBeanFactory 在 com.itheima 下会打 debug 日志, 压测时与原始容器保持一致
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SelectiveBeanFactory.class)).setLevel(Level.INFO);
+        for (int round = 1; round <= 4; round++) { // 轮流先跑, 免得先跑的一方替另一方预热
+            if (round % 2 == 1) {
+                run("第" + round + "轮 原始", new DefaultListableBeanFactory());
+                run("第" + round + "轮 过滤", new SelectiveBeanFactory());
+            } else {
+                run("第" + round + "轮 过滤", new SelectiveBeanFactory());
+                run("第" + round + "轮 原始", new DefaultListableBeanFactory());
+            }
+        }
+
+        /*
+            学到了什么
+                a. bean 后处理器对每个 bean、每个阶段都会回调, 只关心个别 bean 的处理器也不例外
+                b. DestructionAwareBeanPostProcessor 的 requiresDestruction 默认返回 true,
+                   会让每个单例都登记一个销毁适配器, 关闭容器时再回调一遍
+                c. 是否适用只取决于 bean 定义, 算一次记住即可, 定义变化(resetBeanDefinition)时作废
+                d. 实例化之前、初始化前后按 plan 中排好的处理器遍历, 不适用的处理器整个跳过; 依赖注入阶段的循环在父类内部,
+                   只能由适配器过滤. 回调里只是 beanName.equals 时 refresh 与原始大致持平, 明显的收益在销毁阶段,
+                   以及回调里判断代价高(如查注解、按类型判断)的处理器
+         */
+    }
+
+    private static void run(String title, DefaultListableBeanFactory beanFactory) {
+        GenericApplicationContext context = new GenericApplicationContext(beanFactory);
+        for (int i = 0; i < 30; i++) {
+            String target = "bean" + (i * 100);
+            context.registerBean("watcher" + i, Watcher.class, () -> new Watcher(target));
+        }
+        for (int i = 0; i < 8000; i++) {
+            context.registerBean("bean" + i, Plain.class);
+        }
+        long start = System.nanoTime();
+        context.refresh();
+        long refreshed = System.nanoTime();
+        context.close();
+        long closed = System.nanoTime();
+        System.out.printf("%s: refresh %d ms, close %d ms%s%n", title,
+                (refreshed - start) / 1_000_000, (closed - refreshed) / 1_000_000,
+                beanFactory instanceof SelectiveBeanFactory ? ", " + ((SelectiveBeanFactory) beanFactory).getSelectiveStatistics() : "");
+    }
+
+    static class Plain {
+    }
+
+    // 与 MyBeanPostProcessor 一样只关心一个 bean, 回调里的判断保留, 以便在普通 BeanFactory 中也正确
+    static class Watcher implements InstantiationAwareBeanPostProcessor, DestructionAwareBeanPostProcessor, SelectiveBeanPostProcessor {
+        private final String target;
+        private int callbacks;
+
+        Watcher(String target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean supports(Class<?> beanType, String beanName) {
+            return beanName.equals(target);
+        }
+
+        @Override
+        public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+            if (beanName.equals(target)) callbacks++;
+            return null;
+        }
+
+        @Override
+        public boolean postProcessAfterInstantiation(Object bean, String beanName) throws BeansException {
+            if (beanName.equals(target)) callbacks++;
+            return true;
+        }
+
+        @Override
+        public PropertyValues postProcessProperties(PropertyValues pvs, Object bean, String beanName) throws BeansException {
+            if (beanName.equals(target)) callbacks++;
+            return pvs;
+        }
+
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+            if (beanName.equals(target)) callbacks++;
+            return bean;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (beanName.equals(target)) callbacks++;
+            return bean;
+        }
+
+        @Override
+        public void postProcessBeforeDestruction(Object bean, String beanName) throws BeansException {
+            if (beanName.equals(target)) callbacks++;
+        }
+    }
+}
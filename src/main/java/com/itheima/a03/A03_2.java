@@ -0,0 +1,80 @@
+package com.itheima.a03;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+    记录每个 bean 各阶段的耗时、分配, 导出 Chrome trace, 并比较两次启动
+ */
+public class A03_2 {
+
+    // 模拟某次提交让 Cache 的初始化变慢
+    static boolean regression;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        Path before = dir.resolve("a03-before.json");
+        Path after = dir.resolve("a03-after.json");
+
+        // 第一次启动包含类加载、JIT 的开销, 不参与比较
+        start(false, dir.resolve("a03-warmup.json"));
+        start(false, before);
+        start(true, after);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> 两次启动对比(按 bean 的自身耗时)");
+        System.out.println(BeanTimeline.diff(before, after, 8));
+        System.out.println("用 chrome://tracing 或 https://ui.perfetto.dev 打开 " + before + " 查看嵌套关系");
+
+        /*
+            学到了什么
+                a. 依赖在 populate(属性注入)或 instantiate(构造注入)阶段里被创建, 耗时会算进外层 bean 的总耗时
+                b. 扣掉嵌套阶段后的自身耗时、自身分配才能把回归归因到具体的 bean 和阶段
+                c. ThreadMXBean 可以按线程统计分配的字节数, 比 GC 日志更容易对应到具体代码
+                d. 比较的两次启动要条件相同, 冷启动的类加载耗时会淹没真正的回归
+         */
+    }
+
+    private static void start(boolean slow, Path trace) throws Exception {
+        regression = slow;
+        TimelineBeanFactory beanFactory = new TimelineBeanFactory();
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.register(Service.class, Repository.class, Cache.class, LifeCycleBean.class, MyBeanPostProcessor.class);
+        context.refresh();
+        context.close();
+        for (BeanTimeline.Span span : beanFactory.getTimeline().getSpans()) {
+            if (span.getBeanName().equals("a03_2.Service") || span.getBeanName().equals("a03_2.Cache")) {
+                System.out.println(span);
+            }
+        }
+        beanFactory.getTimeline().writeChromeTrace(trace);
+    }
+
+    static class Service {
+        @Autowired
+        private Repository repository;
+    }
+
+    static class Repository {
+        private final Cache cache;
+
+        Repository(Cache cache) {
+            this.cache = cache;
+        }
+    }
+
+    static class Cache {
+        private long[] entries;
+
+        @PostConstruct
+        public void load() throws InterruptedException {
+            entries = new long[regression ? 1 << 20 : 1 << 10];
+            if (regression) {
+                Thread.sleep(20);
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.itheima.a03;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 记录每个 bean 各个生命周期阶段(create、instantiate、populate、init、destroy)的耗时和分配的内存
+ * <p>
+ * 阶段可以嵌套: 依赖注入时创建依赖的 bean, 依赖的 create 就嵌在外层的 populate 里.
+ * 每个阶段既记录总量, 也记录扣掉嵌套阶段后的自身部分(self), 按 bean 归因看的是自身部分
+ * <p>
+ * 结果可以导出为 Chrome trace-event 格式(chrome://tracing 或 https://ui.perfetto.dev 打开),
+ * 两次启动导出的文件可以用 {@link #diff(Path, Path, int)} 比较, 找出变慢的 bean
+ */
+public class BeanTimeline {
+
+    private static final com.sun.management.ThreadMXBean threads = allocationTracking();
+
+    private final long origin = System.nanoTime();
+
+    private final ConcurrentLinkedQueue<Span> spans = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Deque<Frame>> stacks = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public static final class Span {
+        private final String beanName;
+        private final String phase;
+        private final long threadId;
+        private final String threadName;
+        private final long startNanos;
+        private final long durationNanos;
+        private final long selfNanos;
+        private final long allocatedBytes;
+        private final long selfAllocatedBytes;
+
+        Span(String beanName, String phase, long threadId, String threadName, long startNanos,
+             long durationNanos, long selfNanos, long allocatedBytes, long selfAllocatedBytes) {
+            this.beanName = beanName;
+            this.phase = phase;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.selfNanos = selfNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.selfAllocatedBytes = selfAllocatedBytes;
+        }
+
+        public String getBeanName() {
+            return beanName;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getSelfNanos() {
+            return selfNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getSelfAllocatedBytes() {
+            return selfAllocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return beanName + "[" + phase + "] " + durationNanos / 1000 + "us (self " + selfNanos / 1000 + "us), "
+                   + allocatedBytes + "B (self " + selfAllocatedBytes + "B)";
+        }
+    }
+
+    // 正在进行的阶段, 嵌套阶段结束时把自己的总量累加到外层的 child*
+    private static final class Frame {
+        final String beanName;
+        final String phase;
+        final long start;
+        final long startAllocated;
+        long childNanos;
+        long childAllocated;
+
+        Frame(String beanName, String phase, long start, long startAllocated) {
+            this.beanName = beanName;
+            this.phase = phase;
+            this.start = start;
+            this.startAllocated = startAllocated;
+        }
+    }
+
+    /**
+     * 开始一个阶段, 必须与 {@link #end()} 在同一线程成对调用(try/finally)
+     */
+    public void begin(String beanName, String phase) {
+        stacks.get().push(new Frame(beanName, phase, System.nanoTime(), allocated()));
+    }
+
+    public void end() {
+        long now = System.nanoTime();
+        long allocated = allocated();
+        Deque<Frame> stack = stacks.get();
+        Frame frame = stack.pop();
+        long duration = now - frame.start;
+        long bytes = allocated - frame.startAllocated;
+        Frame parent = stack.peek();
+        if (parent != null) {
+            parent.childNanos += duration;
+            parent.childAllocated += bytes;
+        }
+        Thread thread = Thread.currentThread();
+        spans.add(new Span(frame.beanName, frame.phase, thread.getId(), thread.getName(), frame.start - origin,
+                duration, duration - frame.childNanos, bytes, bytes - frame.childAllocated));
+    }
+
+    public List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * 导出 Chrome trace-event 格式, 同一线程上的 "X" 事件按时间自动嵌套显示
+     */
+    public void writeChromeTrace(Path file) throws IOException {
+        List<Span> list = getSpans();
+        list.sort(Comparator.comparingLong(span -> span.startNanos));
+        try (OutputStream out = Files.newOutputStream(file);
+             JsonGenerator json = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("displayTimeUnit", "ms");
+            json.writeArrayFieldStart("traceEvents");
+            Set<Long> named = new HashSet<>();
+            for (Span span : list) {
+                if (named.add(span.threadId)) {
+                    json.writeStartObject();
+                    json.writeStringField("name", "thread_name");
+                    json.writeStringField("ph", "M");
+                    json.writeNumberField("pid", 1);
+                    json.writeNumberField("tid", span.threadId);
+                    json.writeObjectFieldStart("args");
+                    json.writeStringField("name", span.threadName);
+                    json.writeEndObject();
+                    json.writeEndObject();
+                }
+                json.writeStartObject();
+                json.writeStringField("name", span.beanName);
+                json.writeStringField("cat", span.phase);
+                json.writeStringField("ph", "X");
+                json.writeNumberField("ts", span.startNanos / 1000.0);
+                json.writeNumberField("dur", span.durationNanos / 1000.0);
+                json.writeNumberField("pid", 1);
+                json.writeNumberField("tid", span.threadId);
+                json.writeObjectFieldStart("args");
+                json.writeStringField("phase", span.phase);
+                json.writeNumberField("selfUs", span.selfNanos / 1000.0);
+                json.writeNumberField("allocatedBytes", span.allocatedBytes);
+                json.writeNumberField("selfAllocatedBytes", span.selfAllocatedBytes);
+                json.writeEndObject();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * 比较两次启动导出的 trace, 按 bean 汇总各阶段自身耗时、自身分配, 列出耗时变化最大的 top 个
+     */
+    public static String diff(Path before, Path after, int top) throws IOException {
+        Map<String, long[]> a = summarize(before);
+        Map<String, long[]> b = summarize(after);
+        Set<String> names = new HashSet<>(a.keySet());
+        names.addAll(b.keySet());
+        long[] none = new long[2];
+        List<String> sorted = new ArrayList<>(names);
+        sorted.sort(Comparator.comparingLong((String name) ->
+                Math.abs(b.getOrDefault(name, none)[0] - a.getOrDefault(name, none)[0])).reversed());
+
+        long[] totalA = total(a);
+        long[] totalB = total(b);
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-40s %12s %12s %12s %14s%n", "bean", "前(us)", "后(us)", "变化(us)", "分配变化(KB)"));
+        report.append(String.format("%-40s %12d %12d %+12d %+14d%n", "<合计>",
+                totalA[0] / 1000, totalB[0] / 1000, (totalB[0] - totalA[0]) / 1000, (totalB[1] - totalA[1]) / 1024));
+        for (String name : sorted.subList(0, Math.min(top, sorted.size()))) {
+            long[] x = a.get(name);
+            long[] y = b.get(name);
+            long[] xs = x == null ? none : x;
+            long[] ys = y == null ? none : y;
+            report.append(String.format("%-40s %12s %12s %+12d %+14d%n", abbreviate(name),
+                    x == null ? "-" : String.valueOf(xs[0] / 1000), y == null ? "-" : String.valueOf(ys[0] / 1000),
+                    (ys[0] - xs[0]) / 1000, (ys[1] - xs[1]) / 1024));
+        }
+        return report.toString();
+    }
+
+    // bean 名 -> [自身耗时 ns, 自身分配 bytes]
+    private static Map<String, long[]> summarize(Path file) throws IOException {
+        Map<String, long[]> summary = new LinkedHashMap<>();
+        JsonNode events = new ObjectMapper().readTree(file.toFile()).path("traceEvents");
+        for (JsonNode event : events) {
+            if (!"X".equals(event.path("ph").asText())) {
+                continue;
+            }
+            JsonNode args = event.path("args");
+            long[] sum = summary.computeIfAbsent(event.path("name").asText(), k -> new long[2]);
+            sum[0] += (long) (args.path("selfUs").asDouble() * 1000);
+            sum[1] += args.path("selfAllocatedBytes").asLong();
+        }
+        return summary;
+    }
+
+    private static long[] total(Map<String, long[]> summary) {
+        long[] total = new long[2];
+        for (long[] sum : summary.values()) {
+            total[0] += sum[0];
+            total[1] += sum[1];
+        }
+        return total;
+    }
+
+    private static String abbreviate(String name) {
+        return name.length() <= 40 ? name : "..." + name.substring(name.length() - 37);
+    }
+
+    private static long allocated() {
+        return threads != null ? threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    // HotSpot 才支持按线程统计分配, 其它 JVM 上分配量都记为 0
+    private static com.sun.management.ThreadMXBean allocationTracking() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported()) {
+                sun.setThreadAllocatedMemoryEnabled(true);
+                return sun;
+            }
+        }
+        return null;
+    }
+}
@@ -9,10 +9,16 @@ import org.springframework.beans.factory.config.InstantiationAwareBeanPostProces
 import org.springframework.stereotype.Component;
 
 @Component
-public class MyBeanPostProcessor implements InstantiationAwareBeanPostProcessor, DestructionAwareBeanPostProcessor {
+public class MyBeanPostProcessor implements InstantiationAwareBeanPostProcessor, DestructionAwareBeanPostProcessor, SelectiveBeanPostProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(MyBeanPostProcessor.class);
 
+    // 在 SelectiveBeanFactory 中按 bean 定义只判断一次, 其它 bean 不会再进入下面的回调
+    @Override
+    public boolean supports(Class<?> beanType, String beanName) {
+        return beanName.equals("lifeCycleBean");
+    }
+
     @Override
     public void postProcessBeforeDestruction(Object bean, String beanName) throws BeansException {
         if (beanName.equals("lifeCycleBean"))
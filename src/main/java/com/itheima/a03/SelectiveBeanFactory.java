@@ -0,0 +1,467 @@
+package com.itheima.a03;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValues;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.beans.factory.config.SmartInstantiationAwareBeanPostProcessor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.MergedBeanDefinitionPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 支持 SelectiveBeanPostProcessor 的 BeanFactory
+ * <p>
+ * 添加 bean 后处理器时, 把 SelectiveBeanPostProcessor 包装成适配器, 适配器与原处理器实现相同的生命周期接口;
+ * 每个 bean 定义第一次经过适配器时, 用容器已经确定的类型(合并后 bean 定义的 targetType, 没有时用实例的类型)
+ * 对所有处理器各调用一次 supports. 结果相同的 bean 共用一个 {@link Plan}, 里面预先排好了实例化之前、初始化前后要调用的处理器,
+ * 不适用的直接去掉; plan 作为属性存在合并后的 bean 定义上, bean 定义变化时容器会重新合并, plan 随之作废.
+ * 销毁回调同样过滤, 因此不会再因为一个只关心个别 bean 的 DestructionAwareBeanPostProcessor 给每个单例都登记销毁适配器
+ * <p>
+ * 依赖注入、初始化、登记销毁回调这几处的处理在父类内部, 进入前把正在处理的 bean 和它的 plan 记在 {@link #current} 上,
+ * 适配器按 bean 名(没有 bean 名的 requiresDestruction 按实例)核对后直接使用; 对不上(嵌套创建了别的 bean、其它线程同时在创建)
+ * 时再去 bean 定义上取, 只是慢一些, 结果不受影响
+ * <p>
+ * SmartInstantiationAwareBeanPostProcessor、MergedBeanDefinitionPostProcessor 参与类型预测、元数据收集, 必须看到所有 bean, 不做包装
+ */
+public class SelectiveBeanFactory extends DefaultListableBeanFactory {
+
+    // 合并后 bean 定义上的属性, 值是 StoredPlan
+    private static final String PLAN_ATTRIBUTE = SelectiveBeanFactory.class.getName() + ".plan";
+
+    private final List<Adapter> adapters = new CopyOnWriteArrayList<>();
+
+    // 添加处理器后加一, 之前算出的 plan 作废
+    private volatile int version;
+
+    // supports 结果 -> plan, 同一版本内结果相同的 bean 共用
+    private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+
+    // 正在经过父类内部循环的 bean 及其 plan
+    @Nullable
+    private volatile Current current;
+
+    private final LongAdder evaluations = new LongAdder();
+
+    private final LongAdder skippedPairs = new LongAdder();
+
+    @Override
+    public void addBeanPostProcessor(BeanPostProcessor beanPostProcessor) {
+        super.addBeanPostProcessor(adapt(beanPostProcessor));
+        processorsChanged();
+    }
+
+    @Override
+    public void addBeanPostProcessors(Collection<? extends BeanPostProcessor> beanPostProcessors) {
+        List<BeanPostProcessor> adapted = new ArrayList<>(beanPostProcessors.size());
+        for (BeanPostProcessor beanPostProcessor : beanPostProcessors) {
+            adapted.add(adapt(beanPostProcessor));
+        }
+        super.addBeanPostProcessors(adapted);
+        processorsChanged();
+    }
+
+    private void processorsChanged() {
+        version++;
+        plans.clear();
+    }
+
+    private BeanPostProcessor adapt(BeanPostProcessor processor) {
+        if (!(processor instanceof SelectiveBeanPostProcessor) || processor instanceof Adapter
+            || processor instanceof SmartInstantiationAwareBeanPostProcessor || processor instanceof MergedBeanDefinitionPostProcessor) {
+            return processor;
+        }
+        SelectiveBeanPostProcessor selective = (SelectiveBeanPostProcessor) processor;
+        boolean instantiationAware = processor instanceof InstantiationAwareBeanPostProcessor;
+        boolean destructionAware = processor instanceof DestructionAwareBeanPostProcessor;
+        Adapter adapter;
+        if (instantiationAware && destructionAware) {
+            adapter = new InstantiationAndDestructionAwareAdapter(selective);
+        } else if (instantiationAware) {
+            adapter = new InstantiationAwareAdapter(selective);
+        } else if (destructionAware) {
+            adapter = new DestructionAwareAdapter(selective);
+        } else {
+            adapter = new Adapter(selective);
+        }
+        // 重复添加同一个处理器时沿用原来的序号, 父类也会先移除旧的适配器(见 Adapter#equals)
+        for (Adapter existing : adapters) {
+            if (existing.delegate == processor) {
+                return existing;
+            }
+        }
+        adapter.index = adapters.size();
+        adapters.add(adapter);
+        return adapter;
+    }
+
+    private Plan currentPlan(String beanName, Object bean) {
+        Current current = this.current;
+        return current != null && current.beanName.equals(beanName) && current.plan.version == version
+                ? current.plan : planFor(beanName, bean.getClass());
+    }
+
+    private Plan planFor(String beanName, Class<?> actualType) {
+        return planFor(beanName, containsBeanDefinition(beanName) ? getMergedLocalBeanDefinition(beanName) : null, actualType);
+    }
+
+    /**
+     * @param mbd 合并后的 bean 定义; 内部 bean 是它自己的定义, 手动注册的单例等没有, 这时不缓存
+     */
+    private Plan planFor(String beanName, @Nullable RootBeanDefinition mbd, Class<?> actualType) {
+        if (mbd == null) {
+            return plan(beanName, ClassUtils.getUserClass(actualType));
+        }
+        Plan plan = storedPlan(beanName, mbd);
+        if (plan != null) {
+            return plan;
+        }
+        // 父类在 postProcessingLock 下修改合并后的定义, 这个锁不可见, 用定义本身
+        synchronized (mbd) {
+            plan = storedPlan(beanName, mbd);
+            if (plan == null) {
+                Class<?> type = mbd.getTargetType();
+                plan = plan(beanName, type != null ? type : ClassUtils.getUserClass(actualType));
+                mbd.setAttribute(PLAN_ATTRIBUTE, new StoredPlan(beanName, plan));
+            }
+            return plan;
+        }
+    }
+
+    // 子 bean 合并时会复制父 bean 合并后定义的属性, 所以要核对 bean 名
+    @Nullable
+    private Plan storedPlan(String beanName, RootBeanDefinition mbd) {
+        Object attribute = mbd.getAttribute(PLAN_ATTRIBUTE);
+        if (attribute instanceof StoredPlan) {
+            StoredPlan stored = (StoredPlan) attribute;
+            if (stored.beanName.equals(beanName) && stored.plan.version == version) {
+                return stored.plan;
+            }
+        }
+        return null;
+    }
+
+    // 一次问完所有处理器
+    private Plan plan(String beanName, Class<?> type) {
+        int currentVersion = version;
+        List<Adapter> snapshot = adapters;
+        char[] signature = new char[snapshot.size()];
+        int skipped = 0;
+        for (Adapter adapter : snapshot) {
+            boolean supports = adapter.delegate.supports(type, beanName);
+            signature[adapter.index] = supports ? '1' : '0';
+            if (!supports) {
+                skipped++;
+            }
+        }
+        evaluations.increment();
+        skippedPairs.add(skipped);
+        return plans.computeIfAbsent(new String(signature), key -> new Plan(key, currentVersion, getBeanPostProcessors()));
+    }
+
+    /*
+        下面三个阶段的循环父类允许重写: 直接遍历 plan 中排好的处理器, 不适用的连适配器都不进, 适用的直接调用原处理器;
+        实例化之前的类型就是父类 determineTargetType 的结果. 依赖注入阶段(postProcessAfterInstantiation、postProcessProperties)
+        的循环在 populateBean 内部, 仍由适配器过滤
+     */
+    @Override
+    @Nullable
+    protected Object applyBeanPostProcessorsBeforeInstantiation(Class<?> beanClass, String beanName) {
+        if (adapters.isEmpty()) {
+            return super.applyBeanPostProcessorsBeforeInstantiation(beanClass, beanName);
+        }
+        for (InstantiationAwareBeanPostProcessor processor : planFor(beanName, beanClass).beforeInstantiation) {
+            Object result = processor.postProcessBeforeInstantiation(beanClass, beanName);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object applyBeanPostProcessorsBeforeInitialization(Object existingBean, String beanName) throws BeansException {
+        if (adapters.isEmpty()) {
+            return super.applyBeanPostProcessorsBeforeInitialization(existingBean, beanName);
+        }
+        Object result = existingBean;
+        for (BeanPostProcessor processor : currentPlan(beanName, existingBean).initialization) {
+            Object current = processor.postProcessBeforeInitialization(result, beanName);
+            if (current == null) {
+                return result;
+            }
+            result = current;
+        }
+        return result;
+    }
+
+    @Override
+    public Object applyBeanPostProcessorsAfterInitialization(Object existingBean, String beanName) throws BeansException {
+        if (adapters.isEmpty()) {
+            return super.applyBeanPostProcessorsAfterInitialization(existingBean, beanName);
+        }
+        Object result = existingBean;
+        for (BeanPostProcessor processor : currentPlan(beanName, existingBean).initialization) {
+            Object current = processor.postProcessAfterInitialization(result, beanName);
+            if (current == null) {
+                return result;
+            }
+            result = current;
+        }
+        return result;
+    }
+
+    @Override
+    protected void populateBean(String beanName, RootBeanDefinition mbd, @Nullable BeanWrapper bw) {
+        if (adapters.isEmpty() || bw == null) {
+            super.populateBean(beanName, mbd, bw);
+            return;
+        }
+        Current outer = enter(beanName, bw.getWrappedInstance(), mbd);
+        try {
+            super.populateBean(beanName, mbd, bw);
+        } finally {
+            current = outer;
+        }
+    }
+
+    @Override
+    protected Object initializeBean(String beanName, Object bean, @Nullable RootBeanDefinition mbd) {
+        if (adapters.isEmpty()) {
+            return super.initializeBean(beanName, bean, mbd);
+        }
+        Current outer = enter(beanName, bean, mbd);
+        try {
+            return super.initializeBean(beanName, bean, mbd);
+        } finally {
+            current = outer;
+        }
+    }
+
+    @Override
+    protected void registerDisposableBeanIfNecessary(String beanName, Object bean, RootBeanDefinition mbd) {
+        if (adapters.isEmpty()) {
+            super.registerDisposableBeanIfNecessary(beanName, bean, mbd);
+            return;
+        }
+        Current outer = enter(beanName, bean, mbd);
+        try {
+            super.registerDisposableBeanIfNecessary(beanName, bean, mbd);
+        } finally {
+            current = outer;
+        }
+    }
+
+    @Override
+    protected void destroyBean(String beanName, Object bean, RootBeanDefinition mbd) {
+        if (adapters.isEmpty()) {
+            super.destroyBean(beanName, bean, mbd);
+            return;
+        }
+        Current outer = enter(beanName, bean, mbd);
+        try {
+            super.destroyBean(beanName, bean, mbd);
+        } finally {
+            current = outer;
+        }
+    }
+
+    // 嵌套创建的 bean 结束后恢复外层的; 多线程时可能被别的线程覆盖, 适配器核对不上会自己查, 不影响结果
+    @Nullable
+    private Current enter(String beanName, Object bean, @Nullable RootBeanDefinition mbd) {
+        Current outer = current;
+        current = new Current(beanName, bean, planFor(beanName, mbd, bean.getClass()));
+        return outer;
+    }
+
+    public String getSelectiveStatistics() {
+        return "selectiveProcessors=" + adapters.size() + ", evaluations=" + evaluations.sum()
+               + ", skippedPairs=" + skippedPairs.sum() + ", distinctPlans=" + plans.size();
+    }
+
+    /**
+     * 一组 supports 结果, 以及按它过滤、把适配器换回原处理器后的处理器列表(顺序不变)
+     */
+    private final class Plan {
+        final boolean[] applies;
+        final int version;
+        final InstantiationAwareBeanPostProcessor[] beforeInstantiation;
+        final BeanPostProcessor[] initialization;
+
+        Plan(String signature, int version, List<BeanPostProcessor> processors) {
+            this.applies = new boolean[signature.length()];
+            for (int i = 0; i < applies.length; i++) {
+                applies[i] = signature.charAt(i) == '1';
+            }
+            this.version = version;
+            List<InstantiationAwareBeanPostProcessor> instantiationAware = new ArrayList<>();
+            List<BeanPostProcessor> all = new ArrayList<>(processors.size());
+            for (BeanPostProcessor processor : processors) {
+                if (processor instanceof Adapter) {
+                    Adapter adapter = (Adapter) processor;
+                    if (!applies[adapter.index]) {
+                        continue;
+                    }
+                    processor = adapter.delegate;
+                }
+                all.add(processor);
+                if (processor instanceof InstantiationAwareBeanPostProcessor) {
+                    instantiationAware.add((InstantiationAwareBeanPostProcessor) processor);
+                }
+            }
+            this.beforeInstantiation = instantiationAware.toArray(new InstantiationAwareBeanPostProcessor[0]);
+            this.initialization = all.toArray(new BeanPostProcessor[0]);
+        }
+    }
+
+    private static final class StoredPlan {
+        final String beanName;
+        final Plan plan;
+
+        StoredPlan(String beanName, Plan plan) {
+            this.beanName = beanName;
+            this.plan = plan;
+        }
+    }
+
+    private static final class Current {
+        final String beanName;
+        final Object bean;
+        final Plan plan;
+
+        Current(String beanName, Object bean, Plan plan) {
+            this.beanName = beanName;
+            this.bean = bean;
+            this.plan = plan;
+        }
+    }
+
+    private class Adapter implements BeanPostProcessor {
+        final SelectiveBeanPostProcessor delegate;
+        int index;
+
+        Adapter(SelectiveBeanPostProcessor delegate) {
+            this.delegate = delegate;
+        }
+
+        boolean applies(String beanName, Object bean) {
+            return currentPlan(beanName, bean).applies[index];
+        }
+
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+            return applies(beanName, bean) ? delegate.postProcessBeforeInitialization(bean, beanName) : bean;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            return applies(beanName, bean) ? delegate.postProcessAfterInitialization(bean, beanName) : bean;
+        }
+
+        // 没有 bean 名, 只有正在登记或销毁的正是这个实例时才按 plan 过滤, 其它情况(如 destroyBean(Object))交给原处理器判断
+        boolean requiresDestruction(Object bean) {
+            Current current = SelectiveBeanFactory.this.current;
+            boolean applies = current == null || current.bean != bean || current.plan.version != version || current.plan.applies[index];
+            return applies && ((DestructionAwareBeanPostProcessor) delegate).requiresDestruction(bean);
+        }
+
+        void postProcessBeforeDestruction(Object bean, String beanName) throws BeansException {
+            if (applies(beanName, bean)) {
+                ((DestructionAwareBeanPostProcessor) delegate).postProcessBeforeDestruction(bean, beanName);
+            }
+        }
+
+        // 父类添加前会先 remove 同一个处理器, 让适配器与原处理器按 delegate 判等
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Adapter && ((Adapter) o).delegate == delegate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(delegate);
+        }
+
+        @Override
+        public String toString() {
+            return "Selective(" + delegate + ")";
+        }
+    }
+
+    private class DestructionAwareAdapter extends Adapter implements DestructionAwareBeanPostProcessor {
+        DestructionAwareAdapter(SelectiveBeanPostProcessor delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void postProcessBeforeDestruction(Object bean, String beanName) throws BeansException {
+            super.postProcessBeforeDestruction(bean, beanName);
+        }
+
+        @Override
+        public boolean requiresDestruction(Object bean) {
+            return super.requiresDestruction(bean);
+        }
+    }
+
+    private class InstantiationAwareAdapter extends Adapter implements InstantiationAwareBeanPostProcessor {
+        private final InstantiationAwareBeanPostProcessor instantiationAware;
+
+        InstantiationAwareAdapter(SelectiveBeanPostProcessor delegate) {
+            super(delegate);
+            this.instantiationAware = (InstantiationAwareBeanPostProcessor) delegate;
+        }
+
+        @Override
+        public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+            return planFor(beanName, beanClass).applies[index] ? instantiationAware.postProcessBeforeInstantiation(beanClass, beanName) : null;
+        }
+
+        @Override
+        public boolean postProcessAfterInstantiation(Object bean, String beanName) throws BeansException {
+            return !applies(beanName, bean) || instantiationAware.postProcessAfterInstantiation(bean, beanName);
+        }
+
+        @Override
+        public PropertyValues postProcessProperties(PropertyValues pvs, Object bean, String beanName) throws BeansException {
+            return applies(beanName, bean) ? instantiationAware.postProcessProperties(pvs, bean, beanName) : pvs;
+        }
+
+        @Override
+        @Deprecated
+        @Nullable
+        public PropertyValues postProcessPropertyValues(PropertyValues pvs, PropertyDescriptor[] pds, Object bean, String beanName) throws BeansException {
+            return applies(beanName, bean) ? instantiationAware.postProcessPropertyValues(pvs, pds, bean, beanName) : pvs;
+        }
+    }
+
+    private class InstantiationAndDestructionAwareAdapter extends InstantiationAwareAdapter implements DestructionAwareBeanPostProcessor {
+        InstantiationAndDestructionAwareAdapter(SelectiveBeanPostProcessor delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void postProcessBeforeDestruction(Object bean, String beanName) throws BeansException {
+            super.postProcessBeforeDestruction(bean, beanName);
+        }
+
+        @Override
+        public boolean requiresDestruction(Object bean) {
+            return super.requiresDestruction(bean);
+        }
+    }
+}
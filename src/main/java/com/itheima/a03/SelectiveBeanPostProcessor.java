@@ -0,0 +1,23 @@
+package com.itheima.a03;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * 可以预先声明【对哪些 bean 起作用】的 bean 后处理器
+ * <p>
+ * 普通 bean 后处理器的每个回调都会对每个 bean 调用一遍, 只关心个别 bean 的处理器只能在每个回调里自己判断;
+ * 在 SelectiveBeanFactory 中, supports 的结果按 bean 定义只计算一次, 不适用的 bean 直接跳过该处理器的全部回调
+ * <p>
+ * 普通 BeanFactory 不会调用 supports, 所以回调里原有的判断仍需保留
+ */
+public interface SelectiveBeanPostProcessor extends BeanPostProcessor {
+
+    /**
+     * @param beanType bean 定义预测出的类型, FactoryBean 时是 FactoryBean 自身的类型(它和它的产品共用一个名字)
+     * @param beanName bean 名
+     * @return 是否对该 bean 执行本处理器的回调
+     */
+    default boolean supports(Class<?> beanType, String beanName) {
+        return true;
+    }
+}
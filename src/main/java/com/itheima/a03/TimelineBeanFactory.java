@@ -0,0 +1,98 @@
+package com.itheima.a03;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.lang.Nullable;
+
+/**
+ * 把 bean 生命周期各阶段记录到 BeanTimeline 的 BeanFactory
+ * <p>
+ * MyBeanPostProcessor 只能在阶段之间插入回调, 看不到一个阶段从开始到结束花了多久;
+ * 这里直接包住 AbstractAutowireCapableBeanFactory 的模板方法:
+ * <pre>
+ * create       createBean, 包括实例化之前的后处理器回调
+ *   instantiate  createBeanInstance, 构造注入时依赖的创建嵌在这里
+ *   populate     populateBean, 属性注入时依赖的创建嵌在这里
+ *   init         initializeBean, 初始化前后的后处理器(代理也在这里)、初始化方法
+ * destroy      单例、prototype/自定义作用域 bean 的销毁, 依赖它的 bean 先销毁, 嵌在里面
+ * </pre>
+ */
+public class TimelineBeanFactory extends DefaultListableBeanFactory {
+
+    private final BeanTimeline timeline;
+
+    public TimelineBeanFactory() {
+        this(new BeanTimeline());
+    }
+
+    public TimelineBeanFactory(BeanTimeline timeline) {
+        this.timeline = timeline;
+    }
+
+    public BeanTimeline getTimeline() {
+        return timeline;
+    }
+
+    @Override
+    protected Object createBean(String beanName, RootBeanDefinition mbd, @Nullable Object[] args) throws BeanCreationException {
+        timeline.begin(beanName, "create");
+        try {
+            return super.createBean(beanName, mbd, args);
+        } finally {
+            timeline.end();
+        }
+    }
+
+    @Override
+    protected BeanWrapper createBeanInstance(String beanName, RootBeanDefinition mbd, @Nullable Object[] args) {
+        timeline.begin(beanName, "instantiate");
+        try {
+            return super.createBeanInstance(beanName, mbd, args);
+        } finally {
+            timeline.end();
+        }
+    }
+
+    @Override
+    protected void populateBean(String beanName, RootBeanDefinition mbd, @Nullable BeanWrapper bw) {
+        timeline.begin(beanName, "populate");
+        try {
+            super.populateBean(beanName, mbd, bw);
+        } finally {
+            timeline.end();
+        }
+    }
+
+    @Override
+    protected Object initializeBean(String beanName, Object bean, @Nullable RootBeanDefinition mbd) {
+        timeline.begin(beanName, "init");
+        try {
+            return super.initializeBean(beanName, bean, mbd);
+        } finally {
+            timeline.end();
+        }
+    }
+
+    @Override
+    protected void destroyBean(String beanName, @Nullable DisposableBean bean) {
+        timeline.begin(beanName, "destroy");
+        try {
+            super.destroyBean(beanName, bean);
+        } finally {
+            timeline.end();
+        }
+    }
+
+    @Override
+    protected void destroyBean(String beanName, Object bean, RootBeanDefinition mbd) {
+        timeline.begin(beanName, "destroy");
+        try {
+            super.destroyBean(beanName, bean, mbd);
+        } finally {
+            timeline.end();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.itheima.a04;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.annotation.InitDestroyAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.CommonAnnotationBeanPostProcessor;
+import org.springframework.context.annotation.ContextAnnotationAutowireCandidateResolver;
+import org.springframework.context.support.GenericApplicationContext;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.function.Consumer;
+
+/*
+    生成的注入器, 对比 A04 中 AutowiredAnnotationBeanPostProcessor、CommonAnnotationBeanPostProcessor 的反射注入
+ */
+public class A04_1 {
+    public static void main(String[] args) {
+        // Bean1 每次注入都会打 debug 日志, 压测时关掉, 免得测成打印速度
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Bean1.class)).setLevel(Level.INFO);
+
+        GenericApplicationContext reflective = prepare(context -> {
+            context.registerBean(AutowiredAnnotationBeanPostProcessor.class); // @Autowired @Value
+            context.registerBean(CommonAnnotationBeanPostProcessor.class); // @Resource @PostConstruct @PreDestroy
+        });
+        GenericApplicationContext generated = prepare(context -> {
+            context.registerBean(GeneratedInjectionPostProcessor.class); // @Autowired @Value @Resource
+            context.registerBean(InitDestroyAnnotationBeanPostProcessor.class, bd -> bd.getPropertyValues()
+                    .add("initAnnotationType", PostConstruct.class)
+                    .add("destroyAnnotationType", PreDestroy.class)); // @PostConstruct @PreDestroy
+        });
+        System.out.println(reflective.getBean(Bean1.class));
+        System.out.println(generated.getBean(Bean1.class));
+
+        // 两种方式交替跑几轮, 减少 JIT、GC 先后顺序带来的偏差
+        for (int round = 1; round <= 3; round++) {
+            measure("第" + round + "轮 反射", reflective);
+            measure("第" + round + "轮 生成", generated);
+        }
+        reflective.close();
+        generated.close();
+
+        /*
+            学到了什么
+                a. 注入分两步: 解析依赖(找到要注入的对象) + 赋值, 原处理器的赋值每次都是反射
+                b. 隐藏类与目标类同属一个 nest, 生成的代码可以直接给 private 字段赋值、调用 private 方法
+                c. 生成只在第一次注入某个类时发生一次, 之后每次创建 bean 都复用
+                d. 热起来之后反射本身并不慢, 解析依赖、生命周期回调占了大头;
+                   每次 getTypeConverter() 都会新建转换器并注册一遍属性编辑器, 不需要转换时不要去取
+         */
+    }
+
+    private static GenericApplicationContext prepare(Consumer<GenericApplicationContext> processors) {
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean("bean1", Bean1.class, bd -> bd.setScope(BeanDefinition.SCOPE_PROTOTYPE));
+        context.registerBean("bean2", Bean2.class);
+        context.registerBean("bean3", Bean3.class);
+        context.getDefaultListableBeanFactory().setAutowireCandidateResolver(new ContextAnnotationAutowireCandidateResolver());
+        processors.accept(context);
+        context.refresh();
+        for (int i = 0; i < 20_000; i++) { // 预热
+            context.getBean(Bean1.class);
+        }
+        return context;
+    }
+
+    private static void measure(String title, GenericApplicationContext context) {
+        int count = 200_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            context.getBean(Bean1.class);
+        }
+        long cost = System.nanoTime() - start;
+        System.out.printf("%s: 创建 %d 个 Bean1 耗时 %d ms, 每秒 %d 个%n",
+                title, count, cost / 1_000_000, count * 1_000_000_000L / cost);
+    }
+}
@@ -0,0 +1,498 @@
+package com.itheima.a04;
+
+import com.itheima.util.NestmateClassUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValues;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.Resource;
+import java.beans.Introspector;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用生成的注入器代替反射, 完成 @Autowired、@Value、@Resource 的字段和方法注入
+ * <p>
+ * AutowiredAnnotationBeanPostProcessor、CommonAnnotationBeanPostProcessor 每注入一个成员都要 Field.set / Method.invoke,
+ * prototype、request 作用域的 bean 每创建一次就要反射一轮
+ * <p>
+ * 这里第一次注入某个类时, 为成员所在的类各生成一个隐藏类(与该类同属一个 nest, 能直接访问 private 成员),
+ * 里面是 putfield / invokevirtual 直接赋值; 之后只剩解析依赖 + 调用注入器.
+ * 隐藏类定义失败(如类由其它类加载器加载)时退回反射
+ * <p>
+ * 只负责字段和方法注入, 构造方法推断仍需 AutowiredAnnotationBeanPostProcessor, 两者不要同时用来做字段注入
+ */
+public class GeneratedInjectionPostProcessor implements InstantiationAwareBeanPostProcessor, BeanFactoryAware, PriorityOrdered {
+
+    private static final Logger log = LoggerFactory.getLogger(GeneratedInjectionPostProcessor.class);
+
+    // 生成的注入器只和类有关
+    private final Map<Class<?>, Injector> injectors = new ConcurrentHashMap<>();
+
+    // 注入点及其 shortcut 缓存和 bean 名有关, 与 AutowiredAnnotationBeanPostProcessor 的 injectionMetadataCache 一致
+    private final Map<String, ClassInjection> injections = new ConcurrentHashMap<>();
+
+    private ConfigurableListableBeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        if (!(beanFactory instanceof ConfigurableListableBeanFactory)) {
+            throw new IllegalArgumentException(
+                    "GeneratedInjectionPostProcessor requires a ConfigurableListableBeanFactory: " + beanFactory);
+        }
+        this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 2;
+    }
+
+    @Override
+    public PropertyValues postProcessProperties(PropertyValues pvs, Object bean, String beanName) throws BeansException {
+        Class<?> clazz = bean.getClass();
+        String cacheKey = StringUtils.hasLength(beanName) ? beanName : clazz.getName();
+        ClassInjection injection = injections.get(cacheKey);
+        if (injection == null || injection.targetClass != clazz) {
+            injection = buildInjection(clazz);
+            injections.put(cacheKey, injection);
+        }
+        try {
+            for (InjectedMember member : injection.members) {
+                Object value = member.resolve(bean, beanName);
+                if (value != null) {
+                    member.injector.inject(bean, member.index, value);
+                }
+            }
+        } catch (BeansException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new BeanCreationException(beanName, "Injection of annotated dependencies failed", e);
+        }
+        return pvs;
+    }
+
+    // 与两个原处理器的顺序一致: 先 @Resource(CommonAnnotationBeanPostProcessor 排在前面), 再 @Autowired、@Value; 父类成员在前
+    private ClassInjection buildInjection(Class<?> clazz) {
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        List<InjectedMember> resources = new ArrayList<>();
+        List<InjectedMember> autowired = new ArrayList<>();
+        for (Class<?> declaringClass : hierarchy) {
+            List<Member> members = new ArrayList<>();
+            ReflectionUtils.doWithLocalFields(declaringClass, field -> {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    return;
+                }
+                Resource resource = field.getAnnotation(Resource.class);
+                if (resource != null) {
+                    resources.add(new ResourceMember(field, members.size(), resource));
+                    members.add(field);
+                } else if (isAutowired(field)) {
+                    autowired.add(new AutowiredMember(field, members.size(), isRequired(field), clazz));
+                    members.add(field);
+                }
+            });
+            // 生成的注入器按声明类缓存, 成员序号不能受子类是否重写影响, 所以重写检查只决定是否注入
+            ReflectionUtils.doWithLocalMethods(declaringClass, method -> {
+                if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.isSynthetic()) {
+                    return;
+                }
+                boolean overridden = !method.equals(ClassUtils.getMostSpecificMethod(method, clazz)); // 被子类重写的方法只注入一次
+                Resource resource = method.getAnnotation(Resource.class);
+                if (resource != null) {
+                    if (method.getParameterCount() != 1) {
+                        throw new IllegalStateException("@Resource annotation requires a single-arg method: " + method);
+                    }
+                    if (!overridden) {
+                        resources.add(new ResourceMember(method, members.size(), resource));
+                    }
+                    members.add(method);
+                } else if (isAutowired(method)) {
+                    if (!overridden) {
+                        autowired.add(new AutowiredMember(method, members.size(), isRequired(method), clazz));
+                    }
+                    members.add(method);
+                }
+            });
+            if (!members.isEmpty()) {
+                Injector injector = injectors.computeIfAbsent(declaringClass, c -> createInjector(c, members));
+                for (InjectedMember m : resources) {
+                    if (m.member.getDeclaringClass() == declaringClass) m.injector = injector;
+                }
+                for (InjectedMember m : autowired) {
+                    if (m.member.getDeclaringClass() == declaringClass) m.injector = injector;
+                }
+            }
+        }
+        List<InjectedMember> all = new ArrayList<>(resources);
+        all.addAll(autowired);
+        return new ClassInjection(clazz, all);
+    }
+
+    private static boolean isAutowired(AnnotatedElement element) {
+        return AnnotatedElementUtils.getMergedAnnotation(element, Autowired.class) != null
+               || AnnotatedElementUtils.getMergedAnnotation(element, Value.class) != null;
+    }
+
+    private static boolean isRequired(AnnotatedElement element) {
+        Autowired autowired = AnnotatedElementUtils.getMergedAnnotation(element, Autowired.class);
+        return autowired == null || autowired.required(); // 只有 @Value 时视为必须
+    }
+
+    private void registerDependentBeans(Set<String> autowiredBeanNames, String beanName) {
+        for (String autowiredBeanName : autowiredBeanNames) {
+            if (beanFactory.containsBean(autowiredBeanName)) {
+                beanFactory.registerDependentBean(autowiredBeanName, beanName);
+            }
+        }
+    }
+
+    // 与 AutowiredAnnotationBeanPostProcessor 相同: 唯一候选者且类型匹配时, 之后直接按名字取
+    @Nullable
+    private DependencyDescriptor shortcut(DependencyDescriptor descriptor, Set<String> autowiredBeanNames, Class<?> requiredType) {
+        if (autowiredBeanNames.size() == 1) {
+            String name = autowiredBeanNames.iterator().next();
+            if (beanFactory.containsBean(name) && beanFactory.isTypeMatch(name, requiredType)) {
+                return new ShortcutDescriptor(descriptor, name, requiredType);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 生成的注入器: member 是成员在所属类中的序号, value 对字段是字段值, 对方法是参数数组
+     */
+    public interface Injector {
+        void inject(Object bean, int member, Object value) throws Throwable;
+    }
+
+    private Injector createInjector(Class<?> declaringClass, List<Member> members) {
+        if (isGeneratable(declaringClass, members)) {
+            try {
+                Injector injector = generate(declaringClass, members);
+                log.debug("为 {} 生成注入器, 成员 {} 个", declaringClass.getName(), members.size());
+                return injector;
+            } catch (Throwable e) {
+                log.debug("为 {} 生成注入器失败, 退回反射: {}", declaringClass.getName(), e.toString());
+            }
+        }
+        return reflective(members);
+    }
+
+    // final 字段不能在构造方法外 putfield; 用到的类型必须能被生成的类直接访问
+    private static boolean isGeneratable(Class<?> declaringClass, List<Member> members) {
+        for (Member member : members) {
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                if (Modifier.isFinal(field.getModifiers()) || !NestmateClassUtil.isAccessible(field.getType(), declaringClass)) {
+                    return false;
+                }
+            } else {
+                for (Class<?> type : ((Method) member).getParameterTypes()) {
+                    if (!NestmateClassUtil.isAccessible(type, declaringClass)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+        生成的类大致如下(与 declaringClass 同包、同 nest)
+        final class Bean1$$Injector implements Injector {
+            public void inject(Object bean, int member, Object value) {
+                Bean1 target = (Bean1) bean;
+                switch (member) {
+                    case 0: target.bean3 = (Bean3) value; return;
+                    case 1: Object[] args = (Object[]) value; target.setBean2((Bean2) args[0]); return;
+                    ...
+                    default: throw new IllegalArgumentException();
+                }
+            }
+        }
+     */
+    private static Injector generate(Class<?> declaringClass, List<Member> members) throws Throwable {
+        String owner = Type.getInternalName(declaringClass);
+        ClassWriter cw = NestmateClassUtil.newClassWriter();
+        cw.visit(Opcodes.V11, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, owner + "$$Injector", null,
+                "java/lang/Object", new String[]{Type.getInternalName(Injector.class)});
+        NestmateClassUtil.visitDefaultConstructor(cw);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "inject", "(Ljava/lang/Object;ILjava/lang/Object;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, owner);
+        mv.visitVarInsn(Opcodes.ASTORE, 4);
+        Label[] cases = new Label[members.size()];
+        for (int i = 0; i < cases.length; i++) {
+            cases[i] = new Label();
+        }
+        Label fail = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 2);
+        mv.visitTableSwitchInsn(0, cases.length - 1, fail, cases);
+        for (int i = 0; i < cases.length; i++) {
+            mv.visitLabel(cases[i]);
+            mv.visitVarInsn(Opcodes.ALOAD, 4);
+            Member member = members.get(i);
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                mv.visitVarInsn(Opcodes.ALOAD, 3);
+                NestmateClassUtil.unboxOrCast(mv, field.getType());
+                mv.visitFieldInsn(Opcodes.PUTFIELD, owner, field.getName(), Type.getDescriptor(field.getType()));
+            } else {
+                Method method = (Method) member;
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                for (int j = 0; j < parameterTypes.length; j++) {
+                    mv.visitVarInsn(Opcodes.ALOAD, 3);
+                    mv.visitTypeInsn(Opcodes.CHECKCAST, "[Ljava/lang/Object;");
+                    NestmateClassUtil.push(mv, j);
+                    mv.visitInsn(Opcodes.AALOAD);
+                    NestmateClassUtil.unboxOrCast(mv, parameterTypes[j]);
+                }
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, method.getName(), Type.getMethodDescriptor(method), false);
+                Type returnType = Type.getReturnType(method);
+                if (returnType.getSize() == 1) {
+                    mv.visitInsn(Opcodes.POP);
+                } else if (returnType.getSize() == 2) {
+                    mv.visitInsn(Opcodes.POP2);
+                }
+            }
+            mv.visitInsn(Opcodes.RETURN);
+        }
+        mv.visitLabel(fail);
+        mv.visitTypeInsn(Opcodes.NEW, "java/lang/IllegalArgumentException");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        return NestmateClassUtil.defineAndInstantiate(declaringClass, cw.toByteArray());
+    }
+
+    private static Injector reflective(List<Member> members) {
+        for (Member member : members) {
+            if (member instanceof Field) {
+                ReflectionUtils.makeAccessible((Field) member);
+            } else {
+                ReflectionUtils.makeAccessible((Method) member);
+            }
+        }
+        return (bean, index, value) -> {
+            Member member = members.get(index);
+            if (member instanceof Field) {
+                ((Field) member).set(bean, value);
+                return;
+            }
+            try {
+                ((Method) member).invoke(bean, (Object[]) value);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        };
+    }
+
+    private static final class ClassInjection {
+        final Class<?> targetClass;
+        final List<InjectedMember> members;
+
+        ClassInjection(Class<?> targetClass, List<InjectedMember> members) {
+            this.targetClass = targetClass;
+            this.members = members;
+        }
+    }
+
+    private abstract static class InjectedMember {
+        final Member member;
+        final int index;
+        Injector injector;
+
+        InjectedMember(Member member, int index) {
+            this.member = member;
+            this.index = index;
+        }
+
+        // 返回 null 表示跳过本成员
+        @Nullable
+        abstract Object resolve(Object bean, String beanName);
+    }
+
+    private final class AutowiredMember extends InjectedMember {
+        private final boolean required;
+        // 与原处理器一样复用 DependencyDescriptor, MethodParameter 内部会缓存参数注解
+        private final DependencyDescriptor[] descriptors;
+        private final DependencyDescriptor[] shortcuts;
+
+        AutowiredMember(Member member, int index, boolean required, Class<?> targetClass) {
+            super(member, index);
+            this.required = required;
+            if (member instanceof Field) {
+                descriptors = new DependencyDescriptor[]{new DependencyDescriptor((Field) member, required)};
+            } else {
+                Method method = (Method) member;
+                descriptors = new DependencyDescriptor[method.getParameterCount()];
+                for (int i = 0; i < descriptors.length; i++) {
+                    descriptors[i] = new DependencyDescriptor(new MethodParameter(method, i), required);
+                }
+            }
+            for (DependencyDescriptor descriptor : descriptors) {
+                descriptor.setContainingClass(targetClass);
+            }
+            this.shortcuts = new DependencyDescriptor[descriptors.length];
+        }
+
+        @Override
+        Object resolve(Object bean, String beanName) {
+            if (member instanceof Field) {
+                return resolve(0, beanName);
+            }
+            Object[] args = new Object[descriptors.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = resolve(i, beanName);
+                if (args[i] == null && !required) {
+                    return null;
+                }
+            }
+            return args;
+        }
+
+        @Nullable
+        private Object resolve(int i, String beanName) {
+            DependencyDescriptor shortcut = shortcuts[i];
+            if (shortcut != null) {
+                return beanFactory.resolveDependency(shortcut, beanName, null, null);
+            }
+            DependencyDescriptor descriptor = descriptors[i];
+            Set<String> autowiredBeanNames = new LinkedHashSet<>(2);
+            // 不传 TypeConverter: 工厂只在需要转换(如 @Value)时才创建, getTypeConverter() 每次都会新建并注册一遍属性编辑器
+            Object value = beanFactory.resolveDependency(descriptor, beanName, autowiredBeanNames, null);
+            registerDependentBeans(autowiredBeanNames, beanName);
+            if (value != null) {
+                shortcuts[i] = shortcut(descriptor, autowiredBeanNames, descriptor.getDependencyType());
+            }
+            return value;
+        }
+    }
+
+    // 与 CommonAnnotationBeanPostProcessor 相同: 先按名字找, 默认名字找不到时再按类型
+    private final class ResourceMember extends InjectedMember {
+        private final String name;
+        private final boolean defaultName;
+        private final Class<?> lookupType;
+        private final DependencyDescriptor descriptor;
+
+        ResourceMember(Member member, int index, Resource resource) {
+            super(member, index);
+            String name = resource.name();
+            this.defaultName = !StringUtils.hasLength(name);
+            if (defaultName) {
+                name = member.getName();
+                if (member instanceof Method && name.startsWith("set") && name.length() > 3) {
+                    name = Introspector.decapitalize(name.substring(3));
+                }
+            } else {
+                name = beanFactory.resolveEmbeddedValue(name);
+            }
+            this.name = name;
+            Class<?> declaredType = member instanceof Field
+                    ? ((Field) member).getType() : ((Method) member).getParameterTypes()[0];
+            this.lookupType = resource.type() != Object.class ? resource.type() : declaredType;
+            this.descriptor = member instanceof Field
+                    ? new LookupDescriptor((Field) member, lookupType)
+                    : new LookupDescriptor(new MethodParameter((Method) member, 0), lookupType);
+        }
+
+        @Override
+        Object resolve(Object bean, String beanName) {
+            DependencyDescriptor descriptor = this.descriptor;
+            Object resource;
+            Set<String> autowiredBeanNames;
+            if (defaultName && !beanFactory.containsBean(name)) {
+                autowiredBeanNames = new LinkedHashSet<>(2);
+                resource = beanFactory.resolveDependency(descriptor, beanName, autowiredBeanNames, null);
+                if (resource == null) {
+                    throw new NoSuchBeanDefinitionException(lookupType, "No resolvable resource object");
+                }
+            } else {
+                resource = beanFactory.resolveBeanByName(name, descriptor);
+                autowiredBeanNames = Collections.singleton(name);
+            }
+            registerDependentBeans(autowiredBeanNames, beanName);
+            return member instanceof Field ? resource : new Object[]{resource};
+        }
+    }
+
+    private static final class LookupDescriptor extends DependencyDescriptor {
+        private final Class<?> lookupType;
+
+        LookupDescriptor(Field field, Class<?> lookupType) {
+            super(field, true);
+            this.lookupType = lookupType;
+        }
+
+        LookupDescriptor(MethodParameter parameter, Class<?> lookupType) {
+            super(parameter, true);
+            this.lookupType = lookupType;
+        }
+
+        @Override
+        public Class<?> getDependencyType() {
+            return lookupType;
+        }
+    }
+
+    private static final class ShortcutDescriptor extends DependencyDescriptor {
+        private final String shortcut;
+        private final Class<?> requiredType;
+
+        ShortcutDescriptor(DependencyDescriptor original, String shortcut, Class<?> requiredType) {
+            super(original);
+            this.shortcut = shortcut;
+            this.requiredType = requiredType;
+        }
+
+        @Override
+        public Object resolveShortcut(BeanFactory beanFactory) {
+            return beanFactory.getBean(shortcut, requiredType);
+        }
+    }
+}
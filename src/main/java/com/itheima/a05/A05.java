@@ -27,7 +27,10 @@ public class A05 {
 //        context.registerBean(ComponentScanPostProcessor.class); // 解析 @ComponentScan
 
         context.registerBean(AtBeanPostProcessor.class); // 解析 @Bean
-        context.registerBean(MapperPostProcessor.class); // 解析 Mapper 接口
+//        context.registerBean(MapperPostProcessor.class); // 解析 Mapper 接口
+        context.registerBean(LazyMapperPostProcessor.class, bd -> { // 解析 @Mapper 接口, 首次使用时才创建
+            bd.getPropertyValues().add("basePackage", "com.itheima.a05.mapper");
+        });
 
         // ⬇️初始化容器
         context.refresh();
@@ -46,6 +49,7 @@ public class A05 {
             学到了什么
                 a. @ComponentScan, @Bean, @Mapper 等注解的解析属于核心容器(即 BeanFactory)的扩展功能
                 b. 这些扩展功能由不同的 BeanFactory 后处理器来完成, 其实主要就是补充了一些 bean 定义
+                c. 补充的 bean 定义可以是 lazy-init 的, 配合 FactoryBean.OBJECT_TYPE_ATTRIBUTE, 按类型查找也不必提前创建
          */
     }
 }
@@ -0,0 +1,206 @@
+package com.itheima.a05;
+
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.GenericApplicationContext;
+
+/*
+    异步执行 initMethod: 注入立即可用, 真正调用时才等 init 结束
+ */
+public class A05_1 {
+
+    public static void main(String[] args) {
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. A05 的 Config, dataSource 加了 @AsyncInit");
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean("config", Config.class);
+        context.registerBean(AtBeanPostProcessor.class);
+        context.registerBean(AsyncInitPostProcessor.class);
+        context.refresh();
+        System.out.println(context.getBean("dataSource").getClass());
+        System.out.println(context.getBean("dataSource") + " " + context.getBeanDefinition("dataSource").getInitMethodName());
+        context.close();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 三个 initMethod 各需 300ms");
+        for (int round = 1; round <= 2; round++) {
+            System.out.printf("第%d轮 同步 %d ms, 异步 %d ms%n", round, refresh(null), refresh(true));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. refresh 不等 init 结束");
+        AnnotationConfigApplicationContext context2 = new AnnotationConfigApplicationContext();
+        context2.registerBean(AsyncInitPostProcessor.class, bd -> bd.getPropertyValues().add("awaitOnRefresh", false));
+        context2.register(SlowConfig.class);
+        long start = System.nanoTime();
+        context2.refresh();
+        System.out.printf("refresh %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        start = System.nanoTime();
+        System.out.printf("%s, 第一次调用 %d ms%n", context2.getBean(Service.class).handle(), (System.nanoTime() - start) / 1_000_000);
+        context2.close();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 4. 循环依赖: 提前暴露的引用也是代理");
+        AnnotationConfigApplicationContext context3 = new AnnotationConfigApplicationContext();
+        context3.registerBean(AsyncInitPostProcessor.class);
+        context3.register(CircularConfig.class);
+        context3.refresh();
+        Cache cache = context3.getBean(Cache.class);
+        System.out.println("容器中的 cache " + cache.getClass().getSimpleName() + ", loader 拿到的是同一个: "
+                           + (context3.getBean(Loader.class).cache == cache) + ", 已加载: " + cache.loaded());
+        context3.close();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 5. init 抛出 Error, refresh 同样失败");
+        AnnotationConfigApplicationContext context4 = new AnnotationConfigApplicationContext();
+        context4.registerBean(AsyncInitPostProcessor.class);
+        context4.register(FailingConfig.class);
+        try {
+            context4.refresh();
+        } catch (BeanCreationException e) {
+            System.out.println(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+
+        /*
+            学到了什么
+                a. initMethod 来自 bean 定义, BeanFactory 后处理器可以在创建前把它拿走, 交给别的地方执行
+                b. 依赖注入只需要对象引用, 用代理先顶上, 调用方法时再等 init 结束
+                c. 几个等 IO 的 init 因而可以重叠, refresh 时间从各自之和变为最长的那个
+                d. 代理是子类, final 方法、直接访问字段都绕过了等待, 适合只通过方法使用的 bean
+                e. 循环依赖时别的 bean 拿到的是提前暴露的引用, 包装对象的后处理器要实现 getEarlyBeanReference, 否则会注入原始对象
+         */
+    }
+
+    private static long refresh(Boolean async) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        if (async != null) {
+            context.registerBean(AsyncInitPostProcessor.class);
+        }
+        context.register(SlowConfig.class);
+        long start = System.nanoTime();
+        context.refresh();
+        long cost = (System.nanoTime() - start) / 1_000_000;
+        context.getBean(Service.class).handle();
+        context.close();
+        return cost;
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Configuration
+    static class SlowConfig {
+        @Bean(initMethod = "prefill")
+        @AsyncInit
+        public Pool pool() {
+            return new Pool();
+        }
+
+        @Bean(initMethod = "load")
+        @AsyncInit
+        public Templates templates() {
+            return new Templates();
+        }
+
+        @Bean(initMethod = "connect")
+        @AsyncInit
+        public Client client() {
+            return new Client();
+        }
+
+        @Bean
+        public Service service(Pool pool, Templates templates, Client client) {
+            return new Service(pool, templates, client);
+        }
+    }
+
+    @Configuration
+    static class CircularConfig {
+        @Bean(initMethod = "load")
+        @AsyncInit
+        public Cache cache() {
+            return new Cache();
+        }
+
+        @Bean
+        public Loader loader() {
+            return new Loader();
+        }
+    }
+
+    @Configuration
+    static class FailingConfig {
+        @Bean(initMethod = "connect")
+        @AsyncInit
+        public Broken broken() {
+            return new Broken();
+        }
+    }
+
+    static class Cache {
+        @Autowired
+        Loader loader;
+        private volatile boolean loaded;
+
+        public void load() {
+            sleep(100);
+            loaded = true;
+        }
+
+        public boolean loaded() {
+            return loaded;
+        }
+    }
+
+    static class Loader {
+        @Autowired
+        Cache cache;
+    }
+
+    static class Broken {
+        public void connect() {
+            throw new AssertionError("连接参数不对");
+        }
+    }
+
+    static class Pool {
+        private volatile int connections;
+
+        public void prefill() {
+            sleep(300);
+            connections = 10;
+        }
+
+        public int connections() {
+            return connections;
+        }
+    }
+
+    static class Templates {
+        public void load() {
+            sleep(300);
+        }
+    }
+
+    static class Client {
+        public void connect() {
+            sleep(300);
+        }
+    }
+
+    static class Service {
+        private final Pool pool;
+
+        // 构造时只保存引用, 不调用, 不必等 init
+        Service(Pool pool, Templates templates, Client client) {
+            this.pool = pool;
+        }
+
+        public String handle() {
+            return "连接数 " + pool.connections();
+        }
+    }
+}
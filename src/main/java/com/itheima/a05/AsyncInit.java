@@ -0,0 +1,12 @@
+package com.itheima.a05;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// 加在 @Bean 方法或组件类上, 表示这个 bean 的 initMethod 在后台线程执行, 见 AsyncInitPostProcessor
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AsyncInit {
+}
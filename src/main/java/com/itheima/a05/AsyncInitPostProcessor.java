@@ -0,0 +1,283 @@
+package com.itheima.a05;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.beans.factory.config.SmartInstantiationAwareBeanPostProcessor;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步执行 initMethod 的后处理器
+ * <p>
+ * 连接池预热、模板加载这类 initMethod 大多在等 IO, 但 refresh 中它们只能一个接一个地执行. 对加了 {@link AsyncInit} 的 bean:
+ * <ol>
+ *     <li>作为 BeanFactory 后处理器, 把 bean 定义上的 initMethod 挪到属性 {@link #INIT_METHOD_ATTRIBUTE} 里, 容器就不再同步调用它</li>
+ *     <li>作为 Bean 后处理器, 在初始化之后把 initMethod 交给后台线程执行, 并返回 CGLIB 代理:
+ *     注入照常进行, 调用代理的任何方法时, 若 init 还没结束就等它结束; init 失败则每次调用都抛出这个异常</li>
+ *     <li>默认在所有单例创建完后等待全部 init 结束, init 失败时 refresh 失败, 与同步时一样;
+ *     也可以 setAwaitOnRefresh(false), 让 refresh 直接结束</li>
+ *     <li>销毁前先等 init 结束, 免得 close 与 init 同时进行</li>
+ *     <li>循环依赖时, 提前暴露的引用(getEarlyBeanReference)就是这个代理, 初始化之后不再另建代理;
+ *     init 开始之前调用代理不等待, 与同步时在 init 之前就被调用一样</li>
+ * </ol>
+ * 只处理 bean 定义上的 initMethod(@Bean(initMethod = ...)), @PostConstruct 和 InitializingBean 仍是同步的.
+ * 代理是子类, final 方法不会被拦截, 这样的类不适合异步初始化
+ */
+public class AsyncInitPostProcessor implements BeanFactoryPostProcessor, SmartInstantiationAwareBeanPostProcessor, DestructionAwareBeanPostProcessor,
+        SmartInitializingSingleton, BeanFactoryAware, PriorityOrdered, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncInitPostProcessor.class);
+
+    public static final String INIT_METHOD_ATTRIBUTE = AsyncInitPostProcessor.class.getName() + ".initMethod";
+
+    private final Map<String, CompletableFuture<Void>> inits = new ConcurrentHashMap<>();
+
+    // 提前暴露了代理的 bean, 初始化之后在这个代理上开始 init
+    private final Map<String, EarlyProxy> earlyProxies = new ConcurrentHashMap<>();
+
+    // 异步初始化的原始对象, 销毁时按它判断是否需要先等 init
+    private final Set<Object> asyncBeans = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    private ConfigurableListableBeanFactory beanFactory;
+
+    private ExecutorService executor;
+
+    private int threads = 4;
+
+    private boolean awaitOnRefresh = true;
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setAwaitOnRefresh(boolean awaitOnRefresh) {
+        this.awaitOnRefresh = awaitOnRefresh;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+    }
+
+    // 最先执行: 拿到的是原始对象, 其它后处理器(如 AOP)再包装这里返回的代理
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition bd = beanFactory.getBeanDefinition(beanName);
+            if (bd instanceof AbstractBeanDefinition && bd.isSingleton()
+                    && ((AbstractBeanDefinition) bd).getInitMethodName() != null && isAsyncInit(beanFactory, bd)) {
+                AbstractBeanDefinition abd = (AbstractBeanDefinition) bd;
+                abd.setAttribute(INIT_METHOD_ATTRIBUTE, abd.getInitMethodName());
+                abd.setInitMethodName(null);
+                log.debug("{} 的 initMethod {} 改为异步执行", beanName, abd.getAttribute(INIT_METHOD_ATTRIBUTE));
+            }
+        }
+    }
+
+    // ConfigurationClassPostProcessor 注册的定义带有注解元数据; AtBeanPostProcessor 这样手工注册的只有工厂方法名, 用反射找
+    private static boolean isAsyncInit(ConfigurableListableBeanFactory beanFactory, BeanDefinition bd) {
+        if (bd instanceof AnnotatedBeanDefinition) {
+            MethodMetadata factoryMethod = ((AnnotatedBeanDefinition) bd).getFactoryMethodMetadata();
+            if (factoryMethod != null) {
+                return factoryMethod.isAnnotated(AsyncInit.class.getName());
+            }
+            return ((AnnotatedBeanDefinition) bd).getMetadata().hasAnnotation(AsyncInit.class.getName());
+        }
+        String className = bd.getFactoryMethodName() == null ? bd.getBeanClassName()
+                : bd.getFactoryBeanName() != null ? beanFactory.getBeanDefinition(bd.getFactoryBeanName()).getBeanClassName()
+                : bd.getBeanClassName();
+        if (className == null) {
+            return false;
+        }
+        Class<?> type = ClassUtils.resolveClassName(className, beanFactory.getBeanClassLoader());
+        if (bd.getFactoryMethodName() == null) {
+            return type.isAnnotationPresent(AsyncInit.class);
+        }
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(type)) {
+            if (method.getName().equals(bd.getFactoryMethodName()) && method.isAnnotationPresent(AsyncInit.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object getEarlyBeanReference(Object bean, String beanName) throws BeansException {
+        if (initMethodName(beanName) == null) {
+            return bean;
+        }
+        Init init = new Init();
+        Object proxy = proxy(bean, beanName, init);
+        earlyProxies.put(beanName, new EarlyProxy(bean, init));
+        return proxy;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        String initMethodName = initMethodName(beanName);
+        if (initMethodName == null) {
+            return bean;
+        }
+        Method initMethod = ReflectionUtils.findMethod(bean.getClass(), initMethodName);
+        if (initMethod == null) {
+            throw new BeanCreationException(beanName, "Could not find an init method named '" + initMethodName + "' on bean");
+        }
+        ReflectionUtils.makeAccessible(initMethod);
+        EarlyProxy early = earlyProxies.remove(beanName);
+        if (early != null && early.bean == bean) {
+            // 返回原始对象, 容器会改用提前暴露的代理
+            start(bean, beanName, initMethod, early.init);
+            return bean;
+        }
+        Init init = new Init();
+        start(bean, beanName, initMethod, init);
+        return proxy(bean, beanName, init);
+    }
+
+    private void start(Object bean, String beanName, Method initMethod, Init holder) {
+        CompletableFuture<Void> init = CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                initMethod.invoke(bean);
+            } catch (InvocationTargetException e) {
+                throw new BeanCreationException(beanName, "Invocation of async init method failed", e.getTargetException());
+            } catch (IllegalAccessException e) {
+                throw new BeanCreationException(beanName, "Invocation of async init method failed", e);
+            }
+            log.debug("{} 异步初始化完成, 耗时 {} ms", beanName, (System.nanoTime() - start) / 1_000_000);
+        }, executor());
+        holder.future = init;
+        inits.put(beanName, init);
+        asyncBeans.add(bean);
+    }
+
+    private static Object proxy(Object bean, String beanName, Init holder) {
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            CompletableFuture<Void> init = holder.future;
+            if (init != null) { // 还没开始 init 时(循环依赖中提前调用)不等
+                if (!init.isDone()) {
+                    log.debug("调用 {}.{} 时 init 尚未结束, 等待", beanName, invocation.getMethod().getName());
+                }
+                await(beanName, init);
+            }
+            return invocation.proceed();
+        });
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    private String initMethodName(String beanName) {
+        if (!beanFactory.containsBeanDefinition(beanName)) {
+            return null;
+        }
+        Object initMethodName = beanFactory.getMergedBeanDefinition(beanName).getAttribute(INIT_METHOD_ATTRIBUTE);
+        return (String) initMethodName;
+    }
+
+    private static void await(String beanName, CompletableFuture<Void> init) {
+        try {
+            init.join();
+        } catch (CompletionException e) {
+            // init 中的异常已包装成 BeanCreationException; 其它原因(如 Error)在这里包装
+            if (e.getCause() instanceof BeansException) {
+                throw (BeansException) e.getCause();
+            }
+            throw new BeanCreationException(beanName, "Async init method failed", e.getCause());
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "async-init-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (awaitOnRefresh) {
+            inits.forEach(AsyncInitPostProcessor::await);
+        }
+    }
+
+    @Override
+    public boolean requiresDestruction(Object bean) {
+        return asyncBeans.contains(bean);
+    }
+
+    // init 失败的 bean 也要照常销毁, 释放已经占用的资源
+    @Override
+    public void postProcessBeforeDestruction(Object bean, String beanName) throws BeansException {
+        asyncBeans.remove(bean);
+        CompletableFuture<Void> init = inits.remove(beanName);
+        if (init != null) {
+            try {
+                init.join();
+            } catch (CompletionException e) {
+                log.debug("{} 的异步初始化失败过, 照常销毁", beanName);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static final class Init {
+        // 开始执行后才有
+        volatile CompletableFuture<Void> future;
+    }
+
+    private static final class EarlyProxy {
+        final Object bean;
+        final Init init;
+
+        EarlyProxy(Object bean, Init init) {
+            this.bean = bean;
+            this.init = init;
+        }
+    }
+}
@@ -24,6 +24,7 @@ public class Config {
     }
 
     @Bean(initMethod = "init")
+    @AsyncInit // 注册了 AsyncInitPostProcessor 时, init 在后台执行
     public DruidDataSource dataSource() {
         DruidDataSource dataSource = new DruidDataSource();
         dataSource.setUrl("jdbc:mysql://localhost:3306/test");
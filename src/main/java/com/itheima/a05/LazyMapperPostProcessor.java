@@ -0,0 +1,106 @@
+package com.itheima.a05;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.mybatis.spring.mapper.MapperFactoryBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.context.annotation.AnnotationBeanNameGenerator;
+import org.springframework.context.index.CandidateComponentsIndex;
+import org.springframework.context.index.CandidateComponentsIndexLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 懒加载的 Mapper 注册器, 是 MapperPostProcessor 的改进版
+ * <p>
+ * 1. 只认【加了 @Mapper 的接口】, 不会把 Mapper3 这样的普通类误当成 Mapper
+ * 2. 优先读取 META-INF/spring.components 索引(key 为接口名, value 含 org.apache.ibatis.annotations.Mapper),
+ * 没有索引时才读取字节码元数据, 两种方式都不会触发 MyBatis 解析
+ * 3. 注册的 MapperFactoryBean 是 lazy-init 的, 第一次 getBean 或注入时才会创建,
+ * 此时才执行 addMapper(解析语句)并生成 Mapper 代理; 启动时 1500 个 Mapper 也只花注册 bean 定义的时间
+ */
+public class LazyMapperPostProcessor implements BeanDefinitionRegistryPostProcessor, BeanClassLoaderAware {
+
+    private static final Logger log = LoggerFactory.getLogger(LazyMapperPostProcessor.class);
+
+    private String basePackage = "com.itheima.a05.mapper";
+
+    private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    public void setBasePackage(String basePackage) {
+        this.basePackage = basePackage;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+        try {
+            AnnotationBeanNameGenerator generator = new AnnotationBeanNameGenerator();
+            for (String className : findMapperInterfaces()) {
+                Class<?> mapperInterface = ClassUtils.forName(className, classLoader); // 只加载接口本身, 不涉及 MyBatis
+                AbstractBeanDefinition bd = BeanDefinitionBuilder
+                        .genericBeanDefinition(MapperFactoryBean.class)
+                        .addConstructorArgValue(className)
+                        .setAutowireMode(AbstractBeanDefinition.AUTOWIRE_BY_TYPE)
+                        .setLazyInit(true)
+                        .getBeanDefinition();
+                // 告诉容器产品类型, 否则按类型查找时容器只能先创建 MapperFactoryBean 再问 getObjectType()
+                bd.setAttribute(FactoryBean.OBJECT_TYPE_ATTRIBUTE, mapperInterface);
+
+                AbstractBeanDefinition bd2 = BeanDefinitionBuilder.genericBeanDefinition(className).getBeanDefinition();
+                String name = generator.generateBeanName(bd2, registry);
+                registry.registerBeanDefinition(name, bd);
+                log.debug("注册懒加载 Mapper: {} -> {}", name, className);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 1. 有索引走索引  2. 没有索引再读字节码元数据
+    private Set<String> findMapperInterfaces() throws IOException {
+        CandidateComponentsIndex index = CandidateComponentsIndexLoader.loadIndex(classLoader);
+        if (index != null) {
+            Set<String> candidates = index.getCandidateTypes(basePackage, Mapper.class.getName());
+            if (!candidates.isEmpty()) {
+                return candidates;
+            }
+        }
+        Set<String> candidates = new LinkedHashSet<>();
+        String path = "classpath*:" + basePackage.replace(".", "/") + "/**/*.class";
+        Resource[] resources = new PathMatchingResourcePatternResolver(classLoader).getResources(path);
+        CachingMetadataReaderFactory factory = new CachingMetadataReaderFactory(classLoader);
+        for (Resource resource : resources) {
+            MetadataReader reader = factory.getMetadataReader(resource);
+            AnnotationMetadata metadata = reader.getAnnotationMetadata();
+            if (metadata.isInterface() && metadata.hasAnnotation(Mapper.class.getName())) {
+                candidates.add(metadata.getClassName());
+            }
+        }
+        return candidates;
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    }
+}
@@ -0,0 +1,172 @@
+package com.itheima.a06;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.BeanMethodCallAnalyzer;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.function.Supplier;
+
+/*
+    没有 @Bean 方法互相调用的配置类, 自动改为 lite 模式, 不再生成 CGLIB 子类
+ */
+public class A06_1 {
+
+    private static final String[] CONFIGS = {
+            "com.itheima.a06.MyConfig1",
+            "com.itheima.a06.MyConfig2",
+            "com.itheima.a41.A41_1$Config",
+            "com.itheima.a48.A48_2",
+            "com.itheima.a06.A06_1$CallingConfig",
+            "com.itheima.a06.A06_1$ReferenceConfig",
+            "com.itheima.a06.A06_1$InterfaceConfig",
+    };
+
+    public static void main(String[] args) throws Exception {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.springframework")).setLevel(Level.INFO);
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.itheima")).setLevel(Level.INFO);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 分析结果");
+        AnnotationConfigApplicationContext context = start(true, A06_1.class.getClassLoader());
+        BeanMethodCallAnalyzer analyzer = context.getBean(BeanMethodCallAnalyzer.class);
+        System.out.println("改为 lite: " + analyzer.getConverted());
+        System.out.println("保持 full: " + analyzer.getKept());
+        CallingConfig calling = context.getBean(CallingConfig.class);
+        System.out.println(calling.getClass().getSimpleName() + ": " + (calling.client().pool == context.getBean(Pool.class)));
+        InterfaceConfig implementing = context.getBean(InterfaceConfig.class);
+        System.out.println(implementing.getClass().getSimpleName() + ": " + (implementing.server().connections == context.getBean(Connections.class)));
+        context.close();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 每次使用新的类加载器, 相当于冷启动");
+        for (int round = 1; round <= 5; round++) {
+            long[] full = refresh(false);
+            long[] lite = refresh(true);
+            System.out.printf("第%d轮 原来 %d ms, %d 个增强类; 分析后 %d ms, %d 个增强类%n", round, full[0], full[1], lite[0], lite[1]);
+        }
+
+        /*
+            学到了什么
+                a. full 模式的 CGLIB 子类只为拦截 @Bean 方法之间的调用, 保证拿到容器中的单例
+                b. 从字节码就能看出有没有这种调用, 包括内部类、lambda、方法引用以及接口 default @Bean 方法里的调用
+                c. 没有调用的类改为 lite, 少生成、加载一个类; 外部代码直接调用配置类的 @Bean 方法则看不出来, 需要手动排除
+         */
+    }
+
+    private static long[] refresh(boolean analyze) throws Exception {
+        long start = System.nanoTime();
+        AnnotationConfigApplicationContext context = start(analyze, new IsolatedClassLoader());
+        long cost = (System.nanoTime() - start) / 1_000_000;
+        long enhanced = 0;
+        for (String name : context.getBeanDefinitionNames()) {
+            Class<?> type = context.getType(name);
+            if (type != null && type.getName().contains("$$EnhancerBySpringCGLIB$$")) { // lambda 的类名也带 $$
+                enhanced++;
+            }
+        }
+        context.close();
+        return new long[]{cost, enhanced};
+    }
+
+    private static AnnotationConfigApplicationContext start(boolean analyze, ClassLoader loader) throws Exception {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.setClassLoader(loader);
+        if (analyze) {
+            context.registerBean(BeanMethodCallAnalyzer.class);
+        }
+        for (String config : CONFIGS) {
+            context.register(loader.loadClass(config));
+        }
+        context.refresh();
+        return context;
+    }
+
+    // 自己加载 com.itheima 下的类, CGLIB 子类也就定义在这个加载器中, 不会复用上一轮生成的
+    static class IsolatedClassLoader extends URLClassLoader {
+        IsolatedClassLoader() {
+            super(new URL[]{A06_1.class.getProtectionDomain().getCodeSource().getLocation()}, A06_1.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("com.itheima.")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                return type != null ? type : findClass(name);
+            }
+        }
+    }
+
+    @Configuration
+    static class CallingConfig {
+        @Bean
+        public Client client() {
+            return new Client(pool()); // 需要增强才能拿到容器中的 pool
+        }
+
+        @Bean
+        public Pool pool() {
+            return new Pool();
+        }
+    }
+
+    @Configuration
+    static class ReferenceConfig {
+        @Bean
+        public Supplier<Cache> cacheSupplier() {
+            return this::cache;
+        }
+
+        @Bean
+        public Cache cache() {
+            return new Cache();
+        }
+    }
+
+    // @Bean 方法写在接口的 default 方法里, 互相调用同样需要增强
+    interface ServerBeans {
+        @Bean
+        default Server server() {
+            return new Server(connections());
+        }
+
+        @Bean
+        default Connections connections() {
+            return new Connections();
+        }
+    }
+
+    @Configuration
+    static class InterfaceConfig implements ServerBeans {
+    }
+
+    static class Server {
+        final Connections connections;
+
+        Server(Connections connections) {
+            this.connections = connections;
+        }
+    }
+
+    static class Connections {
+    }
+
+    static class Client {
+        final Pool pool;
+
+        Client(Pool pool) {
+            this.pool = pool;
+        }
+    }
+
+    static class Pool {
+    }
+
+    static class Cache {
+    }
+}
@@ -0,0 +1,165 @@
+package com.itheima.a07;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/*
+    并行销毁: 互不依赖的 bean 同时销毁, 依赖者先于被依赖者, 每个 bean 的销毁有超时
+ */
+public class A07_3 {
+
+    public static void main(String[] args) {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(DefaultListableBeanFactory.class)).setLevel(Level.INFO);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 原来的顺序销毁");
+        for (int round = 1; round <= 2; round++) {
+            System.out.printf("第%d轮 顺序 %d ms, 并行 %d ms%n", round,
+                    close(new DefaultListableBeanFactory()), close(parallel()));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 并行销毁的顺序与报告");
+        ParallelDestroyBeanFactory beanFactory = parallel();
+        Trace.enabled = true;
+        System.out.printf("关闭耗时 %d ms%n", close(beanFactory));
+        Trace.enabled = false;
+        beanFactory.getDestroyReport().forEach(System.out::println);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 中断后仍不返回的销毁");
+        beanFactory = parallel();
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.registerBean("socket", Socket.class);
+        context.registerBean("deafClient", DeafClient.class);
+        context.refresh();
+        long start = System.nanoTime();
+        context.close();
+        System.out.printf("关闭耗时 %d ms, socket 是否已关闭: %s%n",
+                (System.nanoTime() - start) / 1_000_000, Socket.closed);
+
+        /*
+            学到了什么
+                a. 容器关闭时, 依赖者(service)一定要先于被依赖者(pool)销毁, 这个顺序来自注入时记录的 dependentBeanMap
+                b. 只要保证这个顺序, 互不依赖的 bean 可以同时销毁, 关闭时间从各 bean 之和变为最长的依赖链
+                c. 销毁方法卡住时, 超时后中断它; 它返回之前, 它依赖的 bean 不能销毁
+                   中断也不返回的, 再等一个超时后放弃它依赖的 bean(socket 不关闭), 好过在用着的时候被关掉
+                d. 销毁期间仍不允许创建新的单例, 销毁结束后可以再创建
+         */
+    }
+
+    private static ParallelDestroyBeanFactory parallel() {
+        ParallelDestroyBeanFactory beanFactory = new ParallelDestroyBeanFactory();
+        beanFactory.setDestroyParallelism(4);
+        beanFactory.setDestroyTimeout(Duration.ofMillis(300));
+        return beanFactory;
+    }
+
+    private static long close(DefaultListableBeanFactory beanFactory) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.registerBean("dataSource", DataSourcePool.class);
+        context.registerBean("httpClient", HttpClient.class);
+        context.registerBean("mqClient", MqClient.class, bd -> bd.setDestroyMethodName("shutdown"));
+        context.registerBean("orderService", OrderService.class);
+        context.registerBean("stuckClient", StuckClient.class);
+        context.refresh();
+        long start = System.nanoTime();
+        context.close();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    static class Trace {
+        static volatile boolean enabled;
+
+        static void slow(String what, long millis) {
+            if (enabled) {
+                System.out.printf("%s 开始 [%s]%n", what, Thread.currentThread().getName());
+            }
+            A07_3.sleep(millis);
+            if (enabled) {
+                System.out.printf("%s 结束%n", what);
+            }
+        }
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // @PreDestroy
+    static class DataSourcePool {
+        @PreDestroy
+        public void close() {
+            Trace.slow("dataSource 关闭连接", 200);
+        }
+    }
+
+    // DisposableBean
+    static class HttpClient implements DisposableBean {
+        @Override
+        public void destroy() {
+            Trace.slow("httpClient 关闭连接池", 200);
+        }
+    }
+
+    // destroyMethod
+    static class MqClient {
+        public void shutdown() {
+            Trace.slow("mqClient 等待消息发送完", 200);
+        }
+    }
+
+    // 依赖前三个, 必须先销毁
+    static class OrderService {
+        @Autowired
+        DataSourcePool dataSource;
+        @Autowired
+        HttpClient httpClient;
+        @Autowired
+        MqClient mqClient;
+
+        @PreDestroy
+        public void stop() {
+            Trace.slow("orderService 处理完剩余请求", 100);
+        }
+    }
+
+    // 销毁时卡住的客户端
+    static class StuckClient implements DisposableBean {
+        @Override
+        public void destroy() {
+            Trace.slow("stuckClient 断开连接", 1000);
+        }
+    }
+
+    static class Socket implements DisposableBean {
+        static volatile boolean closed;
+
+        @Override
+        public void destroy() {
+            closed = true;
+        }
+    }
+
+    // 不响应中断, 销毁时一直在用 socket
+    static class DeafClient implements DisposableBean {
+        @Autowired
+        Socket socket;
+
+        @Override
+        public void destroy() {
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
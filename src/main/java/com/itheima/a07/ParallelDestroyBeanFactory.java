@@ -0,0 +1,339 @@
+package com.itheima.a07;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanCreationNotAllowedException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行销毁单例的 BeanFactory
+ * <p>
+ * destroySingletons 按注册的逆序逐个销毁, 每个 bean 的 @PreDestroy、DisposableBean、destroyMethod 依次执行,
+ * 几个关闭很慢的连接池、客户端就会首尾相接地拖长关闭时间. 这里:
+ * <ul>
+ *     <li>按依赖关系排序: 依赖 B 的 bean(经由 getDependentBeans 传递, 包括中间不需要销毁的 bean)都销毁完, 才销毁 B;
+ *     互不依赖的 bean 在线程池中并行销毁</li>
+ *     <li>每个 bean 的销毁有超时: 超时后中断执行销毁的线程. 它真正返回之前, 它依赖的 bean 不会被销毁;
+ *     连续两个超时时长内没有任何 bean 销毁结束, 就放弃还没销毁的 bean(打日志), 不再销毁它们</li>
+ *     <li>循环依赖中的 bean 无法排序, 留给父类按原来的方式顺序销毁</li>
+ * </ul>
+ * 销毁结束后可以通过 {@link #getDestroyReport()} 查看每个 bean 的销毁耗时, 慢的排在前面
+ */
+public class ParallelDestroyBeanFactory extends DefaultListableBeanFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelDestroyBeanFactory.class);
+
+    // 需要销毁的单例, 按注册顺序
+    private final Set<String> disposables = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private int destroyParallelism = Runtime.getRuntime().availableProcessors();
+
+    private Duration destroyTimeout = Duration.ofSeconds(10);
+
+    private Duration slowThreshold = Duration.ofMillis(100);
+
+    private volatile boolean destroying;
+
+    // 依赖的 bean 销毁卡住而被放弃的 bean, 父类的 destroySingletons 也不能销毁它们
+    private volatile Set<String> abandoned = Collections.emptySet();
+
+    private volatile List<DestroyRecord> report = Collections.emptyList();
+
+    public void setDestroyParallelism(int destroyParallelism) {
+        Assert.isTrue(destroyParallelism > 0, "destroyParallelism must be positive");
+        this.destroyParallelism = destroyParallelism;
+    }
+
+    public void setDestroyTimeout(Duration destroyTimeout) {
+        this.destroyTimeout = destroyTimeout;
+    }
+
+    /**
+     * 超过这个耗时的 bean 在销毁结束时打日志
+     */
+    public void setSlowThreshold(Duration slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * 最近一次 destroySingletons 中每个 bean 的销毁情况, 按耗时从大到小
+     */
+    public List<DestroyRecord> getDestroyReport() {
+        return report;
+    }
+
+    @Override
+    public void registerDisposableBean(String beanName, DisposableBean bean) {
+        super.registerDisposableBean(beanName, bean);
+        disposables.add(beanName);
+    }
+
+    @Override
+    public void destroySingleton(String beanName) {
+        if (abandoned.contains(beanName)) {
+            return;
+        }
+        disposables.remove(beanName);
+        super.destroySingleton(beanName);
+    }
+
+    // 父类的销毁标记是私有的, 并行销毁期间用自己的标记拒绝创建新单例
+    @Override
+    public Object getSingleton(String beanName, ObjectFactory<?> singletonFactory) {
+        if (destroying) {
+            throw new BeanCreationNotAllowedException(beanName,
+                    "Singleton bean creation not allowed while singletons of this factory are in destruction " +
+                    "(Do not request a bean from a BeanFactory in a destroy method implementation!)");
+        }
+        return super.getSingleton(beanName, singletonFactory);
+    }
+
+    @Override
+    public void destroySingletons() {
+        destroying = true;
+        try {
+            abandoned = destroyInParallel();
+        } finally {
+            destroying = false;
+        }
+        try {
+            super.destroySingletons(); // 剩下循环依赖中的 bean, 并清理各种缓存
+        } finally {
+            abandoned = Collections.emptySet();
+        }
+    }
+
+    // 返回被放弃的 bean
+    private Set<String> destroyInParallel() {
+        List<String> names;
+        synchronized (disposables) {
+            names = new ArrayList<>(disposables);
+        }
+        if (names.isEmpty()) {
+            return Collections.emptySet();
+        }
+        // before: 销毁 B 之前必须先销毁的 bean; after: 反过来, 某个 bean 销毁完后可以减少谁的等待数
+        Set<String> candidates = new HashSet<>(names);
+        Map<String, AtomicInteger> pending = new HashMap<>();
+        Map<String, List<String>> after = new HashMap<>();
+        for (String name : names) {
+            Set<String> before = dependentsClosure(name, candidates);
+            pending.put(name, new AtomicInteger(before.size()));
+            for (String dependent : before) {
+                after.computeIfAbsent(dependent, k -> new ArrayList<>()).add(name);
+            }
+        }
+
+        List<DestroyRecord> records = Collections.synchronizedList(new ArrayList<>());
+        BlockingQueue<String> finished = new LinkedBlockingQueue<>();
+        Set<String> done = new HashSet<>();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(destroyParallelism, names.size()), r -> {
+            Thread thread = new Thread(r, "destroy-" + threads.incrementAndGet());
+            thread.setDaemon(true); // 中断后仍不返回的销毁不拖住 JVM 退出
+            return thread;
+        });
+        // 所有 bean 共用一个计时线程, 正常结束的 bean 取消自己的超时任务
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "destroy-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        Context context = new Context(executor, timer, finished, records);
+        boolean gaveUp = false;
+        try {
+            int inFlight = 0;
+            // 逆序提交, 没有依赖关系时与原来的销毁顺序一致
+            for (int i = names.size() - 1; i >= 0; i--) {
+                if (pending.get(names.get(i)).get() == 0) {
+                    context.submit(names.get(i));
+                    inFlight++;
+                }
+            }
+            int idle = 0;
+            while (inFlight > 0) {
+                String name = finished.poll(destroyTimeout.toNanos(), TimeUnit.NANOSECONDS);
+                if (name == null) {
+                    // 第一个时长内还在执行的销毁都已超时被中断, 第二个时长是留给它们响应中断的
+                    if (++idle == 2) {
+                        gaveUp = true;
+                        break;
+                    }
+                    continue;
+                }
+                idle = 0;
+                inFlight--;
+                done.add(name);
+                for (String next : after.getOrDefault(name, Collections.emptyList())) {
+                    if (pending.get(next).decrementAndGet() == 0) {
+                        context.submit(next);
+                        inFlight++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            gaveUp = true;
+        } finally {
+            if (gaveUp) {
+                executor.shutdownNow(); // 还在排队的不再执行
+            } else {
+                executor.shutdown();
+            }
+            timer.shutdownNow();
+        }
+
+        Set<String> left = Collections.emptySet();
+        if (gaveUp) {
+            left = new LinkedHashSet<>(names);
+            left.removeAll(done);
+            left.removeAll(context.hung());
+            log.warn("销毁 {} 被中断后仍未返回, 放弃销毁 {}", context.hung(), left);
+        }
+
+        List<DestroyRecord> sorted = new ArrayList<>(records);
+        sorted.sort(Comparator.comparing(DestroyRecord::getDuration).reversed());
+        report = Collections.unmodifiableList(sorted);
+        for (DestroyRecord record : sorted) {
+            if (record.getDuration().compareTo(slowThreshold) >= 0) {
+                log.info("销毁较慢: {}", record);
+            }
+        }
+        return left;
+    }
+
+    // 一次 destroyInParallel 中提交销毁任务用到的东西
+    private final class Context {
+        private final ExecutorService executor;
+        private final ScheduledExecutorService timer;
+        private final BlockingQueue<String> finished;
+        private final List<DestroyRecord> records;
+        // 超时被中断后还没返回的 bean
+        private final Set<String> hung = ConcurrentHashMap.newKeySet();
+
+        Context(ExecutorService executor, ScheduledExecutorService timer,
+                BlockingQueue<String> finished, List<DestroyRecord> records) {
+            this.executor = executor;
+            this.timer = timer;
+            this.finished = finished;
+            this.records = records;
+        }
+
+        Set<String> hung() {
+            return hung;
+        }
+
+        void submit(String beanName) {
+            AtomicBoolean settled = new AtomicBoolean(); // 正常结束和超时只有一个算数
+            FutureTask<?>[] task = new FutureTask<?>[1];
+            task[0] = new FutureTask<>(() -> {
+                long start = System.nanoTime();
+                String thread = Thread.currentThread().getName();
+                // 从开始执行算起, 排队的时间不算
+                ScheduledFuture<?> timeout = timer.schedule(() -> {
+                    if (!settled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    hung.add(beanName);
+                    records.add(new DestroyRecord(beanName, thread, destroyTimeout, true));
+                    log.warn("销毁 {} 超过 {} ms, 中断它", beanName, destroyTimeout.toMillis());
+                    task[0].cancel(true);
+                }, destroyTimeout.toNanos(), TimeUnit.NANOSECONDS);
+                try {
+                    destroySingleton(beanName);
+                } finally {
+                    timeout.cancel(false);
+                    Duration duration = Duration.ofNanos(System.nanoTime() - start);
+                    if (settled.compareAndSet(false, true)) {
+                        records.add(new DestroyRecord(beanName, thread, duration, false));
+                    } else {
+                        hung.remove(beanName);
+                        log.warn("销毁 {} 超时后共用 {} ms 才返回", beanName, duration.toMillis());
+                    }
+                    // 真正返回后才放行它依赖的 bean
+                    finished.add(beanName);
+                }
+            }, null);
+            executor.execute(task[0]);
+        }
+    }
+
+    // 直接或间接依赖 beanName 的 bean 中需要销毁的那些, 不含自己
+    private Set<String> dependentsClosure(String beanName, Set<String> candidates) {
+        Set<String> result = new HashSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(beanName);
+        while (!stack.isEmpty()) {
+            for (String dependent : getDependentBeans(stack.pop())) {
+                if (visited.add(dependent)) {
+                    if (candidates.contains(dependent) && !dependent.equals(beanName)) {
+                        result.add(dependent);
+                    }
+                    stack.push(dependent);
+                }
+            }
+        }
+        return result;
+    }
+
+    public static class DestroyRecord {
+        private final String beanName;
+        private final String thread;
+        private final Duration duration;
+        private final boolean timedOut;
+
+        DestroyRecord(String beanName, String thread, Duration duration, boolean timedOut) {
+            this.beanName = beanName;
+            this.thread = thread;
+            this.duration = duration;
+            this.timedOut = timedOut;
+        }
+
+        public String getBeanName() {
+            return beanName;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        @Override
+        public String toString() {
+            return beanName + " " + duration.toMillis() + " ms" + (timedOut ? "(超时)" : "") + " [" + thread + "]";
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.itheima.a08;
+
+import com.itheima.a08.sub.E;
+import com.itheima.a08.sub.F3;
+import com.itheima.a08.sub.F4;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+
+import java.util.function.Supplier;
+
+/*
+    生成的实例化工厂, 对比 A08_1 中 prototype bean 每次都反射调用构造方法
+    如果 jdk > 8, 运行时请添加 --add-opens java.base/java.lang=ALL-UNNAMED
+ */
+@ComponentScan("com.itheima.a08.sub")
+public class A08_2 {
+    public static void main(String[] args) {
+        AnnotationConfigApplicationContext reflective = prepare(new DefaultListableBeanFactory());
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.setInstantiationStrategy(new GeneratedInstantiationStrategy());
+        AnnotationConfigApplicationContext generated = prepare(beanFactory);
+
+        // 两种方式交替跑, 减少 JIT、GC 先后顺序带来的偏差
+        for (int round = 1; round <= 2; round++) {
+            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> 第" + round + "轮");
+            E e1 = reflective.getBean(E.class);
+            E e2 = generated.getBean(E.class);
+            measure("反射 @Lazy F1", () -> e1.getF1().toString()); // 代理每次调用方法都会 getBean 一个新的 F1
+            measure("生成 @Lazy F1", () -> e2.getF1().toString());
+            measure("反射 ObjectFactory F3", e1::getF3);
+            measure("生成 ObjectFactory F3", e2::getF3);
+            measure("反射 getBean F4", e1::getF4);
+            measure("生成 getBean F4", e2::getF4);
+            measure("反射 构造注入 G", () -> reflective.getBean(G.class));
+            measure("生成 构造注入 G", () -> generated.getBean(G.class));
+        }
+        System.out.println(generated.getBean(G.class));
+        reflective.close();
+        generated.close();
+
+        /*
+            学到了什么
+                a. 实例化策略(InstantiationStrategy)是 BeanFactory 的可替换部件, 默认是 CglibSubclassingInstantiationStrategy
+                b. 自动装配构造时, ConstructorResolver 先解析好参数, 最后也是交给实例化策略 new 对象
+                c. 生成的类与 bean 类同 nest, 私有构造也能直接调用; 方法注入仍需 CGLIB 子类
+         */
+    }
+
+    private static AnnotationConfigApplicationContext prepare(DefaultListableBeanFactory beanFactory) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.register(A08_2.class);
+        context.registerBean("g", G.class, bd -> bd.setScope(BeanDefinition.SCOPE_PROTOTYPE));
+        context.refresh();
+        E e = context.getBean(E.class);
+        for (int i = 0; i < 20_000; i++) { // 预热
+            e.getF1().toString();
+            e.getF3();
+            e.getF4();
+            context.getBean(G.class);
+        }
+        return context;
+    }
+
+    private static void measure(String title, Supplier<?> creation) {
+        int count = 200_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            creation.get();
+        }
+        long cost = System.nanoTime() - start;
+        System.out.printf("%s: %d 次耗时 %d ms, 每秒 %d 次%n", title, count, cost / 1_000_000, count * 1_000_000_000L / cost);
+    }
+
+    static class G {
+        private final F3 f3;
+        private final F4 f4;
+
+        private G(F3 f3, F4 f4) {
+            this.f3 = f3;
+            this.f4 = f4;
+        }
+
+        @Override
+        public String toString() {
+            return "G{" +
+                   "f3=" + f3 +
+                   ", f4=" + f4 +
+                   '}';
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.itheima.a08;
+
+import com.itheima.util.NestmateClassUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.beans.BeanInstantiationException;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.support.CglibSubclassingInstantiationStrategy;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.KotlinDetector;
+import org.springframework.lang.Nullable;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用生成的工厂类代替反射调用构造方法的实例化策略
+ * <p>
+ * SimpleInstantiationStrategy 每次都走 BeanUtils.instantiateClass -> Constructor.newInstance,
+ * prototype 作用域的 bean(@Lazy 代理、ObjectFactory、getBean 每次拿到的都是新对象)创建频繁时, 反射占了不少比例
+ * <p>
+ * 这里每个构造方法第一次用到时, 生成一个与 bean 类同 nest 的隐藏类, 里面就是 new + invokespecial,
+ * 之后直接调用; 无参构造和自动装配构造(ConstructorResolver 解析好参数后调用)都走这里.
+ * 单例只创建一次, 生成类反而更慢; 单例、有方法注入(lookup-method、replaced-method)、工厂方法、生成失败时仍交给父类
+ */
+public class GeneratedInstantiationStrategy extends CglibSubclassingInstantiationStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(GeneratedInstantiationStrategy.class);
+
+    private final Map<Class<?>, Instantiator> defaultConstructors = new ConcurrentHashMap<>();
+
+    private final Map<Constructor<?>, Instantiator> constructors = new ConcurrentHashMap<>();
+
+    /**
+     * 生成的工厂: 按构造方法的参数类型逐个拆箱、强转后 new 出对象
+     */
+    public interface Instantiator {
+        Object newInstance(Object[] args) throws Throwable;
+    }
+
+    @Override
+    public Object instantiate(RootBeanDefinition bd, @Nullable String beanName, BeanFactory owner) {
+        if (bd.hasMethodOverrides() || bd.isSingleton() || !bd.hasBeanClass()) {
+            return super.instantiate(bd, beanName, owner);
+        }
+        Class<?> clazz = bd.getBeanClass();
+        Instantiator instantiator = defaultConstructors.get(clazz);
+        if (instantiator == null) {
+            if (clazz.isInterface()) {
+                throw new BeanInstantiationException(clazz, "Specified class is an interface");
+            }
+            Constructor<?> ctor;
+            try {
+                ctor = clazz.getDeclaredConstructor();
+            } catch (Throwable ex) {
+                throw new BeanInstantiationException(clazz, "No default constructor found", ex);
+            }
+            instantiator = constructors.computeIfAbsent(ctor, this::createInstantiator);
+            defaultConstructors.put(clazz, instantiator);
+        }
+        return newInstance(instantiator, clazz, new Object[0]);
+    }
+
+    @Override
+    public Object instantiate(RootBeanDefinition bd, @Nullable String beanName, BeanFactory owner,
+                              Constructor<?> ctor, Object... args) {
+        if (bd.hasMethodOverrides() || bd.isSingleton()) {
+            return super.instantiate(bd, beanName, owner, ctor, args);
+        }
+        Instantiator instantiator = constructors.computeIfAbsent(ctor, this::createInstantiator);
+        return newInstance(instantiator, ctor.getDeclaringClass(), args);
+    }
+
+    // 与 BeanUtils.instantiateClass 一样, 构造方法抛出的异常包装成 BeanInstantiationException
+    private Object newInstance(Instantiator instantiator, Class<?> clazz, Object[] args) {
+        try {
+            return instantiator.newInstance(args);
+        } catch (BeansException ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new BeanInstantiationException(clazz, "Constructor threw exception", ex);
+        }
+    }
+
+    private Instantiator createInstantiator(Constructor<?> ctor) {
+        Instantiator reflective = args -> BeanUtils.instantiateClass(ctor, args);
+        Class<?> clazz = ctor.getDeclaringClass();
+        // 抽象类交给 BeanUtils 报错; Kotlin 的默认参数等由 BeanUtils 处理
+        if (Modifier.isAbstract(clazz.getModifiers()) || KotlinDetector.isKotlinType(clazz)
+            || !NestmateClassUtil.isAccessible(ctor.getParameterTypes(), clazz)) {
+            return reflective;
+        }
+        try {
+            Instantiator generated = generate(ctor);
+            log.debug("为 {} 生成实例化工厂", ctor);
+            if (hasPrimitiveParameter(ctor)) {
+                // BeanUtils 会把基本类型参数的 null 换成默认值, 生成的代码拆箱会 NPE, 这种情况仍交给 BeanUtils
+                return args -> containsNull(args) ? reflective.newInstance(args) : generated.newInstance(args);
+            }
+            return generated;
+        } catch (Throwable e) {
+            log.debug("为 {} 生成实例化工厂失败, 退回反射: {}", ctor, e.toString());
+            return reflective;
+        }
+    }
+
+    private static boolean hasPrimitiveParameter(Constructor<?> ctor) {
+        for (Class<?> type : ctor.getParameterTypes()) {
+            if (type.isPrimitive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsNull(Object[] args) {
+        for (Object arg : args) {
+            if (arg == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+        生成的类大致如下(与 bean 类同包、同 nest, 所以 private 构造也能调用)
+        final class F1$$Instantiator implements Instantiator {
+            public Object newInstance(Object[] args) {
+                return new F1((A) args[0], ((Integer) args[1]).intValue());
+            }
+        }
+     */
+    private static Instantiator generate(Constructor<?> ctor) throws Throwable {
+        Class<?> clazz = ctor.getDeclaringClass();
+        String owner = Type.getInternalName(clazz);
+        ClassWriter cw = NestmateClassUtil.newClassWriter();
+        cw.visit(Opcodes.V11, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, owner + "$$Instantiator", null,
+                "java/lang/Object", new String[]{Type.getInternalName(Instantiator.class)});
+        NestmateClassUtil.visitDefaultConstructor(cw);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "newInstance", "([Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, owner);
+        mv.visitInsn(Opcodes.DUP);
+        Class<?>[] parameterTypes = ctor.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            NestmateClassUtil.push(mv, i);
+            mv.visitInsn(Opcodes.AALOAD);
+            NestmateClassUtil.unboxOrCast(mv, parameterTypes[i]);
+        }
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, owner, "<init>", Type.getConstructorDescriptor(ctor), false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        return NestmateClassUtil.defineAndInstantiate(clazz, cw.toByteArray());
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.SpringApplicationRunListener;
 import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.support.IndexedSpringFactoriesLoader;
 import org.springframework.core.io.support.SpringFactoriesLoader;
 
 import java.lang.reflect.Constructor;
@@ -12,6 +13,9 @@ import java.util.List;
 
 public class A39_2 {
     public static void main(String[] args) throws Exception{
+        // 在创建 SpringApplication 之前安装 spring.factories 索引, 构造方法读取初始化器、监听器时就能命中
+        boolean indexed = IndexedSpringFactoriesLoader.install(A39_2.class.getClassLoader());
+        System.out.println("使用 spring.factories 索引: " + indexed);
 
         // 添加 app 监听器
         SpringApplication app = new SpringApplication();
@@ -44,7 +48,7 @@ public class A39_2 {
 
         /*
             学到了什么
-            a. 如何读取 spring.factories 中的配置
+            a. 如何读取 spring.factories 中的配置; 结果按类加载器缓存, 索引要在第一次读取(创建 SpringApplication)之前安装
             b. run 方法内获取事件发布器 (得到 SpringApplicationRunListeners) 的过程, 对应步骤中
                 1.获取事件发布器
                 发布 application starting 事件1️⃣
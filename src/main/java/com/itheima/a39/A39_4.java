@@ -0,0 +1,76 @@
+package com.itheima.a39;
+
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.io.support.IndexedSpringFactoriesLoader;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    预先合并的 spring.factories 索引: 启动时只找一个资源, 不再逐个 jar 枚举、解析
+ */
+public class A39_4 {
+
+    private static final List<Class<?>> TYPES = Arrays.asList(SpringApplicationRunListener.class,
+            ApplicationContextInitializer.class, ApplicationListener.class, EnableAutoConfiguration.class);
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 构建步骤: 合并类路径上的 spring.factories");
+        Path output = Files.createTempDirectory("factories-index");
+        IndexedSpringFactoriesLoader.main(new String[]{output.toString()}); // 实际由 mvn -P factories-index 在 process-classes 阶段执行
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 索引与逐个读取的结果相同");
+        try (URLClassLoader plain = loader(output); URLClassLoader indexed = loader(output)) {
+            System.out.println("使用了索引: " + IndexedSpringFactoriesLoader.install(indexed));
+            for (Class<?> type : TYPES) {
+                List<String> expected = SpringFactoriesLoader.loadFactoryNames(type, plain);
+                List<String> actual = SpringFactoriesLoader.loadFactoryNames(type, indexed);
+                System.out.printf("%s: %d 个, 相同: %s%n", type.getSimpleName(), actual.size(), expected.equals(actual));
+            }
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 每次使用新的类加载器, 第一次读取的耗时");
+        for (int round = 1; round <= 5; round++) {
+            System.out.printf("第%d轮 逐个读取 %.2f ms, 索引 %.2f ms%n", round, firstLoad(output, false), firstLoad(output, true));
+        }
+
+        /*
+            学到了什么
+                a. SpringFactoriesLoader 按类加载器缓存合并结果, 第一次要枚举所有 jar 中的 spring.factories 逐个解析
+                b. 类路径在构建后就固定了, 合并可以提前到构建时, 运行时只需 getResource 一个文件
+                c. 把索引放进 SpringFactoriesLoader 的缓存(包内可见), SpringApplication 等所有调用方都受益
+                d. 本项目只有十来个 spring.factories, 差别有限; 依赖上百个的 fat jar 中枚举、解压的开销更明显
+         */
+    }
+
+    private static double firstLoad(Path output, boolean useIndex) throws Exception {
+        try (URLClassLoader loader = loader(output)) {
+            long start = System.nanoTime();
+            if (useIndex) {
+                IndexedSpringFactoriesLoader.install(loader);
+            }
+            SpringFactoriesLoader.loadFactoryNames(EnableAutoConfiguration.class, loader);
+            return (System.nanoTime() - start) / 1_000_000.0;
+        }
+    }
+
+    // 索引所在目录排在最前面, 相当于应用自己的 classes
+    private static URLClassLoader loader(Path output) throws Exception {
+        List<URL> urls = new ArrayList<>();
+        urls.add(output.toUri().toURL());
+        for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            urls.add(new File(path).toURI().toURL());
+        }
+        return new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+    }
+}
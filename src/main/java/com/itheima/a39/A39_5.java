@@ -0,0 +1,136 @@
+package com.itheima.a39;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.annotation.AnnotatedBeanDefinitionReader;
+import org.springframework.context.annotation.ClassPathBeanDefinitionScanner;
+import org.springframework.context.annotation.ConcurrentBeanDefinitionLoader;
+import org.springframework.context.annotation.FullyQualifiedAnnotationBeanNameGenerator;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    注解类、XML、组件扫描三种来源并发加载 bean 定义, 再按顺序合并
+ */
+public class A39_5 {
+
+    public static void main(String[] args) throws IOException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.springframework")).setLevel(Level.INFO);
+        int processors = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. A39_3 第 10 步的三种来源, 结果与顺序加载相同");
+        DefaultListableBeanFactory sequential = new DefaultListableBeanFactory();
+        new AnnotatedBeanDefinitionReader(sequential).register(A39_3.Config.class);
+        new XmlBeanDefinitionReader(sequential).loadBeanDefinitions(new ClassPathResource("b03.xml"));
+        new ClassPathBeanDefinitionScanner(sequential).scan("com.itheima.a39.sub");
+        DefaultListableBeanFactory concurrent = new DefaultListableBeanFactory();
+        ConcurrentBeanDefinitionLoader loader = newLoader(concurrent)
+                .register(A39_3.Config.class).loadXml(new ClassPathResource("b03.xml")).scan("com.itheima.a39.sub");
+        loader.setParallelism(processors);
+        loader.load();
+        loader.getReport().forEach(System.out::println);
+        for (String name : concurrent.getBeanDefinitionNames()) {
+            System.out.println("name:" + name + " 来源：" + concurrent.getBeanDefinition(name).getResourceDescription());
+        }
+        System.out.println("顺序相同: " + describe(sequential).equals(describe(concurrent)));
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 3000 个 bean 的 XML + 把 org.springframework.web 下的类都扫描成 bean");
+        Resource xml = largeXml(3000);
+        for (int round = 1; round <= 4; round++) {
+            long start = System.nanoTime();
+            DefaultListableBeanFactory one = new DefaultListableBeanFactory();
+            new AnnotatedBeanDefinitionReader(one).register(A39_3.Config.class);
+            new XmlBeanDefinitionReader(one).loadBeanDefinitions(xml);
+            largeScan(one);
+            long sequentialCost = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            DefaultListableBeanFactory other = new DefaultListableBeanFactory();
+            ConcurrentBeanDefinitionLoader large = newLoader(other)
+                    .register(A39_3.Config.class).loadXml(xml).add("scan org.springframework.web", A39_5::largeScan);
+            large.setParallelism(processors);
+            large.load();
+            long concurrentCost = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("第%d轮 顺序 %d ms; 并发 %d ms(最慢的来源 %d ms), 顺序相同: %s%n", round, sequentialCost, concurrentCost,
+                    large.getReport().stream().mapToLong(r -> r.getDuration().toMillis()).max().orElse(0), describe(one).equals(describe(other)));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 两个 XML 各有一个没有 id 的 bean");
+        Resource anonymous1 = anonymousXml();
+        Resource anonymous2 = anonymousXml();
+        DefaultListableBeanFactory one = new DefaultListableBeanFactory();
+        new XmlBeanDefinitionReader(one).loadBeanDefinitions(anonymous1, anonymous2);
+        DefaultListableBeanFactory other = new DefaultListableBeanFactory();
+        newLoader(other).loadXml(anonymous1).loadXml(anonymous2).load();
+        System.out.println("顺序加载: " + describe(one) + " 别名 " + Arrays.toString(one.getAliases("com.itheima.a39.A39_3.Bean4#0")));
+        System.out.println("并发加载: " + describe(other) + " 别名 " + Arrays.toString(other.getAliases("com.itheima.a39.A39_3.Bean4#0")));
+
+        /*
+            学到了什么
+                a. 三种来源各自读取时互不依赖, 可以读进各自的暂存注册表
+                b. 合并时按来源顺序调用 registerBeanDefinition, 覆盖规则和最终顺序与顺序加载相同
+                c. 扫描器遇到同名 bean 时的兼容性检查, 合并时要照样做一遍
+                d. 条件在读取时求值, 暂存注册表看不到别的来源的 bean
+                e. 没有 id 的 bean 在各自的暂存注册表里编号会重复, 合并时要按目标重新生成名字
+         */
+    }
+
+    // 不看注解, 所有具体类都当作组件, 用全限定名作为 bean 名字免得重名
+    private static void largeScan(DefaultListableBeanFactory registry) {
+        ClassPathBeanDefinitionScanner scanner = new ClassPathBeanDefinitionScanner(registry, false);
+        scanner.addIncludeFilter((metadataReader, metadataReaderFactory) -> true);
+        scanner.setBeanNameGenerator(FullyQualifiedAnnotationBeanNameGenerator.INSTANCE);
+        scanner.scan("org.springframework.web");
+    }
+
+    private static ConcurrentBeanDefinitionLoader newLoader(DefaultListableBeanFactory beanFactory) {
+        return new ConcurrentBeanDefinitionLoader(beanFactory, new StandardEnvironment(), new DefaultResourceLoader());
+    }
+
+    private static List<String> describe(DefaultListableBeanFactory beanFactory) {
+        List<String> result = new ArrayList<>();
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            result.add(name + "=" + beanFactory.getBeanDefinition(name).getBeanClassName());
+        }
+        return result;
+    }
+
+    private static Resource anonymousXml() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<beans xmlns=\"http://www.springframework.org/schema/beans\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+                + "xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd\">\n"
+                + "    <bean class=\"com.itheima.a39.A39_3.Bean4\" lazy-init=\"true\"/>\n"
+                + "</beans>\n";
+        Path file = Files.createTempFile("a39-anonymous", ".xml");
+        Files.writeString(file, xml);
+        file.toFile().deleteOnExit();
+        return new FileSystemResource(file);
+    }
+
+    private static Resource largeXml(int count) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<beans xmlns=\"http://www.springframework.org/schema/beans\" ")
+                .append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ")
+                .append("xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans.xsd\">\n");
+        for (int i = 0; i < count; i++) {
+            xml.append("    <bean id=\"bean").append(i).append("\" class=\"com.itheima.a39.A39_3.Bean4\" lazy-init=\"true\"/>\n");
+        }
+        xml.append("</beans>\n");
+        Path file = Files.createTempFile("a39-large", ".xml");
+        Files.writeString(file, xml);
+        file.toFile().deleteOnExit();
+        return new FileSystemResource(file);
+    }
+}
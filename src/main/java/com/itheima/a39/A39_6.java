@@ -0,0 +1,87 @@
+package com.itheima.a39;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/*
+    按 run 方法的回调统计启动各阶段的开销
+ */
+public class A39_6 {
+
+    public static void main(String[] args) throws Exception {
+        // LoggingSystem 启动时会按 application.properties 重设日志级别, 用系统属性覆盖
+        System.setProperty("logging.level.root", "warn");
+        System.setProperty("logging.level.com.itheima", "warn");
+        System.setProperty("logging.level.org.springframework.boot.SpringApplication", "off");
+        System.setProperty("spring.main.banner-mode", "off");
+        Path summary = Files.createTempFile("startup-profile", ".json");
+        Path jfr = Files.createTempFile("startup-profile", ".jfr");
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 正常启动, JSON 汇总写入文件");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.itheima.StartupPhase");
+            recording.start();
+            SpringApplication app = new SpringApplication(Config.class);
+            app.setWebApplicationType(WebApplicationType.NONE);
+            app.setDefaultProperties(Map.of(StartupProfilerRunListener.OUTPUT_PROPERTY, summary.toString()));
+            app.run().close();
+            recording.stop();
+            recording.dump(jfr);
+        }
+        System.out.println(new String(Files.readAllBytes(summary), StandardCharsets.UTF_8));
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. JFR 中的事件");
+        for (RecordedEvent event : RecordingFile.readAllEvents(jfr)) {
+            System.out.printf("%-17s %4d ms, 主线程 CPU %4d ms, 加载类 %5d%n", event.getString("phase"),
+                    event.getDuration().toMillis(), event.getDuration("cpuTime").toMillis(), event.getLong("classesLoaded"));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 启动失败, 最后一段是出错的阶段");
+        SpringApplication failing = new SpringApplication(Config.class, Failing.class);
+        failing.setWebApplicationType(WebApplicationType.NONE);
+        failing.setDefaultProperties(Map.of(StartupProfilerRunListener.OUTPUT_PROPERTY, summary.toString()));
+        try {
+            failing.run().close();
+        } catch (IllegalStateException e) {
+            System.out.println("启动失败: " + e.getMessage());
+        }
+        System.out.println(new String(Files.readAllBytes(summary), StandardCharsets.UTF_8));
+
+        /*
+            学到了什么
+                a. SpringApplicationRunListener 的回调把 run 方法分成了几段, 排序在最后的监听器能看到每段完整的开销
+                b. CPU 时间、加载的类、GC、分配都是 JVM 启动以来的累计值, 取两次快照相减就是一段的开销
+                c. 自定义的 JFR 事件不录制时几乎没有开销, 录制后可以和 JVM 自己的事件放在一起看
+                d. 每次构建都输出同样格式的 JSON, 就能在 CI 中比较各个版本的启动开销
+         */
+    }
+
+    @Configuration
+    static class Config {
+        @Bean
+        public ApplicationRunner runner() {
+            return args -> Thread.sleep(20);
+        }
+    }
+
+    @Configuration
+    static class Failing {
+        @Bean
+        public ApplicationRunner failingRunner() {
+            return args -> {
+                throw new IllegalStateException("runner 出错了");
+            };
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.itheima.a39;
+
+import com.itheima.util.Fingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.lang.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记住不存在的资源的 ResourceLoader
+ * <p>
+ * ConfigDataEnvironmentPostProcessor 按 目录 × 文件名 × profile × 扩展名 探测 application-*.properties/yml 等候选位置,
+ * 绝大多数并不存在, 同一个位置一次启动中还会被探测好几次. 这里包装原来的 ResourceLoader:
+ * <ul>
+ *     <li>一次启动内, 每个位置只探测一次; 不存在的位置返回一个 exists() 为 false、不做 I/O 的资源</li>
+ *     <li>不存在的位置连同校验值写入缓存文件, 下次启动校验值不变就直接当作不存在, 不再探测</li>
+ *     <li>file: 位置的校验值是最近一个存在的上级目录的修改时间: 新建文件或目录都会改变它</li>
+ *     <li>classpath: 位置的校验值是类路径(java.class.path)上每个 jar 的大小和修改时间, 以及每个目录中对应上级目录的修改时间</li>
+ * </ul>
+ * 存在的位置不缓存, 直接返回原来的资源. 只在准备 Environment 期间生效: 用 {@link #install} 安装时,
+ * ApplicationEnvironmentPreparedEvent 处理完(配置文件都已读取)就写回缓存文件, 之后的 getResource 直接交给原来的 ResourceLoader
+ * <p>
+ * 校验依赖文件系统的修改时间, 同一时刻内先探测、后创建的文件察觉不到; 不是从 java.class.path 加载类的类加载器不要缓存 classpath: 位置
+ */
+public class ProbeCachingResourceLoader implements ResourceLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(ProbeCachingResourceLoader.class);
+
+    private static final String VERSION_KEY = "#version";
+
+    private static final String VERSION = "1";
+
+    private final ResourceLoader delegate;
+
+    @Nullable
+    private final Path cacheFile;
+
+    // 上次启动记录的不存在的位置 -> 校验值
+    private final Properties previous = new Properties();
+
+    // 本次启动探测过的位置 -> 是否存在
+    private final Map<String, Boolean> probed = new ConcurrentHashMap<>();
+
+    // 本次启动确认不存在的位置 -> 校验值
+    private final Map<String, String> missing = new ConcurrentHashMap<>();
+
+    // 目录 -> 校验值, 一次启动内目录只看一次
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+    private volatile String jarsToken;
+
+    private volatile boolean active = true;
+
+    private final AtomicInteger probes = new AtomicInteger();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    /**
+     * @param cacheFile 缓存文件, 为 null 时只在本次启动内去重
+     */
+    public ProbeCachingResourceLoader(ResourceLoader delegate, @Nullable Path cacheFile) {
+        this.delegate = delegate;
+        this.cacheFile = cacheFile;
+        if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+            try (InputStream in = Files.newInputStream(cacheFile)) {
+                previous.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("读取探测缓存 {} 失败, 重新探测", cacheFile, e);
+                previous.clear();
+            }
+            if (!VERSION.equals(previous.getProperty(VERSION_KEY))) {
+                previous.clear();
+            }
+        }
+    }
+
+    /**
+     * 替换 SpringApplication 的 ResourceLoader, Environment 准备好后写回缓存并停止缓存
+     */
+    public static ProbeCachingResourceLoader install(SpringApplication application, @Nullable Path cacheFile) {
+        ResourceLoader original = application.getResourceLoader();
+        ProbeCachingResourceLoader loader = new ProbeCachingResourceLoader(
+                original != null ? original : new DefaultResourceLoader(application.getClassLoader()), cacheFile);
+        application.setResourceLoader(loader);
+        application.addListeners(new FinishOnEnvironmentPrepared(loader));
+        return loader;
+    }
+
+    @Override
+    public Resource getResource(String location) {
+        Resource resource = delegate.getResource(location);
+        if (!active) {
+            return resource;
+        }
+        Boolean exists = probed.get(location);
+        if (exists == null) {
+            String token = token(resource);
+            if (token == null) {
+                return resource; // 既不是文件也不是 classpath: 的资源, 不缓存
+            }
+            if (token.equals(previous.getProperty(location))) {
+                exists = false;
+                skipped.incrementAndGet();
+            } else {
+                exists = resource.exists();
+                probes.incrementAndGet();
+            }
+            if (!exists) {
+                missing.put(location, token);
+            }
+            probed.put(location, exists);
+        }
+        return exists ? resource : new MissingResource(resource);
+    }
+
+    @Override
+    @Nullable
+    public ClassLoader getClassLoader() {
+        return delegate.getClassLoader();
+    }
+
+    /**
+     * 写回缓存文件, 之后不再缓存
+     */
+    public void finish() {
+        if (!active) {
+            return;
+        }
+        active = false;
+        log.debug("探测 {} 个位置, 按缓存跳过 {} 个, 不存在的共 {} 个", probes.get(), skipped.get(), missing.size());
+        if (cacheFile == null || unchanged()) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.putAll(missing);
+        properties.setProperty(VERSION_KEY, VERSION);
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "不存在的位置=校验值");
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存探测缓存 {} 失败", cacheFile, e);
+        }
+    }
+
+    private boolean unchanged() {
+        if (previous.size() != missing.size() + 1) { // 另外还有版本号
+            return false;
+        }
+        for (Map.Entry<String, String> entry : missing.entrySet()) {
+            if (!entry.getValue().equals(previous.getProperty(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 本次启动实际探测的位置数
+     */
+    public int getProbeCount() {
+        return probes.get();
+    }
+
+    /**
+     * 本次启动按缓存直接判定为不存在的位置数
+     */
+    public int getSkippedCount() {
+        return skipped.get();
+    }
+
+    @Nullable
+    private String token(Resource resource) {
+        try {
+            if (resource instanceof ClassPathResource) {
+                return classpathToken(((ClassPathResource) resource).getPath());
+            }
+            if (resource.isFile()) {
+                return "file:" + directoryToken(resource.getFile().getAbsoluteFile().getParentFile());
+            }
+        } catch (IOException e) {
+            log.debug("无法计算 {} 的校验值: {}", resource, e.toString());
+        }
+        return null;
+    }
+
+    private String classpathToken(String path) {
+        int slash = path.lastIndexOf('/');
+        String parentPath = slash == -1 ? "" : path.substring(0, slash);
+        return tokens.computeIfAbsent("classpath:" + parentPath, k -> {
+            Fingerprint fp = new Fingerprint().add(jarsToken());
+            for (String entry : classpathEntries()) {
+                File root = new File(entry);
+                if (root.isDirectory()) {
+                    fp.add(directoryToken(parentPath.isEmpty() ? root : new File(root, parentPath)));
+                }
+            }
+            return "classpath:" + fp.hex();
+        });
+    }
+
+    private String jarsToken() {
+        String token = jarsToken;
+        if (token == null) {
+            Fingerprint fp = new Fingerprint();
+            for (String entry : classpathEntries()) {
+                File file = new File(entry);
+                if (!file.isDirectory()) {
+                    fp.add(entry).add(file.length() + "/" + file.lastModified());
+                }
+            }
+            token = jarsToken = fp.hex();
+        }
+        return token;
+    }
+
+    private static List<String> classpathEntries() {
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    // 最近一个存在的上级目录及其修改时间
+    private String directoryToken(File directory) {
+        return tokens.computeIfAbsent(directory.getPath(), k -> {
+            File existing = directory;
+            while (existing != null && !existing.isDirectory()) {
+                existing = existing.getParentFile();
+            }
+            return existing == null ? "-" : existing.getPath() + "@" + existing.lastModified();
+        });
+    }
+
+    /**
+     * 已知不存在的资源, 其它方法仍交给原来的资源
+     */
+    private static class MissingResource extends AbstractResource {
+        private final Resource resource;
+
+        MissingResource(Resource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public boolean exists() {
+            return false;
+        }
+
+        @Override
+        public boolean isReadable() {
+            return false;
+        }
+
+        @Override
+        public boolean isFile() {
+            return resource.isFile();
+        }
+
+        @Override
+        public URL getURL() throws IOException {
+            return resource.getURL();
+        }
+
+        @Override
+        public File getFile() throws IOException {
+            return resource.getFile();
+        }
+
+        @Override
+        public Resource createRelative(String relativePath) throws IOException {
+            return resource.createRelative(relativePath);
+        }
+
+        @Override
+        @Nullable
+        public String getFilename() {
+            return resource.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return resource.getDescription();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            throw new FileNotFoundException(getDescription() + " cannot be opened because it does not exist");
+        }
+
+        @Override
+        public boolean equals(@Nullable Object other) {
+            return this == other || (other instanceof MissingResource && resource.equals(((MissingResource) other).resource));
+        }
+
+        @Override
+        public int hashCode() {
+            return resource.hashCode();
+        }
+    }
+
+    // 排在 EnvironmentPostProcessorApplicationListener 之后
+    private static class FinishOnEnvironmentPrepared implements ApplicationListener<ApplicationEnvironmentPreparedEvent>, Ordered {
+        private final ProbeCachingResourceLoader loader;
+
+        FinishOnEnvironmentPrepared(ProbeCachingResourceLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+            loader.finish();
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.itheima.a39;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ConfigurableBootstrapContext;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按阶段统计启动开销的 SpringApplicationRunListener
+ * <p>
+ * 以 run 方法的各个回调为界把启动分成几段, 每段记录墙钟时间、主线程 CPU 时间、进程 CPU 时间、新加载的类、GC 耗时和分配的字节数:
+ * <ul>
+ *     <li>starting: JVM 启动(同一个 JVM 中后面几次 run 从创建本监听器开始)到 starting 回调结束, 包括日志系统初始化</li>
+ *     <li>environment: 准备 Environment, 包括读取配置文件等 EnvironmentPostProcessor</li>
+ *     <li>context-prepared: 打印 banner、创建容器、执行初始化器</li>
+ *     <li>context-loaded: 加载 bean 定义</li>
+ *     <li>refresh: refresh 容器</li>
+ *     <li>runners: 执行 ApplicationRunner、CommandLineRunner</li>
+ * </ul>
+ * 排序在最后, 每段在同一回调的其它监听器(包括发布事件的 EventPublishingRunListener)执行完之后结束.
+ * 每段结束时提交一个 JFR 事件 {@value StartupPhaseEvent#NAME}, 没有开启录制时几乎没有开销;
+ * running 或 failed 时输出 JSON 汇总: 设置了 {@value #OUTPUT_PROPERTY} 时写入文件, 否则打 debug 日志.
+ * 默认不统计(spring.factories 中注册后每个 Boot 应用都会经过它): 设置了 {@value #OUTPUT_PROPERTY}
+ * 或 {@value #ENABLED_PROPERTY}=true 时才开启.
+ * <p>
+ * CPU 时间记两种: 主线程的(回调都在主线程执行)和整个进程的(包括 JIT、GC 等后台线程); 分配的字节数只统计主线程;
+ * GC 耗时是所有收集器的累计值
+ */
+public class StartupProfilerRunListener implements SpringApplicationRunListener, Ordered {
+
+    /**
+     * JSON 汇总的输出文件, 设置后即开启统计
+     */
+    public static final String OUTPUT_PROPERTY = "spring.startup.profile.output";
+
+    /**
+     * 设为 true 时开启统计, 没有设置输出文件时打 debug 日志; 默认只在设置了输出文件时开启
+     */
+    public static final String ENABLED_PROPERTY = "spring.startup.profile.enabled";
+
+    private static final Logger log = LoggerFactory.getLogger(StartupProfilerRunListener.class);
+
+    private final SpringApplication application;
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    // 同一个 JVM 中第一次 run 从 JVM 启动开始算, 之后的从创建监听器开始算
+    private static final AtomicBoolean firstRun = new AtomicBoolean(true);
+
+    private final Snapshot first;
+
+    private Snapshot last;
+
+    private StartupPhaseEvent event;
+
+    // 在 environmentPrepared 之前还不知道配置, starting 段先照常记录
+    private boolean enabled = true;
+
+    private Path output;
+
+    public StartupProfilerRunListener(SpringApplication application, String[] args) {
+        this.application = application;
+        // 指标都是从 JVM 启动开始累计的, 第一次 run 的起点是零
+        this.first = firstRun.getAndSet(false) ? Snapshot.ZERO : Snapshot.take();
+        this.last = first;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    @Override
+    public void starting(ConfigurableBootstrapContext bootstrapContext) {
+        end("starting");
+    }
+
+    @Override
+    public void environmentPrepared(ConfigurableBootstrapContext bootstrapContext, ConfigurableEnvironment environment) {
+        String location = environment.getProperty(OUTPUT_PROPERTY);
+        output = StringUtils.hasText(location) ? Paths.get(location) : null;
+        enabled = environment.getProperty(ENABLED_PROPERTY, Boolean.class, output != null);
+        if (!enabled) {
+            phases.clear();
+            event = null;
+        }
+        end("environment");
+    }
+
+    @Override
+    public void contextPrepared(ConfigurableApplicationContext context) {
+        end("context-prepared");
+    }
+
+    @Override
+    public void contextLoaded(ConfigurableApplicationContext context) {
+        end("context-loaded");
+    }
+
+    @Override
+    public void started(ConfigurableApplicationContext context) {
+        end("refresh");
+    }
+
+    @Override
+    public void running(ConfigurableApplicationContext context) {
+        end("runners");
+        report("running");
+    }
+
+    @Override
+    public void failed(ConfigurableApplicationContext context, Throwable exception) {
+        end(phaseAfter(phases.isEmpty() ? null : phases.get(phases.size() - 1).name));
+        report("failed");
+    }
+
+    /**
+     * 已结束的阶段, 按先后顺序
+     */
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    private void end(String name) {
+        if (!enabled) {
+            return;
+        }
+        Snapshot now = Snapshot.take();
+        Phase phase = new Phase(name, last, now);
+        phases.add(phase);
+        if (event != null) {
+            event.phase = name;
+            event.cpuTime = phase.cpuNanos;
+            event.processCpuTime = phase.processCpuNanos;
+            event.classesLoaded = phase.classesLoaded;
+            event.gcTime = phase.gcMillis;
+            event.allocated = phase.allocatedBytes;
+            event.commit();
+        }
+        last = now;
+        // 第一段从 JVM 启动开始, 没法事后补一个起点, 不提交 JFR 事件
+        event = new StartupPhaseEvent();
+        event.begin();
+    }
+
+    private static String phaseAfter(String name) {
+        if (name == null) {
+            return "starting";
+        }
+        switch (name) {
+            case "starting":
+                return "environment";
+            case "environment":
+                return "context-prepared";
+            case "context-prepared":
+                return "context-loaded";
+            case "context-loaded":
+                return "refresh";
+            default:
+                return "runners";
+        }
+    }
+
+    private void report(String outcome) {
+        if (!enabled || (output == null && !log.isDebugEnabled())) {
+            return;
+        }
+        String json = toJson(outcome);
+        if (output == null) {
+            log.debug("启动各阶段开销: {}", json);
+            return;
+        }
+        try {
+            Path parent = output.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+            Files.write(tmp, json.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("写入启动开销 {} 失败", output, e);
+        }
+    }
+
+    // 字段都是数字和固定的名字, 只有主类名需要转义
+    String toJson(String outcome) {
+        Class<?> mainClass = application.getMainApplicationClass();
+        Phase total = new Phase("total", first, last);
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"application\": ").append(mainClass != null ? quote(mainClass.getName()) : "null").append(",\n");
+        json.append("  \"outcome\": ").append(quote(outcome)).append(",\n");
+        json.append("  \"total\": ").append(total.toJson()).append(",\n");
+        json.append("  \"phases\": [");
+        for (int i = 0; i < phases.size(); i++) {
+            json.append(i == 0 ? "\n    " : ",\n    ").append(phases.get(i).toJson());
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * 某个时刻的累计值
+     */
+    private static class Snapshot {
+        static final Snapshot ZERO = new Snapshot(0, 0, 0, 0, 0, 0);
+
+        // JVM 启动时刻对应的 nanoTime, 之后用 nanoTime 计时, 精度比毫秒级的 uptime 高
+        private static final long JVM_START_NANOS = System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime() * 1_000_000;
+        private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private static final ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        private static final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        private static final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+        final long uptimeNanos;
+        final long cpuNanos;
+        final long processCpuNanos;
+        final long classesLoaded;
+        final long gcMillis;
+        final long allocatedBytes;
+
+        Snapshot(long uptimeNanos, long cpuNanos, long processCpuNanos, long classesLoaded, long gcMillis, long allocatedBytes) {
+            this.uptimeNanos = uptimeNanos;
+            this.cpuNanos = cpuNanos;
+            this.processCpuNanos = processCpuNanos;
+            this.classesLoaded = classesLoaded;
+            this.gcMillis = gcMillis;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        // 不支持的指标记为 0, 各段的差值也就是 0
+        static Snapshot take() {
+            long uptime = System.nanoTime() - JVM_START_NANOS;
+            long cpu = threads.isCurrentThreadCpuTimeSupported() ? Math.max(threads.getCurrentThreadCpuTime(), 0) : 0;
+            long processCpu = os instanceof com.sun.management.OperatingSystemMXBean
+                    ? Math.max(((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime(), 0) : 0;
+            long gc = 0;
+            for (GarbageCollectorMXBean collector : collectors) {
+                gc += Math.max(collector.getCollectionTime(), 0);
+            }
+            return new Snapshot(uptime, cpu, processCpu, classLoading.getTotalLoadedClassCount(), gc, allocatedBytes());
+        }
+
+        private static long allocatedBytes() {
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+                if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                    return Math.max(sunThreads.getCurrentThreadAllocatedBytes(), 0);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 一个阶段的开销
+     */
+    public static class Phase {
+        private final String name;
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long processCpuNanos;
+        private final long classesLoaded;
+        private final long gcMillis;
+        private final long allocatedBytes;
+
+        Phase(String name, Snapshot from, Snapshot to) {
+            this.name = name;
+            this.wallNanos = to.uptimeNanos - from.uptimeNanos;
+            this.cpuNanos = to.cpuNanos - from.cpuNanos;
+            this.processCpuNanos = to.processCpuNanos - from.processCpuNanos;
+            this.classesLoaded = to.classesLoaded - from.classesLoaded;
+            this.gcMillis = to.gcMillis - from.gcMillis;
+            this.allocatedBytes = to.allocatedBytes - from.allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getProcessCpuNanos() {
+            return processCpuNanos;
+        }
+
+        public long getClassesLoaded() {
+            return classesLoaded;
+        }
+
+        public long getGcMillis() {
+            return gcMillis;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT, "{\"name\": \"%s\", \"wallMs\": %d, \"cpuMs\": %.1f, \"processCpuMs\": %.1f, "
+                            + "\"classesLoaded\": %d, \"gcMs\": %d, \"allocatedBytes\": %d}",
+                    name, wallNanos / 1_000_000, cpuNanos / 1e6, processCpuNanos / 1e6, classesLoaded, gcMillis, allocatedBytes);
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+
+    /**
+     * 一个启动阶段, 持续时间就是该阶段的墙钟时间
+     */
+    @Name(StartupPhaseEvent.NAME)
+    @Label("Startup Phase")
+    @Category({"Spring Application", "Startup"})
+    @Description("SpringApplication.run 中两个回调之间的开销")
+    static class StartupPhaseEvent extends Event {
+        static final String NAME = "com.itheima.StartupPhase";
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Thread CPU Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long cpuTime;
+
+        @Label("Process CPU Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long processCpuTime;
+
+        @Label("Classes Loaded")
+        long classesLoaded;
+
+        @Label("GC Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long gcTime;
+
+        @Label("Allocated")
+        @DataAmount(DataAmount.BYTES)
+        long allocated;
+    }
+}
@@ -0,0 +1,129 @@
+package com.itheima.a39;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ConfigurableBootstrapContext;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.boot.env.EnvironmentPostProcessorApplicationListener;
+import org.springframework.boot.env.EnvironmentPostProcessorsFactory;
+import org.springframework.boot.logging.DeferredLogFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 统计每个 EnvironmentPostProcessor 耗时的 EnvironmentPostProcessorsFactory
+ * <p>
+ * 包装原来的工厂创建的每个后处理器, 顺序不变; 全部执行完后可以通过 {@link #getReport()} 按执行顺序查看耗时,
+ * 超过 {@link #setSlowThreshold 阈值} 的打 info 日志. 用 {@link #install} 替换 SpringApplication 中默认的 EnvironmentPostProcessorApplicationListener
+ */
+public class TimedEnvironmentPostProcessorsFactory implements EnvironmentPostProcessorsFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(TimedEnvironmentPostProcessorsFactory.class);
+
+    private final EnvironmentPostProcessorsFactory delegate;
+
+    private Duration slowThreshold = Duration.ofMillis(50);
+
+    private final List<Timing> report = Collections.synchronizedList(new ArrayList<>());
+
+    public TimedEnvironmentPostProcessorsFactory(EnvironmentPostProcessorsFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 把 SpringApplication 中的 EnvironmentPostProcessorApplicationListener 换成使用本工厂的, 后处理器来自 spring.factories
+     */
+    public static TimedEnvironmentPostProcessorsFactory install(SpringApplication application) {
+        TimedEnvironmentPostProcessorsFactory factory = new TimedEnvironmentPostProcessorsFactory(
+                EnvironmentPostProcessorsFactory.fromSpringFactories(application.getClassLoader()));
+        Set<ApplicationListener<?>> listeners = new LinkedHashSet<>();
+        for (ApplicationListener<?> listener : application.getListeners()) {
+            if (!(listener instanceof EnvironmentPostProcessorApplicationListener)) {
+                listeners.add(listener);
+            }
+        }
+        listeners.add(new EnvironmentPostProcessorApplicationListener(factory));
+        application.setListeners(listeners);
+        return factory;
+    }
+
+    /**
+     * 超过这个耗时的后处理器打 info 日志
+     */
+    public void setSlowThreshold(Duration slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * 每个后处理器的耗时, 按执行顺序
+     */
+    public List<Timing> getReport() {
+        synchronized (report) {
+            return new ArrayList<>(report);
+        }
+    }
+
+    @Override
+    public List<EnvironmentPostProcessor> getEnvironmentPostProcessors(DeferredLogFactory logFactory, ConfigurableBootstrapContext bootstrapContext) {
+        List<EnvironmentPostProcessor> postProcessors = new ArrayList<>();
+        for (EnvironmentPostProcessor postProcessor : delegate.getEnvironmentPostProcessors(logFactory, bootstrapContext)) {
+            postProcessors.add(new TimedEnvironmentPostProcessor(postProcessor));
+        }
+        return postProcessors;
+    }
+
+    private class TimedEnvironmentPostProcessor implements EnvironmentPostProcessor {
+        private final EnvironmentPostProcessor postProcessor;
+
+        TimedEnvironmentPostProcessor(EnvironmentPostProcessor postProcessor) {
+            this.postProcessor = postProcessor;
+        }
+
+        @Override
+        public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+            long start = System.nanoTime();
+            try {
+                postProcessor.postProcessEnvironment(environment, application);
+            } finally {
+                Timing timing = new Timing(postProcessor.getClass().getName(), Duration.ofNanos(System.nanoTime() - start));
+                report.add(timing);
+                if (timing.getDuration().compareTo(slowThreshold) >= 0) {
+                    log.info("EnvironmentPostProcessor 较慢: {}", timing);
+                } else {
+                    log.debug("{}", timing);
+                }
+            }
+        }
+    }
+
+    public static class Timing {
+        private final String postProcessor;
+        private final Duration duration;
+
+        Timing(String postProcessor, Duration duration) {
+            this.postProcessor = postProcessor;
+            this.duration = duration;
+        }
+
+        public String getPostProcessor() {
+            return postProcessor;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return postProcessor + " " + String.format("%.1f", duration.toNanos() / 1e6) + " ms";
+        }
+    }
+}
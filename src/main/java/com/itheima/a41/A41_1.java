@@ -9,7 +9,7 @@ import org.springframework.core.env.MapPropertySource;
 import org.springframework.core.env.StandardEnvironment;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.support.ResourcePropertySource;
-import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.core.io.support.IndexedSpringFactoriesLoader;
 import org.springframework.core.type.AnnotationMetadata;
 
 import java.io.IOException;
@@ -50,7 +50,7 @@ public class A41_1 {
 //                System.out.println(name);
 //            }
 //            System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
-            List<String> names = SpringFactoriesLoader.loadFactoryNames(MyImportSelector.class, null);
+            List<String> names = IndexedSpringFactoriesLoader.loadFactoryNames(MyImportSelector.class, null);
             return names.toArray(new String[0]);
         }
     }
@@ -8,7 +8,7 @@ import org.springframework.context.annotation.*;
 import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.core.env.SimpleCommandLinePropertySource;
 import org.springframework.core.env.StandardEnvironment;
-import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.core.io.support.IndexedSpringFactoriesLoader;
 import org.springframework.core.type.AnnotationMetadata;
 
 import java.io.IOException;
@@ -51,7 +51,7 @@ public class A41_2 {
     static class MyImportSelector implements DeferredImportSelector {
         @Override
         public String[] selectImports(AnnotationMetadata importingClassMetadata) {
-            return SpringFactoriesLoader.loadFactoryNames(MyImportSelector.class, null).toArray(new String[0]);
+            return IndexedSpringFactoriesLoader.loadFactoryNames(MyImportSelector.class, null).toArray(new String[0]);
         }
     }
 
@@ -0,0 +1,150 @@
+package com.itheima.a41;
+
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ClassPathBeanDefinitionScanner;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
+import org.springframework.context.annotation.RegistrySnapshot;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+
+/*
+    注册表快照: 第一次启动正常解析并保存, 之后的启动直接恢复 bean 定义
+    多运行几次本类, 第 1 部分就是冷启动时的对比
+ */
+public class A41_3 {
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "a41-registry.snapshot");
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 本进程第一次启动");
+        long start = System.nanoTime();
+        GenericApplicationContext context = start(file, Collections.emptyMap());
+        System.out.printf("%s, 耗时 %d ms%n", context.getBean("snapshot"), (System.nanoTime() - start) / 1_000_000);
+        for (String name : context.getBeanDefinitionNames()) {
+            System.out.println(name + " 来源: " + context.getBeanDefinition(name).getResourceDescription());
+        }
+        System.out.println(context.getBean(A41_1.Bean1.class));
+        System.out.println(context.getBean("greeting"));
+        context.close();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 预热后对比");
+        for (int round = 1; round <= 3; round++) {
+            System.out.printf("第%d轮 正常 %d ms, 快照 %d ms%n", round, refresh(null), refresh(file));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 配置变了, 退回正常 refresh");
+        Path copy = Files.copy(file, file.resolveSibling("a41-registry-copy.snapshot"), StandardCopyOption.REPLACE_EXISTING);
+        context = start(copy, Collections.singletonMap("demo.version", "2"));
+        System.out.println("属性源变了: " + context.getBean("snapshot"));
+        context.close();
+        Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+        System.setProperty("demo.feature", "on"); // 相当于启动时多了 -Ddemo.feature=on
+        try {
+            context = start(copy, Collections.emptyMap());
+            System.out.println("系统属性变了: " + context.getBean("snapshot"));
+            context.close();
+        } finally {
+            System.clearProperty("demo.feature");
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 4. 解析时注册了带 instanceSupplier 的定义, 不保存快照");
+        Path supplierFile = file.resolveSibling("a41-registry-supplier.snapshot");
+        Files.deleteIfExists(supplierFile);
+        for (int round = 1; round <= 2; round++) {
+            context = new GenericApplicationContext();
+            context.registerBean("supplierConfig", SupplierConfig.class);
+            AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+            RegistrySnapshot snapshot = new RegistrySnapshot(supplierFile, A41_3.class.getName());
+            snapshot.apply(context);
+            context.refresh();
+            System.out.printf("第%d次 恢复: %s, 快照文件存在: %s, %s%n", round, snapshot.isRestored(), Files.exists(supplierFile), context.getBean("supplied"));
+            context.close();
+        }
+
+        /*
+            学到了什么
+                a. ConfigurationClassPostProcessor 解析的结果就是一组 bean 定义, 构建不变时每次都一样
+                b. 已处理过的配置类带有 CONFIGURATION_CLASS_ATTRIBUTE 标记, 再次处理时直接跳过, 但 full 模式的增强照常
+                c. 快照只能保存 bean 定义, Environment 的变化(@PropertySource)、条件依赖的外部输入都要算进指纹
+                   条件能读到任何系统属性、环境变量, 它们也要整个算进去
+                d. 节省的是解析、扫描时的类文件读取, 冷启动时更明显
+                e. instanceSupplier 是 lambda, 无法保存; 只有启动代码在 refresh 之前注册的才能跳过, 解析时注册的会在恢复时丢失
+         */
+    }
+
+    private static long refresh(@Nullable Path file) {
+        long start = System.nanoTime();
+        start(file, Collections.emptyMap()).close();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static GenericApplicationContext start(@Nullable Path file, Map<String, Object> properties) {
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.getDefaultListableBeanFactory().setAllowBeanDefinitionOverriding(false);
+        if (!properties.isEmpty()) {
+            context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("demo", properties));
+        }
+        context.registerBean("config", Config.class);
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+
+        RegistrySnapshot snapshot = file != null ? new RegistrySnapshot(file, A41_3.class.getName()) : null;
+        if (snapshot == null || !snapshot.apply(context)) {
+            // 与 A39_3 一样从 XML、扫描加载 bean 定义
+            new XmlBeanDefinitionReader(context).loadBeanDefinitions(new ClassPathResource("b03.xml"));
+            new ClassPathBeanDefinitionScanner(context).scan("com.itheima.a39.sub");
+        }
+        context.refresh();
+        context.getBeanFactory().registerSingleton("snapshot", snapshot == null ? "未使用快照"
+                : snapshot.isRestored() ? "从快照恢复" : "正常解析, 已保存快照");
+        return context;
+    }
+
+    @Configuration
+    @Import(SupplierRegistrar.class)
+    static class SupplierConfig {
+    }
+
+    static class SupplierRegistrar implements ImportBeanDefinitionRegistrar {
+        @Override
+        public void registerBeanDefinitions(AnnotationMetadata metadata, BeanDefinitionRegistry registry) {
+            registry.registerBeanDefinition("supplied", new RootBeanDefinition(String.class, () -> "由 instanceSupplier 创建"));
+        }
+    }
+
+    @Configuration
+    @Import(A41_1.MyImportSelector.class) // 自动配置与条件(@ConditionalOnMissingBean)也在快照里
+    static class Config {
+        @Bean
+        public A41_1.Bean1 bean1() {
+            return new A41_1.Bean1("本项目");
+        }
+
+        // 重载的 @Bean 方法, 定义上的工厂方法不唯一, 创建时选参数最多且能满足的一个; 快照要保留这一点
+        @Bean
+        public String greeting() {
+            return "hello";
+        }
+
+        @Bean
+        public String greeting(A41_1.Bean1 bean1) {
+            return "hello, " + bean1;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.itheima.a41;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AutoConfigurationUsageLearner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/*
+    记录一次运行中没有用处的自动配置, 之后的启动直接排除
+ */
+public class A41_4 {
+
+    public static void main(String[] args) throws Exception {
+        // LoggingSystem 启动时会按 application.properties 重设日志级别, 用系统属性覆盖
+        System.setProperty("logging.level.root", "warn");
+        System.setProperty("logging.level.com.itheima", "warn");
+        System.setProperty("logging.level.org.springframework.context.annotation.AutoConfigurationUsageLearner", "info");
+        Path learned = Files.createTempFile("spring-autoconfigure-learned", ".properties");
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 记录模式运行一次(懒加载, 只用到 Service)");
+        Properties properties = new Properties();
+        properties.setProperty(AutoConfigurationUsageLearner.OUTPUT_PROPERTY, learned.toString());
+        run(properties).close();
+        Files.readAllLines(learned).stream().filter(line -> line.startsWith("#")).limit(12).forEach(System.out::println);
+        System.out.println("...");
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 使用排除清单启动");
+        Properties enabled = new Properties();
+        enabled.setProperty(LearnedAutoConfigurationFilter.LOCATION_PROPERTY, learned.toUri().toString());
+        Properties disabled = new Properties();
+        disabled.setProperty(LearnedAutoConfigurationFilter.ENABLED_PROPERTY, "false");
+        for (int round = 1; round <= 4; round++) {
+            System.out.printf("第%d轮 全部候选 %s; 排除后 %s%n", round, startup(disabled), startup(enabled));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 别的应用用了同一份清单, 不排除");
+        Properties other = new Properties();
+        other.putAll(enabled);
+        other.setProperty("spring.application.name", "other");
+        System.out.println("应用 other: " + startup(other));
+
+        /*
+            学到了什么
+                a. 条件不满足的自动配置每次启动都要重新评估条件, 而评估结果在同一份部署中几乎不变
+                b. 容器关闭前, 通过 bean 定义的工厂方法和 ImportRegistry 可以知道每个 bean 来自哪个自动配置
+                c. 懒加载时没被创建的 bean 就是这次运行没用到的 bean
+                d. AutoConfigurationImportFilter 在条件评估前执行, 被它排除的类不会被加载
+                e. 记录只代表这次运行: 没走到的功能、不同的配置需要重新记录, 或者用 spring.autoconfigure.learn.keep 保留
+                f. 清单按应用(应用名或主类)区分, 放在各个应用共用的位置会误删别的应用需要的自动配置
+         */
+    }
+
+    private static String startup(Properties properties) {
+        long start = System.nanoTime();
+        ConfigurableApplicationContext context = run(properties);
+        long cost = (System.nanoTime() - start) / 1_000_000;
+        int count = context.getBeanDefinitionCount();
+        context.close();
+        return String.format("%d ms, %d 个 bean 定义", cost, count);
+    }
+
+    private static ConfigurableApplicationContext run(Properties properties) {
+        SpringApplication application = new SpringApplication(Config.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        application.setLogStartupInfo(false);
+        Properties defaults = new Properties();
+        defaults.putAll(properties);
+        defaults.setProperty("spring.main.banner-mode", "off");
+        defaults.setProperty("spring.main.lazy-initialization", "true");
+        application.setDefaultProperties(defaults);
+        ConfigurableApplicationContext context = application.run();
+        context.getBean(Service.class).hello();
+        return context;
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class Config {
+        @Bean
+        public Service service(ObjectMapper objectMapper) {
+            return new Service(objectMapper);
+        }
+    }
+
+    static class Service {
+        private final ObjectMapper objectMapper;
+
+        Service(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+        }
+
+        String hello() throws RuntimeException {
+            try {
+                return objectMapper.writeValueAsString("hello");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
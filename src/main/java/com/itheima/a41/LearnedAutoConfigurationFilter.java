@@ -0,0 +1,152 @@
+package com.itheima.a41;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.AutoConfigurationImportFilter;
+import org.springframework.boot.autoconfigure.AutoConfigurationMetadata;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.context.annotation.AutoConfigurationUsageLearner;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 按记录下的排除清单过滤自动配置
+ * <p>
+ * AutoConfigurationImportFilter 在条件评估之前、只凭类名执行, 被过滤掉的自动配置类不会被加载, 它的条件也不会被评估.
+ * 排序在最前, 被排除的类后面的 OnClassCondition 等过滤器也不再检查
+ * <p>
+ * 清单由 {@link AutoConfigurationUsageLearner} 记录,
+ * 记录时本过滤器不生效, 免得上次排除的类在这次记录中看不到.
+ * 清单只对记录它的应用有效: 没有默认位置, 要用 {@value #LOCATION_PROPERTY} 指定; 文件中记下了应用
+ * (spring.application.name, 没有时是主类名), 与当前应用不同时不排除任何自动配置
+ */
+public class LearnedAutoConfigurationFilter implements AutoConfigurationImportFilter, EnvironmentAware, ResourceLoaderAware, Ordered {
+
+    /**
+     * 排除清单的位置, 不设置时不排除
+     */
+    public static final String LOCATION_PROPERTY = "spring.autoconfigure.learned.location";
+
+    /**
+     * 设为 false 时不使用排除清单
+     */
+    public static final String ENABLED_PROPERTY = "spring.autoconfigure.learned.enabled";
+
+    /**
+     * 清单文件中排除列表的键
+     */
+    public static final String EXCLUDE_KEY = "exclude";
+
+    /**
+     * 清单文件中记录它的应用的键
+     */
+    public static final String APPLICATION_KEY = "application";
+
+    private static final Logger log = LoggerFactory.getLogger(LearnedAutoConfigurationFilter.class);
+
+    private Environment environment;
+
+    private ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+    // 同一次启动中会对各批候选多次调用 match, 清单只读一次
+    private Set<String> exclusions;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public boolean[] match(String[] autoConfigurationClasses, AutoConfigurationMetadata autoConfigurationMetadata) {
+        if (exclusions == null) {
+            exclusions = loadExclusions();
+        }
+        Set<String> excluded = exclusions;
+        boolean[] match = new boolean[autoConfigurationClasses.length];
+        int count = 0;
+        for (int i = 0; i < match.length; i++) {
+            String candidate = autoConfigurationClasses[i];
+            match[i] = candidate == null || !excluded.contains(candidate); // null 是前面的过滤器已经排除的
+            if (!match[i]) {
+                count++;
+            }
+        }
+        log.debug("按记录排除了 {} 个自动配置", count);
+        return match;
+    }
+
+    private Set<String> loadExclusions() {
+        if (environment == null || !environment.getProperty(ENABLED_PROPERTY, Boolean.class, true)
+            || environment.containsProperty(AutoConfigurationUsageLearner.OUTPUT_PROPERTY)) {
+            return Collections.emptySet();
+        }
+        String location = environment.getProperty(LOCATION_PROPERTY);
+        if (!StringUtils.hasText(location)) {
+            return Collections.emptySet();
+        }
+        Resource resource = resourceLoader.getResource(location);
+        if (!resource.exists()) {
+            return Collections.emptySet();
+        }
+        try {
+            Properties properties = PropertiesLoaderUtils.loadProperties(resource);
+            String recorded = properties.getProperty(APPLICATION_KEY);
+            String current = applicationId(environment, deduceMainApplicationClassName());
+            if (recorded == null || !recorded.equals(current)) {
+                log.warn("排除清单 {} 由 {} 记录, 当前应用是 {}, 不排除任何自动配置", resource, recorded, current);
+                return Collections.emptySet();
+            }
+            Set<String> excluded = new HashSet<>();
+            for (String name : StringUtils.commaDelimitedListToStringArray(properties.getProperty(EXCLUDE_KEY, ""))) {
+                excluded.add(name.trim());
+            }
+            return excluded;
+        } catch (IOException e) {
+            log.warn("读取排除清单 {} 失败, 不排除任何自动配置", resource, e);
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * 区分应用的标识: spring.application.name, 没有时用主类名
+     */
+    @Nullable
+    public static String applicationId(Environment environment, @Nullable String mainApplicationClassName) {
+        String name = environment.getProperty("spring.application.name");
+        return StringUtils.hasText(name) ? name : mainApplicationClassName;
+    }
+
+    // 过滤器在 refresh 中执行, 调用栈里还有 main 方法, 与 SpringApplication 推断主类的方式相同
+    @Nullable
+    private static String deduceMainApplicationClassName() {
+        for (StackTraceElement element : new RuntimeException().getStackTrace()) {
+            if ("main".equals(element.getMethodName())) {
+                return element.getClassName();
+            }
+        }
+        return null;
+    }
+}
@@ -4,7 +4,6 @@ import org.springframework.context.annotation.*;
 import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.core.type.AnnotationMetadata;
-import org.springframework.util.ClassUtils;
 
 import java.io.IOException;
 
@@ -34,17 +33,17 @@ public class A42_1 {
         }
     }
 
-    static class MyCondition1 implements Condition { // 存在 Druid 依赖
+    static class MyCondition1 implements ParallelSafeCondition { // 存在 Druid 依赖
         @Override
         public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
-            return ClassUtils.isPresent("com.alibaba.druid.pool.DruidDataSource", null);
+            return ClassPresenceCache.get(context).isPresent("com.alibaba.druid.pool.DruidDataSource");
         }
     }
 
-    static class MyCondition2 implements Condition { // 不存在 Druid 依赖
+    static class MyCondition2 implements ParallelSafeCondition { // 不存在 Druid 依赖
         @Override
         public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
-            return !ClassUtils.isPresent("com.alibaba.druid.pool.DruidDataSource", null);
+            return !ClassPresenceCache.get(context).isPresent("com.alibaba.druid.pool.DruidDataSource");
         }
     }
 
@@ -4,7 +4,6 @@ import org.springframework.context.annotation.*;
 import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.core.type.AnnotationMetadata;
-import org.springframework.util.ClassUtils;
 
 import java.io.IOException;
 import java.lang.annotation.ElementType;
@@ -39,14 +38,14 @@ public class A42_2 {
         }
     }
 
-    static class MyCondition implements Condition { // 存在 Druid 依赖
+    static class MyCondition implements ParallelSafeCondition { // 存在 Druid 依赖
         @Override
         public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
             Map<String, Object> attributes = metadata.getAnnotationAttributes(ConditionalOnClass.class.getName());
             String className = attributes.get("className").toString();
             boolean exists = (boolean) attributes.get("exists");
-            // ClassUtils.isPresent判断classpath下有没有指定的类名
-            boolean present = ClassUtils.isPresent(className, null);
+            // 判断classpath下有没有指定的类名, 结果在容器范围内缓存
+            boolean present = ClassPresenceCache.get(context).isPresent(className);
             return exists ? present : !present;
         }
     }
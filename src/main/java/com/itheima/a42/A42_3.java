@@ -0,0 +1,118 @@
+package com.itheima.a42;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.core.type.AnnotationMetadata;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    导入自动配置前, 多线程提前求值只看类路径的条件; 类存在性在容器范围内缓存
+ */
+public class A42_3 {
+
+    public static void main(String[] args) throws Exception {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.springframework")).setLevel(Level.INFO);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 提前淘汰的候选不会被解析");
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean("config", Config.class);
+        context.registerBean(org.springframework.context.annotation.ConfigurationClassPostProcessor.class);
+        context.refresh();
+        for (String name : context.getBeanDefinitionNames()) {
+            System.out.println(name);
+        }
+        ConditionReport.get(context.getBeanFactory()).getEntries().forEach(System.out::println);
+        System.out.println(ClassPresenceCache.get(context.getBeanFactory(), null));
+        context.close();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. Spring Boot 的全部自动配置, 每次使用新的类加载器");
+        int processors = Math.max(2, Runtime.getRuntime().availableProcessors());
+        for (int round = 1; round <= 3; round++) {
+            String sequential = filter(1);
+            String parallel = filter(processors);
+            System.out.printf("第%d轮 单线程 %s; %d 线程 %s%n", round, sequential, processors, parallel);
+        }
+
+        /*
+            学到了什么
+                a. @ConditionalOnClass 一类条件只看类路径, 与别的配置类注册了什么无关, 可以提前、并行求值
+                b. 从字节码读取候选的注解, 不满足条件的候选类根本不会被加载
+                c. 许多自动配置检查的是同一批类(如 Servlet), 类存在性在容器范围内缓存, 不存在的类只找一次
+                d. @ConditionalOnMissingBean 依赖注册顺序, 仍留给 ConfigurationClassParser 按顺序求值
+         */
+    }
+
+    private static String filter(int parallelism) throws Exception {
+        try (URLClassLoader loader = new URLClassLoader(classpath(), ClassLoader.getPlatformClassLoader())) {
+            DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+            beanFactory.setBeanClassLoader(loader);
+            List<String> candidates = SpringFactoriesLoader.loadFactoryNames(EnableAutoConfiguration.class, loader);
+            ParallelConditionFilter filter = new ParallelConditionFilter(beanFactory, new StandardEnvironment(), new DefaultResourceLoader(loader));
+            filter.setParallelism(parallelism);
+            long start = System.nanoTime();
+            List<String> result = filter.filter(candidates);
+            long cost = (System.nanoTime() - start) / 1_000_000;
+            ConditionReport report = ConditionReport.get(beanFactory);
+            return String.format("%d ms(条件合计 %d ms), %d/%d 个满足, %s", cost, report.getTotal().toMillis(),
+                    result.size(), candidates.size(), ClassPresenceCache.get(beanFactory, loader));
+        }
+    }
+
+    private static URL[] classpath() {
+        return Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator)).map(path -> {
+            try {
+                return new File(path).toURI().toURL();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).toArray(URL[]::new);
+    }
+
+    @Configuration
+    @Import(MyImportSelector.class)
+    static class Config {
+    }
+
+    static class MyImportSelector extends ConditionFilteringImportSelector {
+        @Override
+        protected List<String> getCandidates(AnnotationMetadata importingClassMetadata) {
+            return Arrays.asList(A42_2.AutoConfiguration1.class.getName(), A42_2.AutoConfiguration2.class.getName(),
+                    DruidAutoConfiguration.class.getName(), HikariAutoConfiguration.class.getName());
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "com.alibaba.druid.pool.DruidDataSource")
+    static class DruidAutoConfiguration {
+        @Bean
+        public String druid() {
+            return "druid";
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "com.zaxxer.hikari.HikariDataSource")
+    @ConditionalOnMissingClass("com.alibaba.druid.pool.DruidDataSource")
+    static class HikariAutoConfiguration {
+        @Bean
+        public String hikari() {
+            return "hikari";
+        }
+    }
+}
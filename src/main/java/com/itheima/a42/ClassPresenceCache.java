@@ -0,0 +1,73 @@
+package com.itheima.a42;
+
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 容器范围内共享的类存在性缓存
+ * <p>
+ * 条件中的 ClassUtils.isPresent 每次都要走一遍类加载, 不存在的类要把整个类路径找一遍.
+ * 同一个容器中类路径不会变, 结果以单例的形式放在 BeanFactory 里, 所有条件共用, 可以多线程同时使用
+ */
+public class ClassPresenceCache {
+
+    public static final String BEAN_NAME = "classPresenceCache";
+
+    @Nullable
+    private final ClassLoader classLoader;
+
+    private final Map<String, Boolean> presence = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public ClassPresenceCache(@Nullable ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    public static ClassPresenceCache get(ConditionContext context) {
+        return get(context.getBeanFactory(), context.getClassLoader());
+    }
+
+    // 与 ConditionEvaluationReport.get 一样, 第一次使用时注册到 BeanFactory
+    public static ClassPresenceCache get(@Nullable ConfigurableListableBeanFactory beanFactory, @Nullable ClassLoader classLoader) {
+        if (beanFactory == null) {
+            return new ClassPresenceCache(classLoader);
+        }
+        Object existing = beanFactory.getSingleton(BEAN_NAME);
+        if (existing != null) {
+            return (ClassPresenceCache) existing;
+        }
+        synchronized (beanFactory) {
+            if (!beanFactory.containsSingleton(BEAN_NAME)) {
+                beanFactory.registerSingleton(BEAN_NAME, new ClassPresenceCache(classLoader));
+            }
+            return (ClassPresenceCache) beanFactory.getSingleton(BEAN_NAME);
+        }
+    }
+
+    public boolean isPresent(String className) {
+        Boolean present = presence.get(className);
+        if (present != null) {
+            hits.increment();
+            return present;
+        }
+        misses.increment();
+        // 不在 computeIfAbsent 里加载类: 加载较慢, 别的线程查询同一个桶里的其它类时不必等它
+        present = ClassUtils.isPresent(className, classLoader);
+        presence.putIfAbsent(className, present);
+        return present;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassPresenceCache{classes=" + presence.size() + ", hits=" + hits.sum() + ", misses=" + misses.sum() + "}";
+    }
+}
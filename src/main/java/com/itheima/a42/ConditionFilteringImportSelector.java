@@ -0,0 +1,55 @@
+package com.itheima.a42;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.context.annotation.DeferredImportSelector;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.AnnotationMetadata;
+
+import java.util.List;
+
+/**
+ * 返回候选之前先用 {@link ParallelConditionFilter} 淘汰不满足条件的自动配置
+ * <p>
+ * ImportSelector 由 ConfigurationClassParser 创建, 创建时会回调这几个 Aware 接口
+ */
+public abstract class ConditionFilteringImportSelector implements DeferredImportSelector,
+        BeanFactoryAware, EnvironmentAware, ResourceLoaderAware {
+
+    private ConfigurableListableBeanFactory beanFactory;
+
+    private Environment environment;
+
+    private ResourceLoader resourceLoader;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+    }
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    /**
+     * 候选的自动配置类名
+     */
+    protected abstract List<String> getCandidates(AnnotationMetadata importingClassMetadata);
+
+    @Override
+    public String[] selectImports(AnnotationMetadata importingClassMetadata) {
+        List<String> candidates = getCandidates(importingClassMetadata);
+        return new ParallelConditionFilter(beanFactory, environment, resourceLoader).filter(candidates).toArray(new String[0]);
+    }
+}
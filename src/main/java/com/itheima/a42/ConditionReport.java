@@ -0,0 +1,81 @@
+package com.itheima.a42;
+
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 条件求值报告: 每个配置类的每个条件, 结果与耗时
+ */
+public class ConditionReport {
+
+    public static final String BEAN_NAME = "conditionReport";
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public static ConditionReport get(ConfigurableListableBeanFactory beanFactory) {
+        Object existing = beanFactory.getSingleton(BEAN_NAME);
+        if (existing != null) {
+            return (ConditionReport) existing;
+        }
+        synchronized (beanFactory) {
+            if (!beanFactory.containsSingleton(BEAN_NAME)) {
+                beanFactory.registerSingleton(BEAN_NAME, new ConditionReport());
+            }
+            return (ConditionReport) beanFactory.getSingleton(BEAN_NAME);
+        }
+    }
+
+    public synchronized void record(String source, String condition, boolean matched, long nanos) {
+        entries.add(new Entry(source, condition, matched, Duration.ofNanos(nanos), Thread.currentThread().getName()));
+    }
+
+    /**
+     * 按耗时从大到小
+     */
+    public synchronized List<Entry> getEntries() {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(Entry::getDuration).reversed());
+        return sorted;
+    }
+
+    public synchronized Duration getTotal() {
+        return entries.stream().map(Entry::getDuration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    public static class Entry {
+        private final String source;
+        private final String condition;
+        private final boolean matched;
+        private final Duration duration;
+        private final String thread;
+
+        Entry(String source, String condition, boolean matched, Duration duration, String thread) {
+            this.source = source;
+            this.condition = condition;
+            this.matched = matched;
+            this.duration = duration;
+            this.thread = thread;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public boolean isMatched() {
+            return matched;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%6.2f ms %s %s %s [%s]", duration.toNanos() / 1e6, matched ? "匹配  " : "不匹配", source, condition, thread);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.itheima.a42;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.MultiValueMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 导入自动配置之前, 多线程提前求值与注册顺序无关的类级别条件, 淘汰不满足的候选
+ * <p>
+ * ConfigurationClassParser 对导入的配置类一个一个地求值条件. 其中 @ConditionalOnClass 之类只看类路径,
+ * 各个候选互不影响, 可以并行, 且不必加载候选类本身(从字节码读元数据). 这里求值两种条件:
+ * <ul>
+ *     <li>Spring Boot 的 @ConditionalOnClass、@ConditionalOnMissingClass, 按注解中的类名查 {@link ClassPresenceCache}</li>
+ *     <li>实现了 {@link ParallelSafeCondition} 的 @Conditional</li>
+ * </ul>
+ * 其它条件(如 @ConditionalOnMissingBean)留给 ConfigurationClassParser 照常按顺序求值. 每个条件的耗时记入 {@link ConditionReport}
+ */
+public class ParallelConditionFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelConditionFilter.class);
+
+    private final ConditionContext context;
+
+    private final MetadataReaderFactory metadataReaderFactory;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public ParallelConditionFilter(ConfigurableListableBeanFactory beanFactory, Environment environment, ResourceLoader resourceLoader) {
+        this.context = new SimpleConditionContext(beanFactory, environment, resourceLoader);
+        // 无状态, 多线程共用; CachingMetadataReaderFactory 的缓存不是线程安全的
+        this.metadataReaderFactory = new SimpleMetadataReaderFactory(resourceLoader);
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 返回满足条件的候选, 保持原来的顺序
+     */
+    public List<String> filter(List<String> candidates) {
+        long start = System.nanoTime();
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, candidates.size())), r -> {
+            Thread thread = new Thread(r, "condition-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (String candidate : candidates) {
+                futures.add(executor.submit(() -> matches(candidate)));
+            }
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                if (futures.get(i).get()) {
+                    result.add(candidates.get(i));
+                }
+            }
+            log.debug("{} 个候选中 {} 个满足条件, 耗时 {} ms", candidates.size(), result.size(), (System.nanoTime() - start) / 1_000_000);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("条件求值被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("条件求值失败", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // 与 ConditionEvaluator 一样, 遇到第一个不满足的条件就停止
+    private boolean matches(String candidate) throws IOException {
+        AnnotationMetadata metadata = metadataReaderFactory.getMetadataReader(candidate).getAnnotationMetadata();
+        ClassPresenceCache cache = ClassPresenceCache.get(context);
+        ConditionReport report = ConditionReport.get(context.getBeanFactory());
+
+        for (String className : classNames(metadata, ConditionalOnClass.class.getName(), "value", "name")) {
+            long start = System.nanoTime();
+            boolean present = cache.isPresent(className);
+            report.record(candidate, "@ConditionalOnClass(" + className + ")", present, System.nanoTime() - start);
+            if (!present) {
+                return false;
+            }
+        }
+        for (String className : classNames(metadata, ConditionalOnMissingClass.class.getName(), "value")) {
+            long start = System.nanoTime();
+            boolean missing = !cache.isPresent(className);
+            report.record(candidate, "@ConditionalOnMissingClass(" + className + ")", missing, System.nanoTime() - start);
+            if (!missing) {
+                return false;
+            }
+        }
+        for (String conditionClassName : classNames(metadata, Conditional.class.getName(), "value")) {
+            Class<?> conditionClass = ClassUtils.resolveClassName(conditionClassName, context.getClassLoader());
+            if (!ParallelSafeCondition.class.isAssignableFrom(conditionClass)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            ParallelSafeCondition condition = (ParallelSafeCondition) BeanUtils.instantiateClass(conditionClass);
+            boolean matched = condition.matches(context, metadata);
+            report.record(candidate, conditionClass.getSimpleName(), matched, System.nanoTime() - start);
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 注解可以出现多次(直接标注、组合注解), 类值以字符串形式读取, 不加载
+    private static List<String> classNames(AnnotationMetadata metadata, String annotation, String... attributes) {
+        List<String> names = new ArrayList<>();
+        MultiValueMap<String, Object> values = metadata.getAllAnnotationAttributes(annotation, true);
+        if (values == null) {
+            return names;
+        }
+        for (String attribute : attributes) {
+            List<Object> list = values.get(attribute);
+            if (list != null) {
+                for (Object value : list) {
+                    for (String name : (String[]) value) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private static class SimpleConditionContext implements ConditionContext {
+        private final ConfigurableListableBeanFactory beanFactory;
+        private final Environment environment;
+        private final ResourceLoader resourceLoader;
+
+        SimpleConditionContext(ConfigurableListableBeanFactory beanFactory, Environment environment, ResourceLoader resourceLoader) {
+            this.beanFactory = beanFactory;
+            this.environment = environment;
+            this.resourceLoader = resourceLoader;
+        }
+
+        @Override
+        public BeanDefinitionRegistry getRegistry() {
+            return (BeanDefinitionRegistry) beanFactory;
+        }
+
+        @Override
+        public ConfigurableListableBeanFactory getBeanFactory() {
+            return beanFactory;
+        }
+
+        @Override
+        public Environment getEnvironment() {
+            return environment;
+        }
+
+        @Override
+        public ResourceLoader getResourceLoader() {
+            return resourceLoader;
+        }
+
+        @Override
+        @Nullable
+        public ClassLoader getClassLoader() {
+            return beanFactory.getBeanClassLoader();
+        }
+    }
+}
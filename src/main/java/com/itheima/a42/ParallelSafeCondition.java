@@ -0,0 +1,12 @@
+package com.itheima.a42;
+
+import org.springframework.context.annotation.Condition;
+
+/**
+ * 结果只取决于类路径、Environment 的条件, 不看已注册的 bean 定义
+ * <p>
+ * 这样的条件可以在导入之前、在多个线程中提前求值, 见 {@link ParallelConditionFilter};
+ * 像 @ConditionalOnMissingBean 这样依赖注册顺序的条件不能实现这个接口
+ */
+public interface ParallelSafeCondition extends Condition {
+}
@@ -0,0 +1,121 @@
+package com.itheima.a43;
+
+import ch.qos.logback.classic.Level;
+import com.itheima.a01.ConcurrentSingletonBeanFactory;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    多个线程同时获取不同 FactoryBean 的产品: 全局锁 vs 按 FactoryBean 加锁
+ */
+public class A43_1 {
+
+    private static final AtomicInteger created = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ConcurrentSingletonBeanFactory.class)).setLevel(Level.INFO);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 4 个线程各取一个产品(getObject 耗时 200ms)");
+        for (int round = 1; round <= 2; round++) {
+            System.out.printf("全局锁: %d ms, 按 FactoryBean 加锁: %d ms%n",
+                    getProducts(pool, new DefaultListableBeanFactory(), false),
+                    getProducts(pool, new ConcurrentSingletonBeanFactory(), false));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 4 个线程取同一个产品");
+        created.set(0);
+        System.out.printf("按 FactoryBean 加锁: %d ms, getObject 调用 %d 次%n",
+                getProducts(pool, new ConcurrentSingletonBeanFactory(), true), created.get());
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 产品照常走后初始化, 创建耗时");
+        ConcurrentSingletonBeanFactory beanFactory = new ConcurrentSingletonBeanFactory();
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ConcurrentSingletonBeanFactory.class)).setLevel(Level.DEBUG);
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.register(A43.class);
+        context.registerBean("client", SlowFactoryBean.class);
+        context.refresh();
+        System.out.println(context.getBean("bean1") == context.getBean("bean1"));
+        System.out.println(context.getBean("client"));
+        System.out.println(beanFactory.getProductCreationTimes());
+        context.close();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 4. 产品为 null 时缓存 NullBean");
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ConcurrentSingletonBeanFactory.class)).setLevel(Level.INFO);
+        created.set(0);
+        context = new AnnotationConfigApplicationContext(new ConcurrentSingletonBeanFactory());
+        context.registerBean("none", NullFactoryBean.class);
+        context.refresh();
+        System.out.printf("%s %s, getObject 调用 %d 次%n", context.getBean("none"), context.getBean("none"), created.get());
+        context.close();
+        pool.shutdown();
+
+        /*
+            学到了什么
+                a. FactoryBean 本身是普通单例, 它的产品另有缓存, 父类创建产品时持有全局锁
+                b. 按 FactoryBean 加锁后, 不同的产品可以同时创建, 同一个产品仍只创建一次
+                c. 产品的锁与 bean 的锁放进同一个等待链检查, getObject 中再 getBean 时也不会互相死等
+                d. 产品为 null 时缓存的是 NullBean(包级私有, 需要在它的包里创建), 否则每次都要再调用 getObject
+         */
+    }
+
+    private static long getProducts(ExecutorService pool, DefaultListableBeanFactory beanFactory, boolean same) throws Exception {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        for (int i = 0; i < 4; i++) {
+            context.registerBean("client" + i, SlowFactoryBean.class);
+        }
+        context.refresh();
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String name = same ? "client0" : "client" + i;
+            futures.add(pool.submit(() -> context.getBean(name)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long cost = (System.nanoTime() - start) / 1_000_000;
+        context.close();
+        return cost;
+    }
+
+    // 类似 SqlSessionFactoryBean, 产品创建较慢; 产品在第一次使用时才创建
+    static class SlowFactoryBean implements FactoryBean<Client> {
+        @Override
+        public Client getObject() throws Exception {
+            Thread.sleep(200);
+            created.incrementAndGet();
+            return new Client();
+        }
+
+        @Override
+        public Class<?> getObjectType() {
+            return Client.class;
+        }
+    }
+
+    static class NullFactoryBean implements FactoryBean<Client> {
+        @Override
+        public Client getObject() {
+            created.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public Class<?> getObjectType() {
+            return Client.class;
+        }
+    }
+
+    static class Client {
+    }
+}
@@ -1,5 +1,6 @@
 package com.itheima.a43;
 
+import com.itheima.a03.SelectiveBeanPostProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
@@ -7,10 +8,16 @@ import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.stereotype.Component;
 
 @Component
-public class Bean1PostProcessor implements BeanPostProcessor {
+public class Bean1PostProcessor implements BeanPostProcessor, SelectiveBeanPostProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(Bean1PostProcessor.class);
 
+    // beanType 是 Bean1FactoryBean, 它和产品 Bean1 共用 bean1 这个名字, 所以只按名字判断
+    @Override
+    public boolean supports(Class<?> beanType, String beanName) {
+        return beanName.equals("bean1");
+    }
+
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
         if (beanName.equals("bean1") && bean instanceof Bean1) {
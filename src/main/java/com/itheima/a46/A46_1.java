@@ -0,0 +1,130 @@
+package com.itheima.a46;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.boot.env.RandomValuePropertySource;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/*
+    @Value 解析的缓存: 预拆分的 ${} 模板、编译后的 SpEL
+ */
+public class A46_1 {
+
+    private static final int COUNT = 200_000;
+
+    public static void main(String[] args) {
+        AnnotationConfigApplicationContext standard = context(false, false);
+        AnnotationConfigApplicationContext caching = context(true, false);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 结果相同");
+        System.out.println(standard.getBean(Bean5.class));
+        System.out.println(caching.getBean(Bean5.class));
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 创建 " + COUNT + " 个 prototype");
+        for (int round = 1; round <= 3; round++) {
+            System.out.printf("第%d轮 原来 %d ms, 缓存 %d ms%n", round, create(standard), create(caching));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 添加属性源后缓存失效");
+        caching.getEnvironment().getPropertySources().addFirst(
+                new MapPropertySource("demo", Collections.singletonMap("greeting", "你好")));
+        System.out.println(caching.getBean(Bean5.class));
+
+        standard.close();
+        caching.close();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 4. 有 PropertySourcesPlaceholderConfigurer 时(Boot 应用都有)");
+        standard = context(false, true);
+        caching = context(true, true);
+        System.out.println(caching.getBean(Bean5.class));
+        for (int round = 1; round <= 3; round++) {
+            System.out.printf("第%d轮 原来 %d ms, 缓存 %d ms%n", round, create(standard), create(caching));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 5. random.* 每次注入都是新值, 不缓存");
+        System.out.println(caching.getBean(Bean7.class));
+        System.out.println(caching.getBean(Bean7.class));
+        standard.close();
+        caching.close();
+
+        /*
+            学到了什么
+                a. @Value 每次注入都要经过 ${} 解析、#{} 求值、类型转换, prototype 每创建一次就重复一遍
+                b. ${} 的结果只取决于属性源, 属性源不变时可以直接复用上次的结果
+                c. StandardBeanExpressionResolver 已缓存解析好的表达式, 编译模式下再把表达式编译成字节码
+                d. 缓存要在属性源变化时失效, 属性源内部的值变化则需要手动 invalidate
+                e. 多个 embeddedValueResolver 依次处理, 要在 PropertySourcesPlaceholderConfigurer 之前添加才轮得到
+                f. 不可枚举的属性源(如 random.*)每次取值都可能不同, 这样的结果不能缓存
+         */
+    }
+
+    private static AnnotationConfigApplicationContext context(boolean caching, boolean placeholderConfigurer) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        MutablePropertySources sources = context.getEnvironment().getPropertySources();
+        sources.addLast(new RandomValuePropertySource());
+        sources.addLast(new MapPropertySource("app", Collections.singletonMap("app.id", "${random.uuid}")));
+        if (caching) {
+            context.registerBean(CachingValueResolverPostProcessor.class);
+        }
+        if (placeholderConfigurer) {
+            context.registerBean(PropertySourcesPlaceholderConfigurer.class);
+        }
+        context.registerBean(Bean5.class);
+        context.registerBean(Bean7.class);
+        context.registerBean("bean6", Bean6.class);
+        context.refresh();
+        return context;
+    }
+
+    private static long create(AnnotationConfigApplicationContext context) {
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            context.getBean(Bean5.class);
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Component
+    @Scope("prototype")
+    static class Bean5 {
+        @Value("${java.version}")
+        private String version;
+        @Value("${greeting:hello}, ${user.name}")
+        private String greeting;
+        @Value("#{'hello, ' + '${java.home}'}")
+        private String value;
+        @Value("#{@bean6.timeout * 2}")
+        private int timeout;
+        @Value("#{${demo.size:3} + 1}")
+        private int size;
+
+        @Override
+        public String toString() {
+            return "Bean5{version=" + version + ", greeting=" + greeting + ", value=" + value
+                    + ", timeout=" + timeout + ", size=" + size + "}";
+        }
+    }
+
+    @Scope("prototype")
+    static class Bean7 {
+        @Value("${random.int(100)}")
+        private int lucky;
+        @Value("${app.id}")
+        private String id;
+
+        @Override
+        public String toString() {
+            return "Bean7{lucky=" + lucky + ", id=" + id + "}";
+        }
+    }
+
+    static class Bean6 {
+        public int timeout = 30;
+    }
+}
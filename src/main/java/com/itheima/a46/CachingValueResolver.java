@@ -0,0 +1,253 @@
+package com.itheima.a46;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanExpressionException;
+import org.springframework.beans.factory.config.BeanExpressionContext;
+import org.springframework.beans.factory.config.BeanExpressionResolver;
+import org.springframework.context.expression.StandardBeanExpressionResolver;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringValueResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 带缓存的 @Value 解析, 同时充当 ${} 的 StringValueResolver 和 #{} 的 BeanExpressionResolver
+ * <p>
+ * 每次注入 @Value(包括每次创建 prototype)都要 resolvePlaceholders、evaluate 一遍. 这里:
+ * <ul>
+ *     <li>${} 模板预先拆分成文本段和占位符, 解析结果按原字符串缓存; 值来自不可枚举的属性源(如 random.* 的 RandomValuePropertySource)
+ *     时每次都可能不同, 不缓存, 只复用拆分好的模板</li>
+ *     <li>#{} 交给 StandardBeanExpressionResolver(它本身按字符串缓存解析好的表达式),
+ *     解析器换成 SpelCompilerMode.IMMEDIATE, 可编译的表达式第二次求值后就编译成字节码;
+ *     编译后的代码因类型变化执行失败时, 退回解释执行再算一次</li>
+ *     <li>Environment 的属性源增删、替换时清空全部缓存; 属性源内部的值变了(如 System.setProperty)察觉不到, 需要调用 {@link #invalidate()}</li>
+ * </ul>
+ * 与 resolvePlaceholders 一样是宽松的: 解析不了的占位符原样保留
+ */
+public class CachingValueResolver implements StringValueResolver, BeanExpressionResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingValueResolver.class);
+
+    private static final String PREFIX = "${";
+    private static final String SUFFIX = "}";
+    private static final String SEPARATOR = ":";
+
+    private final ConfigurableEnvironment environment;
+
+    @Nullable
+    private final ClassLoader classLoader;
+
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    private final Map<String, String> resolved = new ConcurrentHashMap<>();
+
+    private volatile StandardBeanExpressionResolver expressions;
+
+    // 上次看到的属性源, 按对象身份比较
+    private volatile List<PropertySource<?>> sources = Collections.emptyList();
+
+    public CachingValueResolver(ConfigurableEnvironment environment, @Nullable ClassLoader classLoader) {
+        this.environment = environment;
+        this.classLoader = classLoader;
+        this.expressions = newExpressionResolver();
+    }
+
+    private StandardBeanExpressionResolver newExpressionResolver() {
+        StandardBeanExpressionResolver resolver = new StandardBeanExpressionResolver();
+        resolver.setExpressionParser(new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, classLoader)));
+        return resolver;
+    }
+
+    public void invalidate() {
+        templates.clear();
+        resolved.clear();
+        expressions = newExpressionResolver();
+    }
+
+    private void checkPropertySources() {
+        List<PropertySource<?>> current = sources;
+        int i = 0;
+        boolean changed = false;
+        for (PropertySource<?> source : environment.getPropertySources()) {
+            if (i >= current.size() || current.get(i) != source) {
+                changed = true;
+                break;
+            }
+            i++;
+        }
+        if (changed || i != current.size()) {
+            List<PropertySource<?>> snapshot = new ArrayList<>();
+            environment.getPropertySources().forEach(snapshot::add);
+            if (!current.isEmpty()) {
+                log.debug("属性源变化, 清空缓存: {}", snapshot);
+            }
+            invalidate();
+            sources = snapshot;
+        }
+    }
+
+    @Override
+    @Nullable
+    public String resolveStringValue(String strVal) {
+        if (!strVal.contains(PREFIX)) {
+            return strVal;
+        }
+        checkPropertySources();
+        String value = resolved.get(strVal);
+        if (value == null) {
+            Resolution resolution = new Resolution();
+            value = resolve(strVal, resolution);
+            if (resolution.cacheable) {
+                resolved.put(strVal, value);
+            }
+        }
+        return value;
+    }
+
+    private String resolve(String text, Resolution resolution) {
+        Set<String> visiting = resolution.visiting;
+        Template template = templates.computeIfAbsent(text, Template::parse);
+        if (template.placeholders.isEmpty()) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(template.texts.get(0));
+        for (int i = 0; i < template.placeholders.size(); i++) {
+            String original = template.placeholders.get(i);
+            if (!visiting.add(original)) {
+                throw new IllegalArgumentException("Circular placeholder reference '" + original + "' in property definitions");
+            }
+            // 与 PropertyPlaceholderHelper 的顺序相同: 先解析嵌套的占位符, 整体找不到再按 : 拆出默认值
+            String placeholder = resolve(original, resolution);
+            String value = property(placeholder, resolution);
+            if (value == null) {
+                int separator = placeholder.indexOf(SEPARATOR);
+                if (separator != -1) {
+                    value = property(placeholder.substring(0, separator), resolution);
+                    if (value == null) {
+                        value = placeholder.substring(separator + SEPARATOR.length());
+                    }
+                }
+            }
+            // 值里的占位符继续解析; 解析不了的原样保留
+            result.append(value != null ? resolve(value, resolution) : PREFIX + original + SUFFIX);
+            visiting.remove(original);
+            result.append(template.texts.get(i + 1));
+        }
+        return result.toString();
+    }
+
+    // 相当于 getPropertyAsRawString: 不解析值里的占位符, 由上面的递归处理
+    @Nullable
+    private String property(String key, Resolution resolution) {
+        for (PropertySource<?> source : sources) {
+            Object value = source.getProperty(key);
+            if (value != null) {
+                // 不可枚举的属性源可能按名字现算值(random.*); Boot 把所有属性源汇总成一个不可枚举的 configurationProperties,
+                // 所以再看有没有可枚举的属性源真的包含这个名字, 没有才不缓存
+                if (!(source instanceof EnumerablePropertySource) && !enumerated(key)) {
+                    resolution.cacheable = false;
+                }
+                return value instanceof String ? (String) value : environment.getConversionService().convert(value, String.class);
+            }
+        }
+        return null;
+    }
+
+    private boolean enumerated(String key) {
+        for (PropertySource<?> source : sources) {
+            if (source instanceof EnumerablePropertySource && ((EnumerablePropertySource<?>) source).containsProperty(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @Nullable
+    public Object evaluate(@Nullable String value, BeanExpressionContext evalContext) throws BeansException {
+        if (value == null || !value.contains("#{")) {
+            return value;
+        }
+        checkPropertySources();
+        StandardBeanExpressionResolver resolver = expressions;
+        try {
+            return resolver.evaluate(value, evalContext);
+        } catch (BeanExpressionException ex) {
+            // IMMEDIATE 模式下编译后的代码执行失败会直接抛出, 表达式已退回解释执行, 再算一次
+            if (ex.getCause() instanceof SpelEvaluationException && ((SpelEvaluationException) ex.getCause()).getMessageCode()
+                    == SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION) {
+                log.debug("编译后的表达式执行失败, 改为解释执行: {}", value);
+                return resolver.evaluate(value, evalContext);
+            }
+            throw ex;
+        }
+    }
+
+    // 一次解析的状态: 正在解析的占位符(检查循环引用), 结果能否缓存
+    private static class Resolution {
+        final Set<String> visiting = new HashSet<>();
+        boolean cacheable = true;
+    }
+
+    /**
+     * 拆分好的模板: texts 比 placeholders(${} 中间的部分)多一个, 依次交替拼接
+     */
+    private static class Template {
+        final List<String> texts = new ArrayList<>();
+        final List<String> placeholders = new ArrayList<>();
+
+        // 与 PropertyPlaceholderHelper 相同的规则: 占位符内部的 { } 成对出现才算嵌套
+        static Template parse(String text) {
+            Template template = new Template();
+            int from = 0;
+            int start = text.indexOf(PREFIX);
+            while (start != -1) {
+                int end = findEnd(text, start + PREFIX.length());
+                if (end == -1) {
+                    break;
+                }
+                template.texts.add(text.substring(from, start));
+                template.placeholders.add(text.substring(start + PREFIX.length(), end));
+                from = end + SUFFIX.length();
+                start = text.indexOf(PREFIX, from);
+            }
+            template.texts.add(text.substring(from));
+            return template;
+        }
+
+        private static int findEnd(String text, int index) {
+            int nested = 0;
+            while (index < text.length()) {
+                if (text.startsWith(SUFFIX, index)) {
+                    if (nested == 0) {
+                        return index;
+                    }
+                    nested--;
+                    index += SUFFIX.length();
+                } else if (text.startsWith("{", index)) {
+                    nested++;
+                    index++;
+                } else {
+                    index++;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.itheima.a46;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+
+/**
+ * 安装 {@link CachingValueResolver}
+ * <p>
+ * refresh 的 prepareBeanFactory 总会设置一个 StandardBeanExpressionResolver, 所以要在 BeanFactory 后处理器中替换它;
+ * 先于 finishBeanFactoryInitialization 添加 embeddedValueResolver, 容器就不再添加默认的 resolvePlaceholders
+ * <p>
+ * PropertySourcesPlaceholderConfigurer(Boot 中总有一个)也添加 embeddedValueResolver, 多个 resolver 按添加顺序依次处理.
+ * 它是 PriorityOrdered, 本类也必须是, 并且排在它前面: 先由本类从 Environment 解析, 解析不了的占位符原样交给它,
+ * 再按它自己的规则(本地属性、ignoreUnresolvablePlaceholders 等)处理.
+ * 它设置了 localOverride(本地属性优先于 Environment)或者自定义前缀时结果会不同, 这种情况不要使用本类
+ */
+public class CachingValueResolverPostProcessor implements BeanFactoryPostProcessor, EnvironmentAware, PriorityOrdered {
+
+    private ConfigurableEnvironment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = (ConfigurableEnvironment) environment;
+    }
+
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        CachingValueResolver resolver = new CachingValueResolver(environment, beanFactory.getBeanClassLoader());
+        beanFactory.setBeanExpressionResolver(resolver);
+        beanFactory.addEmbeddedValueResolver(resolver);
+        beanFactory.registerSingleton("cachingValueResolver", resolver);
+    }
+}
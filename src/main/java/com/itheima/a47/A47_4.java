@@ -0,0 +1,58 @@
+package com.itheima.a47;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.ResolvableType;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    类型 -> bean 名 的倒排索引, 对比 A47_2 中每次都 beanNamesForTypeIncludingAncestors 遍历全部 bean 定义
+ */
+public class A47_4 {
+    public static void main(String[] args) throws NoSuchFieldException {
+        TypeIndexedBeanFactory beanFactory = new TypeIndexedBeanFactory();
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.register(A47_2.class);
+        context.refresh();
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> 1. 泛型");
+        ResolvableType teacherDao = ResolvableType.forClassWithGenerics(A47_2.Dao.class, A47_2.Teacher.class);
+        ResolvableType studentDao = ResolvableType.forClassWithGenerics(A47_2.Dao.class, A47_2.Student.class);
+        System.out.println(Arrays.toString(beanFactory.getBeanNamesForType(teacherDao)));
+        System.out.println(Arrays.toString(beanFactory.getBeanNamesForType(studentDao)));
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> 2. getBean、getBeansOfType、集合注入");
+        System.out.println(context.getBean(A47_2.Service2.class));
+        System.out.println(context.getBeansOfType(A47_2.Service.class).keySet());
+        DependencyDescriptor dd = new DependencyDescriptor(Target.class.getDeclaredField("serviceList"), true);
+        System.out.println(beanFactory.resolveDependency(dd, "target"));
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>> 3. 增量维护");
+        beanFactory.registerBeanDefinition("service4",
+                BeanDefinitionBuilder.genericBeanDefinition(Service4.class).getBeanDefinition());
+        beanFactory.removeBeanDefinition("service1");
+        System.out.println(context.getBeansOfType(A47_2.Service.class).keySet());
+        System.out.println(beanFactory.resolveDependency(dd, "target"));
+
+        System.out.println(beanFactory.getIndexStatistics());
+        context.close();
+
+        /*
+            学到了什么
+                1. getBean(Class)、getBeansOfType、数组/集合注入最终都汇聚到 getBeanNamesForType
+                2. 配置冻结后类型预测才稳定, 索引与原缓存一样以此为前提
+                3. 注册/删除只影响一个名字, 没必要把整个缓存清空重来
+         */
+    }
+
+    static class Target {
+        @Autowired private List<A47_2.Service> serviceList;
+    }
+
+    static class Service4 implements A47_2.Service {
+    }
+}
@@ -0,0 +1,89 @@
+package com.itheima.a47;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Optional;
+
+/*
+    注入点解析结果的记忆, 对比 A47_1 ~ A47_3 中 doResolveDependency 每次完整走一遍候选者查找
+ */
+@Configuration
+public class A47_5 {
+    public static void main(String[] args) {
+        run(new DefaultListableBeanFactory(), "原始");
+        ResolutionMemoBeanFactory memoBeanFactory = new ResolutionMemoBeanFactory();
+        run(memoBeanFactory, "记忆");
+        System.out.println(memoBeanFactory.getResolutionStatistics());
+
+        /*
+            学到了什么
+                1. @Autowired 字段在 AutowiredAnnotationBeanPostProcessor 中已有 shortcut 缓存,
+                   但构造方法参数、Optional、@Resource 按类型兜底每次都要重新查找候选者
+                2. 候选者集合只随 bean 定义变化, 因此可以按 (注入点, bean 名) 记住结果, 定义变化时整体作废
+         */
+    }
+
+    private static void run(DefaultListableBeanFactory beanFactory, String title) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(beanFactory);
+        context.register(A47_5.class);
+        context.refresh();
+        for (int i = 0; i < 10_000; i++) { // 预热
+            context.getBean(Target.class);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 100_000; i++) {
+            context.getBean(Target.class);
+        }
+        System.out.println(title + ": 创建 100000 个 prototype 耗时 " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        System.out.println(context.getBean(Target.class));
+        context.close();
+    }
+
+    @Component
+    @Scope("prototype")
+    static class Target {
+        private final Service primary;
+        @Autowired @Qualifier("service3") private Service qualified;
+        @Autowired private Optional<Service2> optional;
+        @Resource private Service service2;
+
+        Target(Service primary) { // 构造方法参数走 @Primary
+            this.primary = primary;
+        }
+
+        @Override
+        public String toString() {
+            return "Target{" +
+                   "primary=" + primary +
+                   ", qualified=" + qualified +
+                   ", optional=" + optional +
+                   ", service2=" + service2 +
+                   '}';
+        }
+    }
+
+    interface Service {
+
+    }
+
+    @Primary
+    @Component("service1") static class Service1 implements Service {
+
+    }
+
+    @Component("service2") static class Service2 implements Service {
+
+    }
+
+    @Component("service3") static class Service3 implements Service {
+
+    }
+}
@@ -0,0 +1,164 @@
+package com.itheima.a47;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.TypeConverter;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记住每个注入点最终选中了哪个 bean 的 BeanFactory
+ * <p>
+ * doResolveDependency 每次都要: 按类型找候选者 -> @Qualifier、泛型过滤 -> @Primary -> @Priority -> 按名字兜底,
+ * prototype、request 作用域的 bean 每创建一次就要把这套流程对每个注入点再走一遍
+ * <p>
+ * 这里以 (注入点, 发起注入的 bean 名) 为 key 记住选中的候选 bean 名, 下次直接按名字取;
+ * 只记忆【唯一候选】的结果, 数组、集合、Map 和 @Value 仍走原流程;
+ * 任何 bean 定义、手动单例、可解析依赖的变化都会清空记忆
+ */
+public class ResolutionMemoBeanFactory extends DefaultListableBeanFactory {
+
+    private final Map<MemoKey, String> memo = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @Override
+    @Nullable
+    public Object doResolveDependency(DependencyDescriptor descriptor, @Nullable String beanName,
+                                      @Nullable Set<String> autowiredBeanNames, @Nullable TypeConverter typeConverter) throws BeansException {
+        if (descriptor instanceof MemoizedDescriptor) {
+            return super.doResolveDependency(descriptor, beanName, autowiredBeanNames, typeConverter);
+        }
+        MemoKey key = new MemoKey(descriptor, beanName);
+        String candidate = memo.get(key);
+        if (candidate != null) {
+            if (containsBean(candidate)) {
+                // 借用 resolveShortcut 这个入口, 原流程中设置当前 InjectionPoint 等步骤保持不变
+                Object result = super.doResolveDependency(
+                        new MemoizedDescriptor(descriptor, candidate), beanName, null, typeConverter);
+                if (ClassUtils.isAssignableValue(descriptor.getDependencyType(), result)) {
+                    hits.increment();
+                    if (autowiredBeanNames != null) {
+                        autowiredBeanNames.add(candidate);
+                    }
+                    return result;
+                }
+            }
+            memo.remove(key, candidate);
+            stale.increment();
+        }
+
+        Set<String> names = new LinkedHashSet<>();
+        Object result = super.doResolveDependency(descriptor, beanName, names, typeConverter);
+        if (names.isEmpty()) {
+            return result; // shortcut、@Value、可解析依赖(如 ApplicationContext), 没有做候选者查找
+        }
+        misses.increment();
+        if (autowiredBeanNames != null) {
+            autowiredBeanNames.addAll(names);
+        }
+        if (result != null && names.size() == 1 && isSingleCandidateLookup(descriptor)) {
+            memo.put(key, names.iterator().next());
+        }
+        return result;
+    }
+
+    // 数组、集合、Map 可能恰好只有一个元素, 不能当成单个候选者记忆; @Value 没有候选者
+    private boolean isSingleCandidateLookup(DependencyDescriptor descriptor) {
+        Class<?> type = descriptor.getDependencyType();
+        return !type.isArray() && !Collection.class.isAssignableFrom(type) && !Map.class.isAssignableFrom(type)
+               && getAutowireCandidateResolver().getSuggestedValue(descriptor) == null;
+    }
+
+    @Override
+    public void registerBeanDefinition(String beanName, BeanDefinition beanDefinition) throws BeanDefinitionStoreException {
+        super.registerBeanDefinition(beanName, beanDefinition);
+        invalidate();
+    }
+
+    @Override
+    public void removeBeanDefinition(String beanName) throws NoSuchBeanDefinitionException {
+        super.removeBeanDefinition(beanName);
+        invalidate();
+    }
+
+    @Override
+    public void registerSingleton(String beanName, Object singletonObject) throws IllegalStateException {
+        super.registerSingleton(beanName, singletonObject);
+        invalidate();
+    }
+
+    @Override
+    public void registerResolvableDependency(Class<?> dependencyType, @Nullable Object autowiredValue) {
+        super.registerResolvableDependency(dependencyType, autowiredValue);
+        invalidate();
+    }
+
+    public void invalidate() {
+        if (!memo.isEmpty()) {
+            memo.clear();
+            invalidations.increment();
+        }
+    }
+
+    public String getResolutionStatistics() {
+        return "memo=" + memo.size() + ", hits=" + hits.sum() + ", misses=" + misses.sum()
+               + ", stale=" + stale.sum() + ", invalidations=" + invalidations.sum();
+    }
+
+    private static final class MemoKey {
+        final DependencyDescriptor descriptor;
+        final String beanName;
+
+        MemoKey(DependencyDescriptor descriptor, @Nullable String beanName) {
+            this.descriptor = descriptor;
+            this.beanName = (beanName != null ? beanName : "");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MemoKey)) return false;
+            MemoKey other = (MemoKey) o;
+            return beanName.equals(other.beanName) && descriptor.equals(other.descriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(descriptor, beanName);
+        }
+    }
+
+    // 直接按记忆的名字取 bean, resolveCandidate 仍交给原 descriptor(Optional 等包装会重写它)
+    private static final class MemoizedDescriptor extends DependencyDescriptor {
+        private final DependencyDescriptor original;
+        private final String candidate;
+
+        MemoizedDescriptor(DependencyDescriptor original, String candidate) {
+            super(original);
+            this.original = original;
+            this.candidate = candidate;
+        }
+
+        @Override
+        public Object resolveShortcut(BeanFactory beanFactory) {
+            return original.resolveCandidate(candidate, original.getDependencyType(), beanFactory);
+        }
+    }
+}
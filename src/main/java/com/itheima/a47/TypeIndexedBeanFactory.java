@@ -0,0 +1,311 @@
+package com.itheima.a47;
+
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.ResolvableType;
+import org.springframework.lang.Nullable;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带【类型 -> bean 名】倒排索引的 BeanFactory
+ * <p>
+ * 按类型查找(getBean(Class)、getBeansOfType、数组/集合注入)最终都会走到 getBeanNamesForType,
+ * 原实现每次都要遍历全部 bean 定义, 而且只缓存原始 Class, 像 Dao&lt;Teacher&gt; 这样带泛型的类型每次都重新遍历;
+ * 任何一次 registerBeanDefinition 都会把整个缓存清空
+ * <p>
+ * 这里的做法
+ * 1. 配置冻结后(与原缓存的前提一致), 以 ResolvableType(含泛型) 为 key 缓存查找结果
+ * 2. 注册、覆盖、删除 bean 定义或手动单例时, 只对这一个名字重新判断一次, 增量修改各个索引项
+ * <p>
+ * 类型判断(isTypeMatch)可能创建 FactoryBean, 要拿单例锁; 持有单例锁的线程也可能来查索引, 所以判断都在索引的锁外进行,
+ * 锁内只修改索引. 判断期间有 bean 定义变化(generation 变了)时, 算出的结果不放进索引, 下次查询重新计算
+ */
+public class TypeIndexedBeanFactory extends DefaultListableBeanFactory {
+
+    private final Map<TypeKey, IndexEntry> index = new ConcurrentHashMap<>();
+
+    // 每次 reindex 加一
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder incrementalUpdates = new LongAdder();
+
+    @Override
+    public String[] getBeanNamesForType(ResolvableType type, boolean includeNonSingletons, boolean allowEagerInit) {
+        if (!isIndexable(type, allowEagerInit)) {
+            return super.getBeanNamesForType(type, includeNonSingletons, allowEagerInit);
+        }
+        return lookup(new TypeKey(ResolvableType.forType(type.getType()), includeNonSingletons));
+    }
+
+    @Override
+    public String[] getBeanNamesForType(@Nullable Class<?> type, boolean includeNonSingletons, boolean allowEagerInit) {
+        if (type == null || !isIndexable(ResolvableType.forRawClass(type), allowEagerInit)) {
+            return super.getBeanNamesForType(type, includeNonSingletons, allowEagerInit);
+        }
+        return lookup(new TypeKey(ResolvableType.forClass(type), includeNonSingletons));
+    }
+
+    private String[] lookup(TypeKey key) {
+        IndexEntry entry = index.get(key);
+        if (entry != null) {
+            hits.increment();
+            return entry.names;
+        }
+        misses.increment();
+        // 第一次查询该类型: 完整遍历一次, 之后靠增量维护
+        long start = generation.get();
+        entry = new IndexEntry();
+        for (String name : getBeanDefinitionNames()) {
+            String matched = matchDefinition(name, key);
+            if (matched != null) {
+                entry.fromDefinitions.add(matched);
+            }
+        }
+        for (String name : manualSingletonNames()) {
+            String matched = matchManualSingleton(name, key);
+            if (matched != null) {
+                entry.fromSingletons.add(matched);
+            }
+        }
+        entry.refresh();
+        synchronized (index) {
+            if (generation.get() != start) {
+                return entry.names; // 遍历期间有变化, 不保证与增量维护的结果一致
+            }
+            IndexEntry existing = index.putIfAbsent(key, entry); // 别的线程同时算好了, 结果相同
+            return existing != null ? existing.names : entry.names;
+        }
+    }
+
+    // 只有类型预测稳定(配置已冻结、允许提前初始化)且类型中不含未解析的泛型变量时才走索引
+    private boolean isIndexable(ResolvableType type, boolean allowEagerInit) {
+        return isConfigurationFrozen() && allowEagerInit && isConcrete(type.getType());
+    }
+
+    private static boolean isConcrete(Type type) {
+        if (type instanceof Class) {
+            return true;
+        }
+        if (type instanceof ParameterizedType) {
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                if (!isConcrete(argument)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false; // TypeVariable、WildcardType、GenericArrayType 交给原实现
+    }
+
+    @Override
+    public void registerBeanDefinition(String beanName, BeanDefinition beanDefinition) throws BeanDefinitionStoreException {
+        super.registerBeanDefinition(beanName, beanDefinition);
+        reindex(beanName);
+    }
+
+    @Override
+    public void removeBeanDefinition(String beanName) throws NoSuchBeanDefinitionException {
+        super.removeBeanDefinition(beanName);
+        reindex(beanName);
+    }
+
+    @Override
+    protected void resetBeanDefinition(String beanName) {
+        super.resetBeanDefinition(beanName); // 会递归重置以它为 parent 的子定义, 子定义也会走到这里
+        reindex(beanName);
+    }
+
+    @Override
+    public void registerSingleton(String beanName, Object singletonObject) throws IllegalStateException {
+        super.registerSingleton(beanName, singletonObject);
+        reindex(beanName);
+    }
+
+    @Override
+    public void destroySingleton(String beanName) {
+        super.destroySingleton(beanName);
+        if (!containsBeanDefinition(beanName)) { // 有定义的单例被销毁不影响类型匹配, 也避免关闭时重新创建 FactoryBean
+            reindex(beanName);
+        }
+    }
+
+    // 手动注册的单例 = 没有 bean 定义的单例, 顺序与注册顺序一致
+    private List<String> manualSingletonNames() {
+        List<String> names = new ArrayList<>();
+        for (String name : getSingletonNames()) {
+            if (!containsBeanDefinition(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    // 只重新判断这一个名字, 其它名字的匹配结果不受影响
+    private void reindex(String beanName) {
+        generation.incrementAndGet(); // 先于判断, 正在遍历的查询不会把旧结果放进索引
+        if (index.isEmpty()) {
+            return;
+        }
+        boolean definition = containsBeanDefinition(beanName);
+        boolean manual = !definition && containsSingleton(beanName);
+        Map<TypeKey, String> matches = new HashMap<>();
+        for (TypeKey key : index.keySet()) {
+            String matched = definition ? matchDefinition(beanName, key) : manual ? matchManualSingleton(beanName, key) : null;
+            matches.put(key, matched);
+        }
+        synchronized (index) {
+            String[] definitionOrder = getBeanDefinitionNames();
+            for (Iterator<Map.Entry<TypeKey, IndexEntry>> it = index.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<TypeKey, IndexEntry> e = it.next();
+                if (!matches.containsKey(e.getKey())) {
+                    it.remove(); // 判断之后才加入的索引项, 不确定是否包含这次的变化, 下次查询重新计算
+                    continue;
+                }
+                IndexEntry entry = e.getValue();
+                entry.remove(beanName);
+                String matched = matches.get(e.getKey());
+                if (matched != null) {
+                    if (definition) {
+                        entry.addDefinition(matched, definitionOrder);
+                    } else {
+                        entry.fromSingletons.add(matched);
+                    }
+                }
+                entry.refresh();
+            }
+            incrementalUpdates.increment();
+        }
+    }
+
+    // 与 DefaultListableBeanFactory#doGetBeanNamesForType 中 allowEagerInit = true 时对单个 bean 定义的判断一致
+    @Nullable
+    private String matchDefinition(String beanName, TypeKey key) {
+        if (isAlias(beanName)) {
+            return null;
+        }
+        try {
+            RootBeanDefinition mbd = getMergedLocalBeanDefinition(beanName);
+            if (mbd.isAbstract()) {
+                return null;
+            }
+            BeanDefinitionHolder dbd = mbd.getDecoratedDefinition();
+            if (!isFactoryBean(beanName, mbd)) {
+                return (key.includeNonSingletons || isSingleton(beanName, mbd, dbd))
+                       && isTypeMatch(beanName, key.type, true) ? beanName : null;
+            }
+            boolean nonLazyDecorated = (dbd != null && !mbd.isLazyInit());
+            if ((key.includeNonSingletons || nonLazyDecorated || isSingleton(beanName, mbd, dbd))
+                && isTypeMatch(beanName, key.type, true)) {
+                return beanName;
+            }
+            String factoryName = FACTORY_BEAN_PREFIX + beanName;
+            return isTypeMatch(factoryName, key.type, true) ? factoryName : null;
+        } catch (NoSuchBeanDefinitionException ex) {
+            return null;
+        }
+    }
+
+    private boolean isSingleton(String beanName, RootBeanDefinition mbd, @Nullable BeanDefinitionHolder dbd) {
+        return (dbd != null ? mbd.isSingleton() : isSingleton(beanName));
+    }
+
+    // 与 doGetBeanNamesForType 中对手动注册单例的判断一致
+    @Nullable
+    private String matchManualSingleton(String beanName, TypeKey key) {
+        try {
+            if (isFactoryBean(beanName)) {
+                if ((key.includeNonSingletons || isSingleton(beanName)) && isTypeMatch(beanName, key.type)) {
+                    return beanName;
+                }
+                beanName = FACTORY_BEAN_PREFIX + beanName;
+            }
+            return isTypeMatch(beanName, key.type) ? beanName : null;
+        } catch (NoSuchBeanDefinitionException ex) {
+            return null;
+        }
+    }
+
+    public String getIndexStatistics() {
+        return "types=" + index.size() + ", hits=" + hits.sum() + ", misses=" + misses.sum()
+               + ", incrementalUpdates=" + incrementalUpdates.sum();
+    }
+
+    private static final class TypeKey {
+        final ResolvableType type;
+        final boolean includeNonSingletons;
+
+        TypeKey(ResolvableType type, boolean includeNonSingletons) {
+            this.type = type;
+            this.includeNonSingletons = includeNonSingletons;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TypeKey)) return false;
+            TypeKey other = (TypeKey) o;
+            return includeNonSingletons == other.includeNonSingletons && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, includeNonSingletons);
+        }
+    }
+
+    // bean 定义的匹配在前, 手动单例在后, 与原实现的返回顺序保持一致
+    private static final class IndexEntry {
+        final List<String> fromDefinitions = new ArrayList<>();
+        final List<String> fromSingletons = new ArrayList<>();
+        volatile String[] names = new String[0];
+
+        void remove(String beanName) {
+            String factoryName = FACTORY_BEAN_PREFIX + beanName;
+            fromDefinitions.removeIf(n -> n.equals(beanName) || n.equals(factoryName));
+            fromSingletons.removeIf(n -> n.equals(beanName) || n.equals(factoryName));
+        }
+
+        // 按 bean 定义的注册顺序插入
+        void addDefinition(String matched, String[] definitionOrder) {
+            String beanName = matched.startsWith(FACTORY_BEAN_PREFIX) ? matched.substring(1) : matched;
+            int position = 0;
+            for (String name : definitionOrder) {
+                if (name.equals(beanName)) {
+                    break;
+                }
+                if (position < fromDefinitions.size() && stripPrefix(fromDefinitions.get(position)).equals(name)) {
+                    position++;
+                }
+            }
+            fromDefinitions.add(position, matched);
+        }
+
+        void refresh() {
+            List<String> all = new ArrayList<>(fromDefinitions.size() + fromSingletons.size());
+            all.addAll(fromDefinitions);
+            all.addAll(fromSingletons);
+            names = all.toArray(new String[0]);
+        }
+
+        private static String stripPrefix(String name) {
+            return name.startsWith(FACTORY_BEAN_PREFIX) ? name.substring(1) : name;
+        }
+    }
+}
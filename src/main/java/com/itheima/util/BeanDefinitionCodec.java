@@ -0,0 +1,515 @@
+package com.itheima.util;
+
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.AutowireCandidateQualifier;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.LookupOverride;
+import org.springframework.beans.factory.support.ManagedArray;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedProperties;
+import org.springframework.beans.factory.support.ManagedSet;
+import org.springframework.beans.factory.support.MethodOverride;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * bean 定义的二进制编解码
+ * <p>
+ * 只保存 AbstractBeanDefinition 的字段和 XML、配置类会产生的值类型(字符串、bean 引用、内部 bean、Managed 集合等),
+ * bean 类只保存类名, 解码时不加载. 注解元数据(AnnotatedBeanDefinition)、来源对象(source、resource)不保存, 只留资源描述;
+ * RootBeanDefinition 解码后仍是 RootBeanDefinition, 其它都解码成 GenericBeanDefinition.
+ * 遇到无法保存的内容(instanceSupplier、replaced-method、任意对象值等)抛出 IllegalArgumentException
+ */
+public class BeanDefinitionCodec {
+
+    private static final byte GENERIC = 0;
+    private static final byte ROOT = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte CLASS = 5;
+    private static final byte STRING_ARRAY = 6;
+    private static final byte TYPED_STRING = 7;
+    private static final byte BEAN_REFERENCE = 8;
+    private static final byte BEAN_NAME_REFERENCE = 9;
+    private static final byte BEAN_DEFINITION_HOLDER = 10;
+    private static final byte BEAN_DEFINITION = 11;
+    private static final byte MANAGED_LIST = 12;
+    private static final byte MANAGED_SET = 13;
+    private static final byte MANAGED_MAP = 14;
+    private static final byte MANAGED_PROPERTIES = 15;
+    private static final byte MANAGED_ARRAY = 16;
+
+    // RootBeanDefinition 的包内字段, 重载的 @Bean 方法为 false, 构造方法解析时要在所有同名方法中挑选
+    private static final Field FACTORY_METHOD_UNIQUE = factoryMethodUniqueField();
+
+    public static void write(DataOutput out, BeanDefinition definition) throws IOException {
+        if (!(definition instanceof AbstractBeanDefinition)) {
+            throw new IllegalArgumentException("不支持的 bean 定义类型: " + definition.getClass().getName());
+        }
+        AbstractBeanDefinition bd = (AbstractBeanDefinition) definition;
+        if (bd.getInstanceSupplier() != null) {
+            throw new IllegalArgumentException("instanceSupplier 无法保存: " + bd);
+        }
+        boolean root = bd instanceof RootBeanDefinition;
+        out.writeByte(root ? ROOT : GENERIC);
+        writeString(out, root ? null : bd.getParentName());
+        writeString(out, bd.getBeanClassName());
+        writeString(out, bd.getScope());
+        out.writeBoolean(bd.isAbstract());
+        writeValue(out, bd.getLazyInit());
+        out.writeInt(bd.getAutowireMode());
+        out.writeInt(bd.getDependencyCheck());
+        writeValue(out, bd.getDependsOn());
+        out.writeBoolean(bd.isAutowireCandidate());
+        out.writeBoolean(bd.isPrimary());
+        writeQualifiers(out, bd.getQualifiers());
+        out.writeBoolean(bd.isNonPublicAccessAllowed());
+        out.writeBoolean(bd.isLenientConstructorResolution());
+        writeString(out, bd.getFactoryBeanName());
+        writeString(out, bd.getFactoryMethodName());
+        writeConstructorArguments(out, bd.getConstructorArgumentValues());
+        writePropertyValues(out, bd.getPropertyValues());
+        writeMethodOverrides(out, bd.getMethodOverrides().getOverrides());
+        writeString(out, bd.getInitMethodName());
+        writeString(out, bd.getDestroyMethodName());
+        out.writeBoolean(bd.isEnforceInitMethod());
+        out.writeBoolean(bd.isEnforceDestroyMethod());
+        out.writeBoolean(bd.isSynthetic());
+        out.writeInt(bd.getRole());
+        writeString(out, bd.getDescription());
+        writeString(out, bd.getResourceDescription());
+        writeAttributes(out, bd);
+        if (root) {
+            RootBeanDefinition rbd = (RootBeanDefinition) bd;
+            if (rbd.getQualifiedElement() != null) {
+                throw new IllegalArgumentException("qualifiedElement 无法保存: " + bd);
+            }
+            writeValue(out, rbd.getDecoratedDefinition());
+            Class<?> targetType = rbd.getTargetType();
+            writeString(out, targetType != null ? targetType.getName() : null);
+            out.writeBoolean((Boolean) ReflectionUtils.getField(FACTORY_METHOD_UNIQUE, rbd));
+        }
+    }
+
+    public static AbstractBeanDefinition read(DataInput in, @Nullable ClassLoader classLoader) throws IOException {
+        boolean root = in.readByte() == ROOT;
+        AbstractBeanDefinition bd = root ? new RootBeanDefinition() : new GenericBeanDefinition();
+        String parentName = readString(in);
+        if (!root) {
+            ((GenericBeanDefinition) bd).setParentName(parentName);
+        }
+        bd.setBeanClassName(readString(in));
+        bd.setScope(readString(in));
+        bd.setAbstract(in.readBoolean());
+        Boolean lazyInit = (Boolean) readValue(in, classLoader);
+        if (lazyInit != null) {
+            bd.setLazyInit(lazyInit);
+        }
+        bd.setAutowireMode(in.readInt());
+        bd.setDependencyCheck(in.readInt());
+        bd.setDependsOn((String[]) readValue(in, classLoader));
+        bd.setAutowireCandidate(in.readBoolean());
+        bd.setPrimary(in.readBoolean());
+        readQualifiers(in, bd, classLoader);
+        bd.setNonPublicAccessAllowed(in.readBoolean());
+        bd.setLenientConstructorResolution(in.readBoolean());
+        bd.setFactoryBeanName(readString(in));
+        bd.setFactoryMethodName(readString(in));
+        readConstructorArguments(in, bd.getConstructorArgumentValues(), classLoader);
+        readPropertyValues(in, bd.getPropertyValues(), classLoader);
+        readMethodOverrides(in, bd);
+        bd.setInitMethodName(readString(in));
+        bd.setDestroyMethodName(readString(in));
+        bd.setEnforceInitMethod(in.readBoolean());
+        bd.setEnforceDestroyMethod(in.readBoolean());
+        bd.setSynthetic(in.readBoolean());
+        bd.setRole(in.readInt());
+        bd.setDescription(readString(in));
+        bd.setResourceDescription(readString(in));
+        readAttributes(in, bd, classLoader);
+        if (root) {
+            RootBeanDefinition rbd = (RootBeanDefinition) bd;
+            rbd.setDecoratedDefinition((BeanDefinitionHolder) readValue(in, classLoader));
+            String targetType = readString(in);
+            if (targetType != null) {
+                rbd.setTargetType(loadClass(targetType, classLoader));
+            }
+            // 字段默认为 false, 只有 true 需要恢复
+            if (in.readBoolean() && rbd.getFactoryMethodName() != null) {
+                rbd.setUniqueFactoryMethodName(rbd.getFactoryMethodName());
+            }
+        }
+        return bd;
+    }
+
+    private static void writeQualifiers(DataOutput out, Collection<AutowireCandidateQualifier> qualifiers) throws IOException {
+        out.writeInt(qualifiers.size());
+        for (AutowireCandidateQualifier qualifier : qualifiers) {
+            writeString(out, qualifier.getTypeName());
+            writeAttributes(out, qualifier);
+        }
+    }
+
+    private static void readQualifiers(DataInput in, AbstractBeanDefinition bd, @Nullable ClassLoader classLoader) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            AutowireCandidateQualifier qualifier = new AutowireCandidateQualifier(readString(in));
+            readAttributes(in, qualifier, classLoader);
+            bd.addQualifier(qualifier);
+        }
+    }
+
+    private static void writeConstructorArguments(DataOutput out, ConstructorArgumentValues arguments) throws IOException {
+        Map<Integer, ConstructorArgumentValues.ValueHolder> indexed = arguments.getIndexedArgumentValues();
+        out.writeInt(indexed.size());
+        for (Map.Entry<Integer, ConstructorArgumentValues.ValueHolder> entry : indexed.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeValueHolder(out, entry.getValue());
+        }
+        out.writeInt(arguments.getGenericArgumentValues().size());
+        for (ConstructorArgumentValues.ValueHolder holder : arguments.getGenericArgumentValues()) {
+            writeValueHolder(out, holder);
+        }
+    }
+
+    private static void writeValueHolder(DataOutput out, ConstructorArgumentValues.ValueHolder holder) throws IOException {
+        writeValue(out, holder.getValue());
+        writeString(out, holder.getType());
+        writeString(out, holder.getName());
+    }
+
+    private static void readConstructorArguments(DataInput in, ConstructorArgumentValues arguments, @Nullable ClassLoader classLoader) throws IOException {
+        int indexed = in.readInt();
+        for (int i = 0; i < indexed; i++) {
+            int index = in.readInt();
+            arguments.addIndexedArgumentValue(index, readValueHolder(in, classLoader));
+        }
+        int generic = in.readInt();
+        for (int i = 0; i < generic; i++) {
+            arguments.addGenericArgumentValue(readValueHolder(in, classLoader));
+        }
+    }
+
+    private static ConstructorArgumentValues.ValueHolder readValueHolder(DataInput in, @Nullable ClassLoader classLoader) throws IOException {
+        Object value = readValue(in, classLoader);
+        return new ConstructorArgumentValues.ValueHolder(value, readString(in), readString(in));
+    }
+
+    private static void writePropertyValues(DataOutput out, MutablePropertyValues values) throws IOException {
+        out.writeInt(values.size());
+        for (PropertyValue pv : values.getPropertyValueList()) {
+            writeString(out, pv.getName());
+            writeValue(out, pv.getValue());
+        }
+    }
+
+    private static void readPropertyValues(DataInput in, MutablePropertyValues values, @Nullable ClassLoader classLoader) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            values.add(name, readValue(in, classLoader));
+        }
+    }
+
+    // @Lookup 是实例化时才加到合并后的定义上的, 原始定义里只会有 XML 的 lookup-method; 是否重载由 prepareMethodOverrides 重新判断
+    private static void writeMethodOverrides(DataOutput out, Collection<MethodOverride> overrides) throws IOException {
+        out.writeInt(overrides.size());
+        for (MethodOverride override : overrides) {
+            if (!(override instanceof LookupOverride)) {
+                throw new IllegalArgumentException("不支持的方法注入: " + override);
+            }
+            writeString(out, override.getMethodName());
+            writeString(out, ((LookupOverride) override).getBeanName());
+        }
+    }
+
+    private static void readMethodOverrides(DataInput in, AbstractBeanDefinition bd) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            bd.getMethodOverrides().addOverride(new LookupOverride(readString(in), readString(in)));
+        }
+    }
+
+    private static void writeAttributes(DataOutput out, org.springframework.core.AttributeAccessor accessor) throws IOException {
+        String[] names = accessor.attributeNames();
+        out.writeInt(names.length);
+        for (String name : names) {
+            writeString(out, name);
+            writeValue(out, accessor.getAttribute(name));
+        }
+    }
+
+    private static void readAttributes(DataInput in, org.springframework.core.AttributeAccessor accessor, @Nullable ClassLoader classLoader) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            accessor.setAttribute(name, readValue(in, classLoader));
+        }
+    }
+
+    // Managed* 集合继承自普通集合, 要先于普通类型判断; 普通 List、Map 等不保存, 免得解码后类型变了
+    private static void writeValue(DataOutput out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Class) {
+            out.writeByte(CLASS);
+            writeString(out, ((Class<?>) value).getName());
+        } else if (value instanceof String[]) {
+            String[] array = (String[]) value;
+            out.writeByte(STRING_ARRAY);
+            out.writeInt(array.length);
+            for (String s : array) {
+                writeString(out, s);
+            }
+        } else if (value instanceof TypedStringValue) {
+            TypedStringValue typed = (TypedStringValue) value;
+            out.writeByte(TYPED_STRING);
+            writeString(out, typed.getValue());
+            writeString(out, typed.getTargetTypeName());
+            out.writeBoolean(typed.isDynamic());
+        } else if (value instanceof RuntimeBeanReference) {
+            RuntimeBeanReference reference = (RuntimeBeanReference) value;
+            if (reference.getBeanType() != null) {
+                throw new IllegalArgumentException("按类型的 bean 引用无法保存: " + reference);
+            }
+            out.writeByte(BEAN_REFERENCE);
+            writeString(out, reference.getBeanName());
+            out.writeBoolean(reference.isToParent());
+        } else if (value instanceof RuntimeBeanNameReference) {
+            out.writeByte(BEAN_NAME_REFERENCE);
+            writeString(out, ((RuntimeBeanNameReference) value).getBeanName());
+        } else if (value instanceof BeanDefinitionHolder) {
+            BeanDefinitionHolder holder = (BeanDefinitionHolder) value;
+            out.writeByte(BEAN_DEFINITION_HOLDER);
+            writeString(out, holder.getBeanName());
+            writeValue(out, holder.getAliases());
+            write(out, holder.getBeanDefinition());
+        } else if (value instanceof BeanDefinition) {
+            out.writeByte(BEAN_DEFINITION);
+            write(out, (BeanDefinition) value);
+        } else if (value instanceof ManagedArray) {
+            ManagedArray array = (ManagedArray) value;
+            out.writeByte(MANAGED_ARRAY);
+            writeString(out, array.getElementTypeName());
+            out.writeBoolean(array.isMergeEnabled());
+            writeElements(out, array);
+        } else if (value instanceof ManagedList) {
+            ManagedList<?> list = (ManagedList<?>) value;
+            out.writeByte(MANAGED_LIST);
+            writeString(out, list.getElementTypeName());
+            out.writeBoolean(list.isMergeEnabled());
+            writeElements(out, list);
+        } else if (value instanceof ManagedSet) {
+            ManagedSet<?> set = (ManagedSet<?>) value;
+            out.writeByte(MANAGED_SET);
+            writeString(out, set.getElementTypeName());
+            out.writeBoolean(set.isMergeEnabled());
+            writeElements(out, set);
+        } else if (value instanceof ManagedMap) {
+            ManagedMap<?, ?> map = (ManagedMap<?, ?>) value;
+            out.writeByte(MANAGED_MAP);
+            writeString(out, map.getKeyTypeName());
+            writeString(out, map.getValueTypeName());
+            out.writeBoolean(map.isMergeEnabled());
+            writeEntries(out, map);
+        } else if (value instanceof ManagedProperties) {
+            ManagedProperties properties = (ManagedProperties) value;
+            out.writeByte(MANAGED_PROPERTIES);
+            out.writeBoolean(properties.isMergeEnabled());
+            writeEntries(out, properties);
+        } else {
+            throw new IllegalArgumentException("不支持的值类型: " + value.getClass().getName());
+        }
+    }
+
+    private static void writeElements(DataOutput out, Collection<?> elements) throws IOException {
+        out.writeInt(elements.size());
+        for (Object element : elements) {
+            writeValue(out, element);
+        }
+    }
+
+    private static void writeEntries(DataOutput out, Map<?, ?> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    @Nullable
+    private static Object readValue(DataInput in, @Nullable ClassLoader classLoader) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case BOOLEAN:
+                return in.readBoolean();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case CLASS:
+                return loadClass(readString(in), classLoader);
+            case STRING_ARRAY: {
+                String[] array = new String[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readString(in);
+                }
+                return array;
+            }
+            case TYPED_STRING: {
+                TypedStringValue typed = new TypedStringValue(readString(in));
+                typed.setTargetTypeName(readString(in));
+                if (in.readBoolean()) {
+                    typed.setDynamic();
+                }
+                return typed;
+            }
+            case BEAN_REFERENCE: {
+                String beanName = readString(in);
+                return new RuntimeBeanReference(beanName, in.readBoolean());
+            }
+            case BEAN_NAME_REFERENCE:
+                return new RuntimeBeanNameReference(readString(in));
+            case BEAN_DEFINITION_HOLDER: {
+                String beanName = readString(in);
+                String[] aliases = (String[]) readValue(in, classLoader);
+                return new BeanDefinitionHolder(read(in, classLoader), beanName, aliases);
+            }
+            case BEAN_DEFINITION:
+                return read(in, classLoader);
+            case MANAGED_ARRAY: {
+                String elementTypeName = readString(in);
+                boolean merge = in.readBoolean();
+                int size = in.readInt();
+                ManagedArray array = new ManagedArray(elementTypeName, size);
+                array.setMergeEnabled(merge);
+                for (int i = 0; i < size; i++) {
+                    array.add(readValue(in, classLoader));
+                }
+                return array;
+            }
+            case MANAGED_LIST: {
+                ManagedList<Object> list = new ManagedList<>();
+                list.setElementTypeName(readString(in));
+                list.setMergeEnabled(in.readBoolean());
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, classLoader));
+                }
+                return list;
+            }
+            case MANAGED_SET: {
+                ManagedSet<Object> set = new ManagedSet<>();
+                set.setElementTypeName(readString(in));
+                set.setMergeEnabled(in.readBoolean());
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    set.add(readValue(in, classLoader));
+                }
+                return set;
+            }
+            case MANAGED_MAP: {
+                ManagedMap<Object, Object> map = new ManagedMap<>();
+                map.setKeyTypeName(readString(in));
+                map.setValueTypeName(readString(in));
+                map.setMergeEnabled(in.readBoolean());
+                readEntries(in, map, classLoader);
+                return map;
+            }
+            case MANAGED_PROPERTIES: {
+                ManagedProperties properties = new ManagedProperties();
+                properties.setMergeEnabled(in.readBoolean());
+                readEntries(in, properties, classLoader);
+                return properties;
+            }
+            default:
+                throw new IOException("无法识别的值类型: " + type);
+        }
+    }
+
+    private static void readEntries(DataInput in, Map<Object, Object> map, @Nullable ClassLoader classLoader) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Object key = readValue(in, classLoader);
+            map.put(key, readValue(in, classLoader));
+        }
+    }
+
+    private static Field factoryMethodUniqueField() {
+        Field field = ReflectionUtils.findField(RootBeanDefinition.class, "isFactoryMethodUnique", boolean.class);
+        if (field == null) {
+            throw new IllegalStateException("RootBeanDefinition 中没有 isFactoryMethodUnique 字段");
+        }
+        ReflectionUtils.makeAccessible(field);
+        return field;
+    }
+
+    private static Class<?> loadClass(String name, @Nullable ClassLoader classLoader) throws IOException {
+        try {
+            return ClassUtils.forName(name, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new IOException("无法加载类: " + name, e);
+        }
+    }
+
+    // writeUTF 限制 64K, 描述等字符串可能更长
+    public static void writeString(DataOutput out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
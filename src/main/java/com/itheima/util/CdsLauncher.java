@@ -0,0 +1,253 @@
+package com.itheima.util;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * 用 AppCDS(应用类数据共享)缩短启动时间的启动器
+ * <p>
+ * 训练: 以 {@value #EXIT_ON_READY_PROPERTY}=true 启动一次主类, 容器就绪(ApplicationReadyEvent)后由 {@link ExitOnReady} 关闭并退出,
+ * 期间用 -XX:DumpLoadedClassList 记下加载过的类; 再用 -Xshare:dump 按类清单生成归档. 之后带上 -XX:SharedArchiveFile 启动,
+ * JDK 和应用的类直接从归档映射, 省去解析、校验. 全部用的是 JDK 自带的参数, 不需要其它工具.
+ * <p>
+ * 生成归档时类路径上不能有非空目录, 所以先把类路径中的目录(如 target/classes)打成 jar, 训练、生成和之后的启动都用这个类路径;
+ * 目录内容没变时不重新打包. 归档与类路径绑定, 重新编译或依赖变化后需要重新训练
+ * <pre>
+ * java -cp target/classes:依赖 com.itheima.util.CdsLauncher train com.itheima.a45.A45 [参数...]
+ * java -cp target/classes:依赖 com.itheima.util.CdsLauncher compare com.itheima.a45.A45 [轮数] [参数...]
+ * </pre>
+ * 工作目录默认是 target/cds, 可以用 -Dcds.dir 指定
+ */
+public class CdsLauncher {
+
+    /**
+     * 为 true 时应用在就绪后立即退出, 训练和比较启动时间时使用
+     */
+    public static final String EXIT_ON_READY_PROPERTY = "cds.exit-on-ready";
+
+    // 子进程就绪时输出的标记, 后面是 JVM 启动以来的毫秒数
+    private static final String READY_MARKER = "cds.ready.uptime=";
+
+    private final Path workDirectory;
+
+    private final String mainClass;
+
+    private final List<String> args;
+
+    CdsLauncher(Path workDirectory, String mainClass, List<String> args) {
+        this.workDirectory = workDirectory;
+        this.mainClass = mainClass;
+        this.args = args;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !("train".equals(args[0]) || "compare".equals(args[0]))) {
+            System.err.println("用法: CdsLauncher train <主类> [参数...] | compare <主类> [轮数] [参数...]");
+            System.exit(2);
+        }
+        Path workDirectory = Paths.get(System.getProperty("cds.dir", "target/cds"));
+        List<String> rest = new ArrayList<>(Arrays.asList(args).subList(2, args.length));
+        if ("train".equals(args[0])) {
+            CdsLauncher launcher = new CdsLauncher(workDirectory, args[1], rest);
+            launcher.train();
+            System.out.println("之后的启动: " + String.join(" ", launcher.command(true)));
+        } else {
+            int rounds = !rest.isEmpty() && rest.get(0).matches("\\d+") ? Integer.parseInt(rest.remove(0)) : 5;
+            CdsLauncher launcher = new CdsLauncher(workDirectory, args[1], rest);
+            if (!Files.exists(launcher.archive())) {
+                launcher.train();
+            }
+            launcher.compare(rounds);
+        }
+    }
+
+    /**
+     * 训练运行并生成归档
+     */
+    public void train() throws IOException, InterruptedException {
+        Files.createDirectories(workDirectory);
+        String classpath = classpath();
+        Path classList = workDirectory.resolve(name() + ".classlist");
+        List<String> training = new ArrayList<>();
+        training.add(java());
+        training.add("-Xshare:off");
+        training.add("-XX:DumpLoadedClassList=" + classList);
+        training.add("-D" + EXIT_ON_READY_PROPERTY + "=true");
+        training.add("-cp");
+        training.add(classpath);
+        training.add(mainClass);
+        training.addAll(args);
+        run(training, workDirectory.resolve(name() + "-training.log"));
+        System.out.printf("训练运行结束, 类清单 %s 共 %d 个类%n", classList, Files.readAllLines(classList).stream()
+                .filter(line -> !line.startsWith("#") && !line.startsWith("@")).count());
+
+        List<String> dump = List.of(java(), "-Xshare:dump", "-XX:SharedClassListFile=" + classList,
+                "-XX:SharedArchiveFile=" + archive(), "-cp", classpath);
+        run(dump, workDirectory.resolve(name() + "-dump.log"));
+        System.out.printf("归档 %s, %d KB%n", archive(), Files.size(archive()) / 1024);
+    }
+
+    /**
+     * 不带归档(JDK 默认的 CDS 归档)与带归档交替启动, 比较到就绪的时间
+     */
+    public void compare(int rounds) throws IOException, InterruptedException {
+        for (int round = 1; round <= rounds; round++) {
+            Timing without = time(command(false));
+            Timing with = time(command(true));
+            System.out.printf("第%d轮 不带归档: 就绪 %d ms, 进程 %d ms; 带归档: 就绪 %d ms, 进程 %d ms%n",
+                    round, without.ready, without.total, with.ready, with.total);
+        }
+    }
+
+    List<String> command(boolean withArchive) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(java());
+        if (withArchive) {
+            command.add("-XX:SharedArchiveFile=" + archive());
+        }
+        command.add("-D" + EXIT_ON_READY_PROPERTY + "=true");
+        command.add("-cp");
+        command.add(classpath());
+        command.add(mainClass);
+        command.addAll(args);
+        return command;
+    }
+
+    private Timing time(List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long ready = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int index = line.indexOf(READY_MARKER);
+                if (index != -1) {
+                    ready = Long.parseLong(line.substring(index + READY_MARKER.length()).trim());
+                }
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0 || ready < 0) {
+            throw new IllegalStateException("启动失败或没有就绪(退出码 " + exit + "): " + String.join(" ", command));
+        }
+        return new Timing(ready, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void run(List<String> command, Path log) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        int exit = process.waitFor();
+        if (exit != 0) {
+            throw new IllegalStateException("执行失败(退出码 " + exit + "), 输出见 " + log + ": " + String.join(" ", command));
+        }
+    }
+
+    private Path archive() {
+        return workDirectory.resolve(name() + ".jsa");
+    }
+
+    private String name() {
+        return mainClass.substring(mainClass.lastIndexOf('.') + 1);
+    }
+
+    private static String java() {
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    // 当前类路径, 其中的目录换成打包好的 jar
+    private String classpath() throws IOException {
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(entry);
+            entries.add(Files.isDirectory(path) ? jar(path).toString() : entry);
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    // 文件名带上目录路径的指纹, 内容指纹记在 manifest 里, 没变化时直接复用
+    private Path jar(Path directory) throws IOException {
+        Path absolute = directory.toAbsolutePath().normalize();
+        String fingerprint = new Fingerprint().addClasspath(absolute.toString()).hex();
+        Path jar = workDirectory.resolve(absolute.getFileName() + "-" + new Fingerprint().add(absolute.toString()).hex().substring(0, 8) + ".jar");
+        if (Files.exists(jar)) {
+            try (JarFile existing = new JarFile(jar.toFile())) {
+                Manifest manifest = existing.getManifest();
+                if (manifest != null && fingerprint.equals(manifest.getMainAttributes().getValue("Cds-Fingerprint"))) {
+                    return jar;
+                }
+            }
+        }
+        Files.createDirectories(workDirectory);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Cds-Fingerprint", fingerprint);
+        Path tmp = Files.createTempFile(workDirectory, jar.getFileName().toString(), ".tmp");
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(absolute)) {
+            files = stream.filter(path -> !path.equals(absolute)).sorted().toList();
+        }
+        try (OutputStream out = Files.newOutputStream(tmp); JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+            for (Path file : files) {
+                String name = absolute.relativize(file).toString().replace(File.separatorChar, '/');
+                if (name.equals("META-INF/MANIFEST.MF")) {
+                    continue;
+                }
+                // 目录也要有条目, classpath*: 扫描按目录条目查找
+                jarOut.putNextEntry(new JarEntry(Files.isDirectory(file) ? name + "/" : name));
+                if (!Files.isDirectory(file)) {
+                    Files.copy(file, jarOut);
+                }
+                jarOut.closeEntry();
+            }
+        }
+        Files.move(tmp, jar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return jar;
+    }
+
+    private static class Timing {
+        final long ready;
+        final long total;
+
+        Timing(long ready, long total) {
+            this.ready = ready;
+            this.total = total;
+        }
+    }
+
+    /**
+     * 设置了 {@value #EXIT_ON_READY_PROPERTY}=true 时, 应用就绪后输出 JVM 启动以来的时间, 关闭容器并退出; 在 spring.factories 中注册
+     */
+    public static class ExitOnReady implements ApplicationListener<ApplicationReadyEvent> {
+        @Override
+        public void onApplicationEvent(ApplicationReadyEvent event) {
+            if (Boolean.getBoolean(EXIT_ON_READY_PROPERTY)) {
+                System.out.println(READY_MARKER + ManagementFactory.getRuntimeMXBean().getUptime());
+                System.exit(SpringApplication.exit(event.getApplicationContext()));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.itheima.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 缓存文件的指纹: 把类路径、配置等影响结果的输入摘要成一个字符串, 任何一项变化指纹都会变
+ * <p>
+ * 类路径上的 jar 只看路径、大小、修改时间, 不读内容; 目录(如 target/classes)逐个文件看相对路径、大小、修改时间
+ */
+public class Fingerprint {
+
+    private final MessageDigest digest;
+
+    public Fingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Fingerprint add(String value) {
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        digest.update(bytes);
+        digest.update((byte) 0); // 分隔, 免得 "ab"+"c" 与 "a"+"bc" 相同
+        return this;
+    }
+
+    /**
+     * 文件内容等二进制输入, 先加长度再加内容
+     */
+    public Fingerprint add(byte[] bytes) {
+        add(String.valueOf(bytes.length));
+        digest.update(bytes);
+        return this;
+    }
+
+    /**
+     * 当前 JVM 的类路径(java.class.path)
+     */
+    public Fingerprint addClasspath() {
+        return addClasspath(System.getProperty("java.class.path"));
+    }
+
+    public Fingerprint addClasspath(String classpath) {
+        for (String entry : classpath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                addFile(Paths.get(entry));
+            }
+        }
+        return this;
+    }
+
+    private void addFile(Path path) {
+        add(path.toAbsolutePath().toString());
+        try {
+            if (Files.isDirectory(path)) {
+                List<Path> files = new ArrayList<>();
+                try (Stream<Path> stream = Files.walk(path)) {
+                    stream.filter(Files::isRegularFile).forEach(files::add);
+                }
+                files.sort(null); // walk 的顺序与文件系统有关
+                for (Path file : files) {
+                    add(path.relativize(file).toString());
+                    addAttributes(file);
+                }
+            } else if (Files.exists(path)) {
+                addAttributes(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void addAttributes(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        add(attributes.size() + "/" + attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * @return 十六进制的摘要, 调用后不能再 add
+     */
+    public String hex() {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
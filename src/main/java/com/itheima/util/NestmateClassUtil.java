@@ -0,0 +1,100 @@
+package com.itheima.util;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+
+/**
+ * 生成与目标类同属一个 nest 的隐藏类, 生成的代码可以直接访问目标类的 private 成员
+ * <p>
+ * 只有目标类与本类在同一模块(同一类加载器的未命名模块)时, privateLookupIn 才有定义隐藏类所需的完整权限,
+ * 其它情况 define 会抛异常, 调用方应退回反射
+ */
+public class NestmateClassUtil {
+
+    // 各分支的局部变量类型相同, 不需要加载类来合并栈帧
+    public static ClassWriter newClassWriter() {
+        return new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+    }
+
+    // 生成 public 无参构造
+    public static void visitDefaultConstructor(ClassWriter cw) {
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+    }
+
+    // 定义隐藏类并用无参构造创建一个实例
+    @SuppressWarnings("unchecked")
+    public static <T> T defineAndInstantiate(Class<?> host, byte[] bytes) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(host, MethodHandles.lookup());
+        Class<?> hidden = lookup.defineHiddenClass(bytes, true, MethodHandles.Lookup.ClassOption.NESTMATE).lookupClass();
+        return (T) lookup.findConstructor(hidden, MethodType.methodType(void.class)).invoke();
+    }
+
+    // 生成的类与 from 同包, 用到的类型必须能被它直接访问(checkcast 等)
+    public static boolean isAccessible(Class<?> type, Class<?> from) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        for (Class<?> c = type; c != null; c = c.getDeclaringClass()) {
+            int modifiers = c.getModifiers();
+            if (Modifier.isPrivate(modifiers)) {
+                return false;
+            }
+            if (!Modifier.isPublic(modifiers)
+                && !(ClassUtils.getPackageName(c).equals(ClassUtils.getPackageName(from)) && c.getClassLoader() == from.getClassLoader())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isAccessible(Class<?>[] types, Class<?> from) {
+        for (Class<?> type : types) {
+            if (!isAccessible(type, from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 栈顶 Object -> 目标类型, 基本类型拆箱
+    public static void unboxOrCast(MethodVisitor mv, Class<?> type) {
+        if (type.isPrimitive()) {
+            String wrapper = Type.getInternalName(ClassUtils.resolvePrimitiveIfNecessary(type));
+            mv.visitTypeInsn(Opcodes.CHECKCAST, wrapper);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, wrapper, type.getName() + "Value", "()" + Type.getDescriptor(type), false);
+        } else if (type != Object.class) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+        }
+    }
+
+    public static void push(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.springframework.beans.factory.support;
+
+/**
+ * 创建表示 null 的 NullBean
+ * <p>
+ * NullBean 包级私有, FactoryBean 的产品为 null 时, 自己缓存产品的 BeanFactory 子类要用它代替 null, 所以放在这个包里
+ */
+public abstract class NullBeans {
+
+    private NullBeans() {
+    }
+
+    public static Object create() {
+        return new NullBean();
+    }
+}
@@ -0,0 +1,290 @@
+package org.springframework.boot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.convert.support.ConfigurableConversionService;
+import org.springframework.core.env.ConfigurablePropertyResolver;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.RawPropertyAccessor;
+import org.springframework.lang.Nullable;
+import org.springframework.util.PropertyPlaceholderHelper;
+import org.springframework.util.SystemPropertyUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 把属性查找结果拍平到一个 Map 的 PropertyResolver
+ * <p>
+ * attach 之后每次 getProperty 都要把 key 转成 ConfigurationPropertyName, 再按优先级逐个属性源做宽松名称的映射和查找.
+ * 这里包装原来的解析器, 同一个 key 只查一次:
+ * <ul>
+ *     <li>结果(未做类型转换)按 key 存进快照, 没找到也记下来; 宽松写法各自作为 key 存一份,
+ *     优先级、宽松名称的规则都由原来的解析器决定, 结果与不缓存时相同</li>
+ *     <li>含嵌套占位符的值存原始写法, 每次读取时再解析, 其中的 key 同样走快照;
+ *     这样 app.id=${random.uuid} 也不会被冻结</li>
+ *     <li>属性源增删、替换(按对象身份比较)或者修改了占位符、转换服务等设置时, 换一个新快照</li>
+ *     <li>属性源内部的值变了(如 System.setProperty)察觉不到, 需要调用 {@link #invalidate()}</li>
+ *     <li>random.* 每次取值都不同, 不缓存</li>
+ *     <li>原来的解析器要能取到原始值({@link RawPropertyAccessor}), 否则不缓存</li>
+ * </ul>
+ */
+public class FlattenedPropertyResolver implements ConfigurablePropertyResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(FlattenedPropertyResolver.class);
+
+    private static final Object NOT_FOUND = new Object();
+
+    private static final String RANDOM_PREFIX = "random.";
+
+    private final MutablePropertySources propertySources;
+
+    private final ConfigurablePropertyResolver delegate;
+
+    private final boolean cacheable;
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList());
+
+    // 与原来的解析器保持相同的设置, 用来解析快照中带占位符的值
+    private String placeholderPrefix = SystemPropertyUtils.PLACEHOLDER_PREFIX;
+
+    private String placeholderSuffix = SystemPropertyUtils.PLACEHOLDER_SUFFIX;
+
+    @Nullable
+    private String valueSeparator = SystemPropertyUtils.VALUE_SEPARATOR;
+
+    private volatile boolean ignoreUnresolvableNestedPlaceholders;
+
+    private volatile PropertyPlaceholderHelper strictHelper = createPlaceholderHelper(false);
+
+    private volatile PropertyPlaceholderHelper nonStrictHelper = createPlaceholderHelper(true);
+
+    public FlattenedPropertyResolver(MutablePropertySources propertySources, ConfigurablePropertyResolver delegate) {
+        this.propertySources = propertySources;
+        this.delegate = delegate;
+        this.cacheable = RawPropertyAccessor.supports(delegate);
+        if (!cacheable) {
+            log.warn("{} 取不到原始值, 不缓存", delegate.getClass().getName());
+        }
+    }
+
+    /**
+     * 丢弃快照, 下次查找时重新从属性源读取
+     */
+    public void invalidate() {
+        snapshot = new Snapshot(Collections.emptyList());
+    }
+
+    /**
+     * 当前快照中的 key 数(包括没找到的)
+     */
+    public int getSnapshotSize() {
+        return snapshot.values.size();
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        int i = 0;
+        for (PropertySource<?> source : propertySources) {
+            if (i >= current.sources.size() || current.sources.get(i) != source) {
+                return rebuild();
+            }
+            i++;
+        }
+        return i == current.sources.size() ? current : rebuild();
+    }
+
+    private Snapshot rebuild() {
+        List<PropertySource<?>> sources = new ArrayList<>();
+        propertySources.forEach(sources::add);
+        log.debug("属性源变化, 重建快照: {}", sources);
+        Snapshot rebuilt = new Snapshot(sources);
+        snapshot = rebuilt;
+        return rebuilt;
+    }
+
+    @Nullable
+    private Object lookup(String key) {
+        if (!cacheable || key.startsWith(RANDOM_PREFIX)) {
+            return delegate.getProperty(key, Object.class);
+        }
+        Object value = cached(key);
+        if (value instanceof Nested) {
+            String raw = ((Nested) value).raw;
+            return (ignoreUnresolvableNestedPlaceholders ? nonStrictHelper : strictHelper).replacePlaceholders(raw, this::raw);
+        }
+        return value;
+    }
+
+    // 快照中的值, 带占位符的是 Nested
+    @Nullable
+    private Object cached(String key) {
+        // 先取快照再查找, 并发重建时查到的值只会落在旧快照里
+        Snapshot current = currentSnapshot();
+        Object value = current.values.get(key);
+        if (value == null) {
+            value = delegate.getProperty(key, Object.class);
+            if (value instanceof String) {
+                // 只有字符串会解析占位符, 解析前后不同说明有占位符
+                String raw = RawPropertyAccessor.getRawProperty(delegate, key);
+                if (raw != null && !raw.equals(value)) {
+                    value = new Nested(raw);
+                }
+            }
+            current.values.put(key, value != null ? value : NOT_FOUND);
+        }
+        return value != NOT_FOUND ? value : null;
+    }
+
+    // 占位符中的 key, 与 AbstractPropertyResolver 一样取原始值, 由 PropertyPlaceholderHelper 递归解析并检查循环引用
+    @Nullable
+    private String raw(String key) {
+        if (key.startsWith(RANDOM_PREFIX)) {
+            return RawPropertyAccessor.getRawProperty(delegate, key);
+        }
+        Object value = cached(key);
+        if (value instanceof Nested) {
+            return ((Nested) value).raw;
+        }
+        return value == null || value instanceof String ? (String) value
+                : delegate.getConversionService().convert(value, String.class);
+    }
+
+    private PropertyPlaceholderHelper createPlaceholderHelper(boolean ignoreUnresolvablePlaceholders) {
+        return new PropertyPlaceholderHelper(placeholderPrefix, placeholderSuffix, valueSeparator, ignoreUnresolvablePlaceholders);
+    }
+
+    private void placeholderSettingsChanged() {
+        strictHelper = createPlaceholderHelper(false);
+        nonStrictHelper = createPlaceholderHelper(true);
+        invalidate();
+    }
+
+    @Override
+    public boolean containsProperty(String key) {
+        return lookup(key) != null;
+    }
+
+    @Override
+    @Nullable
+    public String getProperty(String key) {
+        return getProperty(key, String.class);
+    }
+
+    @Override
+    public String getProperty(String key, String defaultValue) {
+        String value = getProperty(key);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    @Nullable
+    public <T> T getProperty(String key, Class<T> targetType) {
+        Object value = lookup(key);
+        if (value == null || targetType.isInstance(value)) {
+            return targetType.cast(value);
+        }
+        return delegate.getConversionService().convert(value, targetType);
+    }
+
+    @Override
+    public <T> T getProperty(String key, Class<T> targetType, T defaultValue) {
+        T value = getProperty(key, targetType);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    public String getRequiredProperty(String key) throws IllegalStateException {
+        return getRequiredProperty(key, String.class);
+    }
+
+    @Override
+    public <T> T getRequiredProperty(String key, Class<T> targetType) throws IllegalStateException {
+        T value = getProperty(key, targetType);
+        if (value == null) {
+            throw new IllegalStateException("Required key '" + key + "' not found");
+        }
+        return value;
+    }
+
+    @Override
+    public String resolvePlaceholders(String text) {
+        return delegate.resolvePlaceholders(text);
+    }
+
+    @Override
+    public String resolveRequiredPlaceholders(String text) throws IllegalArgumentException {
+        return delegate.resolveRequiredPlaceholders(text);
+    }
+
+    @Override
+    public ConfigurableConversionService getConversionService() {
+        return delegate.getConversionService();
+    }
+
+    @Override
+    public void setConversionService(ConfigurableConversionService conversionService) {
+        delegate.setConversionService(conversionService);
+        invalidate();
+    }
+
+    @Override
+    public void setPlaceholderPrefix(String placeholderPrefix) {
+        delegate.setPlaceholderPrefix(placeholderPrefix);
+        this.placeholderPrefix = placeholderPrefix;
+        placeholderSettingsChanged();
+    }
+
+    @Override
+    public void setPlaceholderSuffix(String placeholderSuffix) {
+        delegate.setPlaceholderSuffix(placeholderSuffix);
+        this.placeholderSuffix = placeholderSuffix;
+        placeholderSettingsChanged();
+    }
+
+    @Override
+    public void setValueSeparator(@Nullable String valueSeparator) {
+        delegate.setValueSeparator(valueSeparator);
+        this.valueSeparator = valueSeparator;
+        placeholderSettingsChanged();
+    }
+
+    @Override
+    public void setIgnoreUnresolvableNestedPlaceholders(boolean ignoreUnresolvableNestedPlaceholders) {
+        delegate.setIgnoreUnresolvableNestedPlaceholders(ignoreUnresolvableNestedPlaceholders);
+        this.ignoreUnresolvableNestedPlaceholders = ignoreUnresolvableNestedPlaceholders;
+        invalidate();
+    }
+
+    @Override
+    public void setRequiredProperties(String... requiredProperties) {
+        delegate.setRequiredProperties(requiredProperties);
+    }
+
+    @Override
+    public void validateRequiredProperties() {
+        delegate.validateRequiredProperties();
+    }
+
+    // 含占位符的原始值
+    private static class Nested {
+        final String raw;
+
+        Nested(String raw) {
+            this.raw = raw;
+        }
+    }
+
+    private static class Snapshot {
+        final List<PropertySource<?>> sources;
+        final Map<String, Object> values = new ConcurrentHashMap<>();
+
+        Snapshot(List<PropertySource<?>> sources) {
+            this.sources = sources;
+        }
+    }
+}
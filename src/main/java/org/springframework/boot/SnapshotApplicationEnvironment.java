@@ -0,0 +1,32 @@
+package org.springframework.boot;
+
+import org.springframework.core.env.ConfigurablePropertyResolver;
+import org.springframework.core.env.MutablePropertySources;
+
+/**
+ * 属性查找走 {@link FlattenedPropertyResolver} 快照的 ApplicationEnvironment
+ * <p>
+ * ApplicationEnvironment 包内可见, 所以放在这个包里; 交给 SpringApplication 时用 setEnvironment
+ */
+public class SnapshotApplicationEnvironment extends ApplicationEnvironment {
+
+    // 父类构造时就调用 createPropertyResolver 给它赋值, 所以不能有初始值, 否则会被覆盖
+    private FlattenedPropertyResolver resolver;
+
+    @Override
+    protected ConfigurablePropertyResolver createPropertyResolver(MutablePropertySources propertySources) {
+        resolver = new FlattenedPropertyResolver(propertySources, super.createPropertyResolver(propertySources));
+        return resolver;
+    }
+
+    /**
+     * 属性源内部的值变化后调用, 丢弃快照
+     */
+    public void invalidate() {
+        resolver.invalidate();
+    }
+
+    public FlattenedPropertyResolver getFlattenedPropertyResolver() {
+        return resolver;
+    }
+}
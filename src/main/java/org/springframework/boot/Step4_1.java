@@ -0,0 +1,89 @@
+package org.springframework.boot;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.RandomValuePropertySource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    属性查找结果拍平成快照: 同一个 key 只走一遍属性源链
+ */
+public class Step4_1 {
+
+    private static final String[] KEYS = {"user.first-name", "user.middle-name", "user.last-name", "server.port", "java.version"};
+
+    public static void main(String[] args) throws IOException {
+        // 找到属性时会打 debug 日志, 不关掉的话比的是日志
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.springframework")).setLevel(Level.INFO);
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 结果与原来相同");
+        StandardEnvironment plain = environment(new ApplicationEnvironment(), args);
+        SnapshotApplicationEnvironment snapshot = (SnapshotApplicationEnvironment) environment(new SnapshotApplicationEnvironment(), args);
+        for (String key : KEYS) {
+            System.out.printf("%s: %s / %s%n", key, plain.getProperty(key), snapshot.getProperty(key));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 增加属性源时重建快照, 修改属性源内部的值需要 invalidate");
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("user.first-name", "Jack");
+        snapshot.getPropertySources().addFirst(new MapPropertySource("overrides", overrides));
+        System.out.println("addFirst 之后: " + snapshot.getProperty("user.first-name"));
+        overrides.put("user.first-name", "Rose");
+        System.out.println("修改 Map 之后: " + snapshot.getProperty("user.first-name"));
+        snapshot.invalidate();
+        System.out.println("invalidate 之后: " + snapshot.getProperty("user.first-name"));
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 值中嵌套的 random 每次都重新取");
+        RandomValuePropertySource.addToEnvironment(snapshot);
+        overrides.put("app.id", "${random.uuid}");
+        overrides.put("app.name", "${user.first-name}-${app.id}");
+        snapshot.invalidate();
+        for (int i = 0; i < 2; i++) {
+            System.out.printf("app.id: %s, app.name: %s%n", snapshot.getProperty("app.id"), snapshot.getProperty("app.name"));
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 4. 每秒 getProperty 次数");
+        snapshot = (SnapshotApplicationEnvironment) environment(new SnapshotApplicationEnvironment(), args);
+        for (int round = 1; round <= 3; round++) {
+            System.out.printf("第%d轮 逐个属性源 %,d 次; 快照 %,d 次%n", round, throughput(plain), throughput(snapshot));
+        }
+        System.out.println("快照中的 key: " + snapshot.getFlattenedPropertyResolver().getSnapshotSize());
+
+        /*
+            学到了什么
+                a. attach 之后的 getProperty 要做名称转换和宽松映射, 再按优先级逐个属性源查找
+                b. 属性源和它们的内容在启动后很少变化, 查找结果可以按 key 缓存, 没找到也缓存
+                c. 缓存的是原解析器的结果, 优先级和宽松名称的规则不用重新实现
+                d. 属性源列表的变化按对象身份比较就能察觉, 属性源内部的变化察觉不到, 要显式 invalidate
+                e. 带占位符的值缓存原始写法、读取时再解析, 否则 ${random.uuid} 这样的值会被冻结成同一个
+         */
+    }
+
+    private static StandardEnvironment environment(StandardEnvironment env, String[] args) throws IOException {
+        env.getPropertySources().addLast(new ResourcePropertySource("step4", new ClassPathResource("step4.properties")));
+        env.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        ConfigurationPropertySources.attach(env);
+        return env;
+    }
+
+    private static long throughput(StandardEnvironment env) {
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + 500_000_000L;
+        while (System.nanoTime() < end) {
+            for (String key : KEYS) {
+                env.getProperty(key);
+            }
+            count += KEYS.length;
+        }
+        return count * 1_000_000_000L / (System.nanoTime() - start);
+    }
+}
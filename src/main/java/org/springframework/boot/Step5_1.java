@@ -0,0 +1,89 @@
+package org.springframework.boot;
+
+import com.itheima.a39.ProbeCachingResourceLoader;
+import com.itheima.a39.TimedEnvironmentPostProcessorsFactory;
+import org.springframework.boot.context.event.EventPublishingRunListener;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/*
+    记住不存在的配置文件位置, 并统计每个 EnvironmentPostProcessor 的耗时
+ */
+public class Step5_1 {
+
+    private static final String[] PROFILES = new String[20];
+
+    static {
+        for (int i = 0; i < PROFILES.length; i++) {
+            PROFILES[i] = "p" + (i + 1);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        // LoggingApplicationListener 会按 application.properties 重设日志级别, 用系统属性覆盖
+        System.setProperty("logging.level.root", "warn");
+        System.setProperty("logging.level.com.itheima", "warn");
+        Path configDir = Files.createTempDirectory("step5-config");
+        Path cacheFile = Files.createTempDirectory("step5-cache").resolve("config-probes.properties");
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. 20 个 profile, 第一次启动, 各个 EnvironmentPostProcessor 的耗时");
+        Result first = prepare(true, configDir, cacheFile);
+        first.factory.getReport().forEach(System.out::println);
+        System.out.printf("探测 %d 个位置, 按缓存跳过 %d 个%n", first.loader.getProbeCount(), first.loader.getSkippedCount());
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. ConfigDataEnvironmentPostProcessor 的耗时, 原来的 ResourceLoader 与带缓存的交替运行");
+        for (int round = 1; round <= 8; round++) {
+            Result plain = prepare(false, configDir, cacheFile);
+            Result cached = prepare(true, configDir, cacheFile);
+            System.out.printf("第%d轮 原来 %.1f ms; 带缓存 %.1f ms(探测 %d, 跳过 %d)%n", round, configDataMillis(plain), configDataMillis(cached),
+                    cached.loader.getProbeCount(), cached.loader.getSkippedCount());
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 新建 application-p3.properties, 目录的修改时间变了, 重新探测");
+        Files.writeString(configDir.resolve("application-p3.properties"), "step5.message=from p3");
+        Result changed = prepare(true, configDir, cacheFile);
+        System.out.printf("探测 %d, 跳过 %d; step5.message=%s%n", changed.loader.getProbeCount(), changed.loader.getSkippedCount(),
+                changed.environment.getProperty("step5.message"));
+
+        /*
+            学到了什么
+                a. 配置文件的候选位置是 目录 × 文件名 × profile × 扩展名, 绝大多数不存在, 同一位置一次启动还会探测多次
+                b. ConfigDataEnvironmentPostProcessor 用的是 SpringApplication 的 ResourceLoader, 可以换成带缓存的
+                c. 不存在的结论要有校验: 新建文件会改变所在目录(或最近的上级目录)的修改时间
+                d. EnvironmentPostProcessorsFactory 可以包装每个后处理器, 统计耗时
+         */
+    }
+
+    private static Result prepare(boolean cached, Path configDir, Path cacheFile) {
+        SpringApplication app = new SpringApplication();
+        Result result = new Result();
+        result.factory = TimedEnvironmentPostProcessorsFactory.install(app);
+        if (cached) {
+            result.loader = ProbeCachingResourceLoader.install(app, cacheFile);
+        }
+        EventPublishingRunListener publisher = new EventPublishingRunListener(app, new String[0]);
+        ApplicationEnvironment env = new ApplicationEnvironment();
+        env.setActiveProfiles(PROFILES);
+        env.getPropertySources().addFirst(new MapPropertySource("step5",
+                Map.of("spring.config.additional-location", "optional:file:" + configDir + "/")));
+        publisher.environmentPrepared(new DefaultBootstrapContext(), env);
+        result.environment = env;
+        return result;
+    }
+
+    private static double configDataMillis(Result result) {
+        return result.factory.getReport().stream()
+                .filter(timing -> timing.getPostProcessor().endsWith("ConfigDataEnvironmentPostProcessor"))
+                .mapToLong(timing -> timing.getDuration().toNanos()).sum() / 1e6;
+    }
+
+    private static class Result {
+        TimedEnvironmentPostProcessorsFactory factory;
+        ProbeCachingResourceLoader loader;
+        ApplicationEnvironment environment;
+    }
+}
@@ -0,0 +1,256 @@
+package org.springframework.boot;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.boot.context.properties.bind.PlanBinder;
+import org.springframework.boot.env.RandomValuePropertySource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    按绑定计划绑定属性: 每个类型的 setter、构造器、嵌套类型和属性名只分析一次
+ */
+public class Step6_1 {
+
+    public static void main(String[] args) throws IOException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.springframework")).setLevel(Level.INFO);
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 1. spring.main 绑定到 SpringApplication");
+        ApplicationEnvironment env = new ApplicationEnvironment();
+        env.getPropertySources().addLast(new ResourcePropertySource("step6", new ClassPathResource("step6.properties")));
+        SpringApplication application = new SpringApplication();
+        new PlanBinder(env).bind("spring.main", Bindable.ofInstance(application));
+        DirectFieldAccessor accessor = new DirectFieldAccessor(application);
+        System.out.println("bannerMode=" + accessor.getPropertyValue("bannerMode") + ", lazyInitialization=" + accessor.getPropertyValue("lazyInitialization"));
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 2. 构造器绑定、@DefaultValue、集合");
+        Map<String, Object> map = new HashMap<>();
+        map.put("client.endpoint.host", "localhost");
+        map.put("client.endpoint.port", "8080");
+        map.put("client.tags", "a,b,c");
+        map.put("client.retry-count", "${client.endpoint.port}");
+        env.getPropertySources().addFirst(new MapPropertySource("client", map));
+        System.out.println("Binder:     " + Binder.get(env).bind("client", Client.class).get() + " " + Binder.get(env).bind("client.endpoint", Endpoint.class).get());
+        System.out.println("PlanBinder: " + new PlanBinder(env).bind("client", Client.class).get() + " " + new PlanBinder(env).bind("client.endpoint", Endpoint.class).get());
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 3. 1000 个属性绑定到三层嵌套的对象, 每轮重复绑定 200 次");
+        StandardEnvironment large = new StandardEnvironment();
+        large.getPropertySources().addFirst(new MapPropertySource("large", largeTree()));
+        Binder binder = Binder.get(large);
+        PlanBinder planBinder = new PlanBinder(large);
+        System.out.println("结果相同: " + binder.bind("app", Root.class).get().toString().equals(planBinder.bind("app", Root.class).get().toString()));
+        for (int round = 1; round <= 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                binder.bind("app", Root.class);
+            }
+            long binderCost = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                planBinder.bind("app", Root.class);
+            }
+            long planCost = System.nanoTime() - start;
+            System.out.printf("第%d轮 Binder 每次 %.2f ms; PlanBinder 每次 %.2f ms%n", round, binderCost / 200 / 1e6, planCost / 200 / 1e6);
+        }
+
+        System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>> 4. 有 random 属性源时绑定自引用的类型, 以及直接绑定一个简单值");
+        StandardEnvironment withRandom = new StandardEnvironment();
+        RandomValuePropertySource.addToEnvironment(withRandom);
+        withRandom.getPropertySources().addFirst(new MapPropertySource("tree", Map.of("t.name", "root", "t.child.name", "leaf", "x.port", "8080")));
+        System.out.println("Binder:     " + Binder.get(withRandom).bind("t", Tree.class).get() + " x.port=" + Binder.get(withRandom).bind("x.port", Integer.class).orElse(null));
+        System.out.println("PlanBinder: " + new PlanBinder(withRandom).bind("t", Tree.class).get() + " x.port=" + new PlanBinder(withRandom).bind("x.port", Integer.class).orElse(null));
+
+        /*
+            学到了什么
+                a. Binder 每次绑定都要重新分析类型、拼接属性名, 并对每个属性源判断有没有后代属性
+                b. 类型的结构不会变, 绑定计划按类型缓存; 某个前缀下的完整属性名也可以缓存
+                c. 一次绑定先把前缀下的属性收集起来, ConfigurationPropertyName 的 equals 本身是宽松的, 查找就是 Map.get
+                d. 转换、占位符沿用 Binder 的实现, 集合和 Map 仍交给 Binder
+                e. 不可遍历的属性源(random)要问 containsDescendantOf, 同一类型正在绑定时不再绑定, 否则自引用的类型会无限递归
+         */
+    }
+
+    private static Map<String, Object> largeTree() {
+        Map<String, Object> map = new HashMap<>();
+        for (int g = 0; g < 10; g++) {
+            for (int n = 0; n < 10; n++) {
+                String prefix = "app.g" + g + ".n" + n + ".";
+                map.put(prefix + "name", "node-" + g + n);
+                map.put(prefix + "port", String.valueOf(8000 + g * 10 + n));
+                map.put(prefix + "enabled", String.valueOf(n % 2 == 0));
+                map.put(prefix + "timeout", (g + n) + "s");
+                map.put(prefix + "max-size", String.valueOf(1024L * n));
+                map.put(prefix + "displayName", "Node " + g + n); // 驼峰写法同样能绑定
+                map.put(prefix + "retry-count", String.valueOf(n));
+                map.put(prefix + "use-ssl", "true");
+                map.put(prefix + "idle-timeout", (n * 100) + "ms");
+                map.put(prefix + "description", "${app.g" + g + ".n" + n + ".name} on ${app.g" + g + ".n" + n + ".port}");
+            }
+        }
+        return map;
+    }
+
+    public static class Tree {
+        private String name;
+        private Tree child;
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public Tree getChild() { return child; }
+        public void setChild(Tree child) { this.child = child; }
+
+        @Override
+        public String toString() { return "Tree{name=" + name + ", child=" + child + "}"; }
+    }
+
+    public static class Client {
+        private List<String> tags;
+        private int retryCount;
+
+        public List<String> getTags() { return tags; }
+        public void setTags(List<String> tags) { this.tags = tags; }
+        public int getRetryCount() { return retryCount; }
+        public void setRetryCount(int retryCount) { this.retryCount = retryCount; }
+
+        @Override
+        public String toString() { return "Client{tags=" + tags + ", retryCount=" + retryCount + "}"; }
+    }
+
+    public static class Endpoint {
+        private final String host;
+        private final int port;
+        private final Duration timeout;
+
+        public Endpoint(String host, int port, @DefaultValue("30s") Duration timeout) {
+            this.host = host;
+            this.port = port;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public String toString() { return "Endpoint{host=" + host + ", port=" + port + ", timeout=" + timeout + "}"; }
+    }
+
+    public static class Root {
+        private Group g0;
+        private Group g1;
+        private Group g2;
+        private Group g3;
+        private Group g4;
+        private Group g5;
+        private Group g6;
+        private Group g7;
+        private Group g8;
+        private Group g9;
+
+        public Group getG0() { return g0; }
+        public void setG0(Group g0) { this.g0 = g0; }
+        public Group getG1() { return g1; }
+        public void setG1(Group g1) { this.g1 = g1; }
+        public Group getG2() { return g2; }
+        public void setG2(Group g2) { this.g2 = g2; }
+        public Group getG3() { return g3; }
+        public void setG3(Group g3) { this.g3 = g3; }
+        public Group getG4() { return g4; }
+        public void setG4(Group g4) { this.g4 = g4; }
+        public Group getG5() { return g5; }
+        public void setG5(Group g5) { this.g5 = g5; }
+        public Group getG6() { return g6; }
+        public void setG6(Group g6) { this.g6 = g6; }
+        public Group getG7() { return g7; }
+        public void setG7(Group g7) { this.g7 = g7; }
+        public Group getG8() { return g8; }
+        public void setG8(Group g8) { this.g8 = g8; }
+        public Group getG9() { return g9; }
+        public void setG9(Group g9) { this.g9 = g9; }
+
+        @Override
+        public String toString() { return "{" + "g0=" + g0 + ", " + "g1=" + g1 + ", " + "g2=" + g2 + ", " + "g3=" + g3 + ", " + "g4=" + g4 + ", " + "g5=" + g5 + ", " + "g6=" + g6 + ", " + "g7=" + g7 + ", " + "g8=" + g8 + ", " + "g9=" + g9 + "}"; }
+    }
+
+    public static class Group {
+        private Node n0;
+        private Node n1;
+        private Node n2;
+        private Node n3;
+        private Node n4;
+        private Node n5;
+        private Node n6;
+        private Node n7;
+        private Node n8;
+        private Node n9;
+
+        public Node getN0() { return n0; }
+        public void setN0(Node n0) { this.n0 = n0; }
+        public Node getN1() { return n1; }
+        public void setN1(Node n1) { this.n1 = n1; }
+        public Node getN2() { return n2; }
+        public void setN2(Node n2) { this.n2 = n2; }
+        public Node getN3() { return n3; }
+        public void setN3(Node n3) { this.n3 = n3; }
+        public Node getN4() { return n4; }
+        public void setN4(Node n4) { this.n4 = n4; }
+        public Node getN5() { return n5; }
+        public void setN5(Node n5) { this.n5 = n5; }
+        public Node getN6() { return n6; }
+        public void setN6(Node n6) { this.n6 = n6; }
+        public Node getN7() { return n7; }
+        public void setN7(Node n7) { this.n7 = n7; }
+        public Node getN8() { return n8; }
+        public void setN8(Node n8) { this.n8 = n8; }
+        public Node getN9() { return n9; }
+        public void setN9(Node n9) { this.n9 = n9; }
+
+        @Override
+        public String toString() { return "{" + "n0=" + n0 + ", " + "n1=" + n1 + ", " + "n2=" + n2 + ", " + "n3=" + n3 + ", " + "n4=" + n4 + ", " + "n5=" + n5 + ", " + "n6=" + n6 + ", " + "n7=" + n7 + ", " + "n8=" + n8 + ", " + "n9=" + n9 + "}"; }
+    }
+
+    public static class Node {
+        private String name;
+        private int port;
+        private boolean enabled;
+        private Duration timeout;
+        private long maxSize;
+        private String displayName;
+        private int retryCount;
+        private boolean useSsl;
+        private Duration idleTimeout;
+        private String description;
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public int getPort() { return port; }
+        public void setPort(int port) { this.port = port; }
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+        public long getMaxSize() { return maxSize; }
+        public void setMaxSize(long maxSize) { this.maxSize = maxSize; }
+        public String getDisplayName() { return displayName; }
+        public void setDisplayName(String displayName) { this.displayName = displayName; }
+        public int getRetryCount() { return retryCount; }
+        public void setRetryCount(int retryCount) { this.retryCount = retryCount; }
+        public boolean isUseSsl() { return useSsl; }
+        public void setUseSsl(boolean useSsl) { this.useSsl = useSsl; }
+        public Duration getIdleTimeout() { return idleTimeout; }
+        public void setIdleTimeout(Duration idleTimeout) { this.idleTimeout = idleTimeout; }
+        public String getDescription() { return description; }
+        public void setDescription(String description) { this.description = description; }
+
+        @Override
+        public String toString() { return "{" + "name=" + name + ", " + "port=" + port + ", " + "enabled=" + enabled + ", " + "timeout=" + timeout + ", " + "maxSize=" + maxSize + ", " + "displayName=" + displayName + ", " + "retryCount=" + retryCount + ", " + "useSsl=" + useSsl + ", " + "idleTimeout=" + idleTimeout + ", " + "description=" + description + "}"; }
+    }
+}
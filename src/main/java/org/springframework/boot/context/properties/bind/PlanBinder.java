@@ -0,0 +1,363 @@
+package org.springframework.boot.context.properties.bind;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.context.properties.source.ConfigurationProperty;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySource;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyState;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.context.properties.source.IterableConfigurationPropertySource;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.convert.ConversionException;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按绑定计划绑定属性的 Binder
+ * <p>
+ * Binder 每次绑定都要经过 BindHandler 链、BindContext, 逐个 DataObjectBinder 试探, 对每个属性源判断
+ * containsDescendantOf(可遍历的属性源要把所有名字过一遍). 这里:
+ * <ul>
+ *     <li>每个类型的绑定计划只算一次并缓存: setter/getter、构造器绑定的构造器和参数、每个属性的类型和注解、
+ *     以及在某个前缀下每个属性的完整 ConfigurationPropertyName</li>
+ *     <li>每次绑定先把各属性源中前缀本身和前缀下的属性收集成 Map, 同时记下所有"有后代"的名字;
+ *     ConfigurationPropertyName 的 equals 本身就是宽松的, 查找就是一次 get. 不可遍历的属性源(如 random)照旧按名字查,
+ *     有没有后代问它的 containsDescendantOf</li>
+ *     <li>与 Binder 一样, 一个类型正在绑定时, 它的属性里再出现这个类型不再绑定, 自引用的类型不会无限递归</li>
+ *     <li>值的转换用 Binder 同一个 BindConverter, 占位符用同一个 PlaceholdersResolver, 转换失败同样抛 BindException</li>
+ *     <li>集合、Map、数组交给原来的 Binder</li>
+ * </ul>
+ * 不支持 BindHandler(校验、忽略无效字段等)和 Kotlin 类型, 需要这些时用原来的 Binder.
+ * 属性的读写用缓存的 Method 反射调用, 没有像 NestmateClassUtil 那样生成绑定类: JDK 的反射调用预热后本身就换成了生成的访问器,
+ * 一次 setter 调用只有几十纳秒, 在每个属性的名字查找、占位符解析和类型转换面前可以忽略, 生成类只会增加首次绑定的开销.
+ * 放在这个包里是为了使用包内可见的 BindConverter 和 BindResult.of
+ */
+public class PlanBinder {
+
+    private static final Map<Class<?>, TypePlan> plans = new ConcurrentReferenceHashMap<>();
+
+    private static final ParameterNameDiscoverer parameterNames = new DefaultParameterNameDiscoverer();
+
+    private final Iterable<ConfigurationPropertySource> sources;
+
+    private final PlaceholdersResolver placeholdersResolver;
+
+    private final BindConverter converter = BindConverter.get(null, null);
+
+    private final Binder fallback;
+
+    public PlanBinder(Environment environment) {
+        this(ConfigurationPropertySources.get(environment), new PropertySourcesPlaceholdersResolver(environment));
+    }
+
+    public PlanBinder(Iterable<ConfigurationPropertySource> sources, PlaceholdersResolver placeholdersResolver) {
+        this.sources = sources;
+        this.placeholdersResolver = placeholdersResolver;
+        this.fallback = new Binder(sources, placeholdersResolver);
+    }
+
+    public <T> BindResult<T> bind(String name, Class<T> type) {
+        return bind(name, Bindable.of(type));
+    }
+
+    /**
+     * 与 {@link Binder#bind(String, Bindable)} 相同; Bindable.ofInstance 时绑定到已有对象上
+     */
+    @SuppressWarnings("unchecked")
+    public <T> BindResult<T> bind(String name, Bindable<T> target) {
+        ConfigurationPropertyName prefix = ConfigurationPropertyName.of(name);
+        Object existing = target.getValue() != null ? target.getValue().get() : null;
+        Object result = bindObject(prefix, target.getType(), target.getAnnotations(), existing, existing == null, new Values(prefix));
+        return BindResult.of((T) result);
+    }
+
+    /**
+     * @param constructorBinding 是否允许构造器绑定; 与 JavaBeanBinder 一样, 有 getter 的属性不用构造器绑定
+     */
+    @Nullable
+    private Object bindObject(ConfigurationPropertyName name, ResolvableType type, Annotation[] annotations,
+                              @Nullable Object existing, boolean constructorBinding, Values values) {
+        ConfigurationProperty property = values.get(name);
+        if (property != null) { // 与 Binder 一样, 有值时优先按值转换
+            return convert(name, property, type, annotations);
+        }
+        Class<?> rawType = type.resolve(Object.class);
+        if (isAggregate(rawType)) {
+            Bindable<Object> bindable = Bindable.of(type).withAnnotations(annotations);
+            return fallback.bind(name, existing != null ? bindable.withExistingValue(existing) : bindable).orElse(null);
+        }
+        if (!isDataObject(rawType) || !values.hasDescendants(name)) {
+            return null;
+        }
+        if (!values.binding.add(rawType)) {
+            return null; // 与 Binder 一样, 不在同一类型的绑定中再绑定这个类型
+        }
+        try {
+            TypePlan plan = plans.computeIfAbsent(rawType, TypePlan::new);
+            if (existing != null) {
+                return plan.bindInto(this, name, existing, values) ? existing : null;
+            }
+            return plan.create(this, name, constructorBinding, values);
+        } finally {
+            values.binding.remove(rawType);
+        }
+    }
+
+    private Object convert(ConfigurationPropertyName name, ConfigurationProperty property, ResolvableType type, Annotation[] annotations) {
+        Object value = placeholdersResolver.resolvePlaceholders(property.getValue());
+        try {
+            return converter.convert(value, type, annotations);
+        } catch (ConversionException e) {
+            throw new BindException(name, Bindable.of(type).withAnnotations(annotations), property, e);
+        }
+    }
+
+    private static boolean isAggregate(Class<?> type) {
+        return type.isArray() || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type);
+    }
+
+    private static boolean isDataObject(Class<?> type) {
+        return !type.isPrimitive() && !type.isEnum() && !type.isInterface() && !type.getName().startsWith("java.");
+    }
+
+    /**
+     * 一次绑定用到的属性: 每个属性源中前缀本身和前缀下的属性, 以及它们在前缀下的所有祖先名字
+     */
+    private class Values {
+        // 可遍历的属性源是 Map, 不可遍历的(如 random)保留属性源本身, 按名字直接查
+        private final List<Object> bySource = new ArrayList<>();
+        private final List<ConfigurationPropertySource> nonIterable = new ArrayList<>();
+        private final Set<ConfigurationPropertyName> ancestors = new HashSet<>();
+        // 正在绑定的数据对象类型
+        final Set<Class<?>> binding = new HashSet<>();
+
+        Values(ConfigurationPropertyName prefix) {
+            for (ConfigurationPropertySource source : sources) {
+                if (!(source instanceof IterableConfigurationPropertySource)) {
+                    bySource.add(source);
+                    nonIterable.add(source);
+                    continue;
+                }
+                Map<ConfigurationPropertyName, ConfigurationProperty> properties = new HashMap<>();
+                ((IterableConfigurationPropertySource) source).stream()
+                        .filter(name -> prefix.equals(name) || prefix.isAncestorOf(name)).forEach(name -> {
+                    ConfigurationProperty property = source.getConfigurationProperty(name);
+                    if (property != null) {
+                        properties.put(name, property);
+                        if (!name.equals(prefix)) {
+                            for (ConfigurationPropertyName parent = name.getParent(); ancestors.add(parent) && !parent.equals(prefix); ) {
+                                parent = parent.getParent();
+                            }
+                        }
+                    }
+                });
+                bySource.add(properties);
+            }
+        }
+
+        @Nullable
+        @SuppressWarnings("unchecked")
+        ConfigurationProperty get(ConfigurationPropertyName name) {
+            for (Object source : bySource) {
+                ConfigurationProperty property = source instanceof Map
+                        ? ((Map<ConfigurationPropertyName, ConfigurationProperty>) source).get(name)
+                        : ((ConfigurationPropertySource) source).getConfigurationProperty(name);
+                if (property != null) {
+                    return property;
+                }
+            }
+            return null;
+        }
+
+        // 不可遍历的属性源回答 UNKNOWN 时与 Binder 一样当作可能有
+        boolean hasDescendants(ConfigurationPropertyName name) {
+            if (ancestors.contains(name)) {
+                return true;
+            }
+            for (ConfigurationPropertySource source : nonIterable) {
+                if (source.containsDescendantOf(name) != ConfigurationPropertyState.ABSENT) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 一个类型的绑定计划
+     */
+    private static class TypePlan {
+        private final Class<?> type;
+        @Nullable
+        private final Constructor<?> bindConstructor;
+        private final List<Slot> parameters = new ArrayList<>();
+        @Nullable
+        private final Constructor<?> defaultConstructor;
+        private final List<Slot> properties = new ArrayList<>();
+        // 前缀 -> 每个参数/属性的完整名字
+        private final Map<ConfigurationPropertyName, ConfigurationPropertyName[]> parameterNamesByPrefix = new ConcurrentReferenceHashMap<>();
+        private final Map<ConfigurationPropertyName, ConfigurationPropertyName[]> propertyNamesByPrefix = new ConcurrentReferenceHashMap<>();
+
+        TypePlan(Class<?> type) {
+            this.type = type;
+            this.bindConstructor = BindConstructorProvider.DEFAULT.getBindConstructor(Bindable.of(type), false);
+            if (bindConstructor != null) {
+                ReflectionUtils.makeAccessible(bindConstructor);
+                String[] names = parameterNames.getParameterNames(bindConstructor);
+                for (int i = 0; i < bindConstructor.getParameterCount(); i++) {
+                    MethodParameter parameter = new MethodParameter(bindConstructor, i);
+                    Name name = parameter.getParameterAnnotation(Name.class);
+                    String element = name != null ? name.value() : names != null ? names[i] : "arg" + i;
+                    parameters.add(new Slot(DataObjectPropertyName.toDashedForm(element), ResolvableType.forMethodParameter(parameter),
+                            parameter.getParameterAnnotations(), null, null));
+                }
+            }
+            Constructor<?> constructor = null;
+            try {
+                constructor = ReflectionUtils.accessibleConstructor(type);
+            } catch (NoSuchMethodException e) {
+                // 只能绑定到已有对象上, 或者用构造器绑定
+            }
+            this.defaultConstructor = constructor;
+            for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(type)) {
+                Method setter = descriptor.getWriteMethod();
+                Method getter = descriptor.getReadMethod();
+                if (setter == null && getter == null || "class".equals(descriptor.getName())) {
+                    continue;
+                }
+                ResolvableType propertyType = setter != null ? ResolvableType.forMethodParameter(setter, 0, type)
+                        : ResolvableType.forMethodReturnType(getter, type);
+                Class<?> rawType = propertyType.resolve(Object.class);
+                if (setter == null && !isAggregate(rawType) && !isDataObject(rawType)) {
+                    continue; // 只读的简单类型无法绑定
+                }
+                Field field = ReflectionUtils.findField(type, descriptor.getName());
+                Annotation[] annotations = field != null ? field.getDeclaredAnnotations() : new Annotation[0];
+                if (setter != null) {
+                    ReflectionUtils.makeAccessible(setter);
+                }
+                if (getter != null) {
+                    ReflectionUtils.makeAccessible(getter);
+                }
+                properties.add(new Slot(DataObjectPropertyName.toDashedForm(descriptor.getName()), propertyType, annotations, setter, getter));
+            }
+        }
+
+        @Nullable
+        Object create(PlanBinder binder, ConfigurationPropertyName prefix, boolean constructorBinding, Values values) {
+            if (bindConstructor != null && constructorBinding) {
+                return construct(binder, prefix, values);
+            }
+            if (defaultConstructor == null || Modifier.isAbstract(type.getModifiers())) {
+                return null;
+            }
+            Object instance = BeanUtils.instantiateClass(defaultConstructor);
+            return bindInto(binder, prefix, instance, values) ? instance : null;
+        }
+
+        @Nullable
+        private Object construct(PlanBinder binder, ConfigurationPropertyName prefix, Values values) {
+            ConfigurationPropertyName[] names = namesFor(parameterNamesByPrefix, parameters, prefix);
+            Object[] args = new Object[parameters.size()];
+            boolean bound = false;
+            for (int i = 0; i < args.length; i++) {
+                Slot parameter = parameters.get(i);
+                args[i] = binder.bindObject(names[i], parameter.type, parameter.annotations, null, true, values);
+                if (args[i] != null) {
+                    bound = true;
+                } else {
+                    args[i] = parameter.defaultValue(binder.converter);
+                }
+            }
+            return bound ? BeanUtils.instantiateClass(bindConstructor, args) : null;
+        }
+
+        boolean bindInto(PlanBinder binder, ConfigurationPropertyName prefix, Object instance, Values values) {
+            ConfigurationPropertyName[] names = namesFor(propertyNamesByPrefix, properties, prefix);
+            boolean bound = false;
+            for (int i = 0; i < names.length; i++) {
+                Slot property = properties.get(i);
+                if (!values.hasDescendants(names[i]) && values.get(names[i]) == null) {
+                    continue;
+                }
+                Object current = property.getter != null ? ReflectionUtils.invokeMethod(property.getter, instance) : null;
+                Object value = binder.bindObject(names[i], property.type, property.annotations, current, property.getter == null, values);
+                if (value != null) {
+                    if (property.setter != null && value != current) {
+                        ReflectionUtils.invokeMethod(property.setter, instance, value);
+                    }
+                    bound = true;
+                }
+            }
+            return bound;
+        }
+
+        private static ConfigurationPropertyName[] namesFor(Map<ConfigurationPropertyName, ConfigurationPropertyName[]> cache,
+                                                            List<Slot> slots, ConfigurationPropertyName prefix) {
+            return cache.computeIfAbsent(prefix, p -> {
+                ConfigurationPropertyName[] names = new ConfigurationPropertyName[slots.size()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = p.append(slots.get(i).element);
+                }
+                return names;
+            });
+        }
+    }
+
+    /**
+     * 构造器参数或 JavaBean 属性
+     */
+    private static class Slot {
+        final String element;
+        final ResolvableType type;
+        final Annotation[] annotations;
+        @Nullable
+        final Method setter;
+        @Nullable
+        final Method getter;
+
+        Slot(String element, ResolvableType type, Annotation[] annotations, @Nullable Method setter, @Nullable Method getter) {
+            this.element = element;
+            this.type = type;
+            this.annotations = annotations;
+            this.setter = setter;
+            this.getter = getter;
+        }
+
+        // 与 ValueObjectBinder 相同: 有 @DefaultValue 时用它(空的 @DefaultValue 表示用默认构造创建的空对象), 否则基本类型取零值
+        @Nullable
+        Object defaultValue(BindConverter converter) {
+            Class<?> rawType = type.resolve(Object.class);
+            for (Annotation annotation : annotations) {
+                if (annotation instanceof DefaultValue) {
+                    String[] value = ((DefaultValue) annotation).value();
+                    if (value.length == 0) {
+                        return isDataObject(rawType) ? BeanUtils.instantiateClass(rawType) : null;
+                    }
+                    return converter.convert(value.length == 1 ? value[0] : value, type, annotations);
+                }
+            }
+            return rawType.isPrimitive() ? Array.get(Array.newInstance(rawType, 1), 0) : null;
+        }
+    }
+}
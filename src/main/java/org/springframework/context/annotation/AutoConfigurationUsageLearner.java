@@ -0,0 +1,230 @@
+package org.springframework.context.annotation;
+
+import com.itheima.a41.LearnedAutoConfigurationFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport;
+import org.springframework.boot.autoconfigure.condition.ConditionEvaluationReport.ConditionAndOutcomes;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.core.annotation.MergedAnnotation;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 记录模式: 运行一次应用, 找出没有用处的自动配置, 生成排除清单
+ * <p>
+ * 设置了 {@value #OUTPUT_PROPERTY} 时, 在容器关闭时(单例还没销毁)逐个检查本次的自动配置候选:
+ * <ul>
+ *     <li>条件不满足(包括被 OnClassCondition 等过滤器提前淘汰的): 它的条件评估白做了</li>
+ *     <li>条件满足, 但它(连同内部类、它导入的配置类)的 @Bean 方法一个 bean 也没注册</li>
+ *     <li>注册的 bean 一个都没被创建过: 只在 spring.main.lazy-initialization=true 时有意义, 非懒加载时单例全都会被创建</li>
+ * </ul>
+ * 这些类写进清单, 之后的启动由 {@link LearnedAutoConfigurationFilter} 在条件评估之前排除, 类也不会被加载.
+ * 导入了 ImportBeanDefinitionRegistrar 的自动配置(如 @EnableAspectJAutoProxy)注册的 bean 没法归属, 一律保留.
+ * 记录只反映这次运行用到的功能和配置, 换了配置或者懒加载时没走到的代码路径, 需要重新记录或用 {@value #KEEP_PROPERTY} 保留
+ * <p>
+ * 放在这个包里是为了通过 ImportRegistry(包内可见)找到导入某个配置类的自动配置
+ */
+public class AutoConfigurationUsageLearner implements ApplicationListener<ApplicationEvent> {
+
+    /**
+     * 清单的输出文件, 不设置时不记录. 清单只适用于记录它的应用, 每个应用单独一份(如 target/autoconfigure-learned/应用名.properties),
+     * 不要写到类路径上几个应用共用的位置
+     */
+    public static final String OUTPUT_PROPERTY = "spring.autoconfigure.learn.output";
+
+    /**
+     * 无论是否用到都保留的自动配置, 逗号分隔
+     */
+    public static final String KEEP_PROPERTY = "spring.autoconfigure.learn.keep";
+
+    private static final String IMPORT_REGISTRY_BEAN_NAME = ConfigurationClassPostProcessor.class.getName() + ".importRegistry";
+
+    // 注册的是配置属性 bean, 只被同一个配置类的 bean 使用, 不影响归属;
+    // 但只有它没有 @Bean 的自动配置(如 ConfigurationPropertiesAutoConfiguration)是为了保证绑定用的后处理器存在, 要保留
+    private static final Set<String> NEUTRAL_REGISTRARS = new HashSet<>(List.of(
+            "org.springframework.boot.context.properties.EnableConfigurationPropertiesRegistrar"));
+
+    private static final Logger log = LoggerFactory.getLogger(AutoConfigurationUsageLearner.class);
+
+    private ConfigurableApplicationContext context;
+
+    private Path output;
+
+    private Set<String> keep;
+
+    private String application;
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ApplicationPreparedEvent) {
+            ConfigurableEnvironment environment = ((ApplicationPreparedEvent) event).getApplicationContext().getEnvironment();
+            String location = environment.getProperty(OUTPUT_PROPERTY);
+            if (StringUtils.hasText(location)) {
+                context = ((ApplicationPreparedEvent) event).getApplicationContext();
+                output = Paths.get(location);
+                keep = StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(environment.getProperty(KEEP_PROPERTY, "")));
+                Class<?> mainClass = ((ApplicationPreparedEvent) event).getSpringApplication().getMainApplicationClass();
+                application = LearnedAutoConfigurationFilter.applicationId(environment, mainClass != null ? mainClass.getName() : null);
+            }
+        } else if (event instanceof ContextClosedEvent && context != null && ((ContextClosedEvent) event).getApplicationContext() == context) {
+            try {
+                write(learn(context.getBeanFactory()));
+            } catch (IOException | RuntimeException e) {
+                log.warn("记录自动配置的使用情况失败", e);
+            } finally {
+                context = null;
+            }
+        }
+    }
+
+    /**
+     * @return 应排除的自动配置及原因, 按候选顺序
+     */
+    Map<String, String> learn(ConfigurableListableBeanFactory beanFactory) {
+        ConditionEvaluationReport report = ConditionEvaluationReport.get(beanFactory);
+        List<String> candidates = new ArrayList<>(SpringFactoriesLoader.loadFactoryNames(EnableAutoConfiguration.class, beanFactory.getBeanClassLoader()));
+        candidates.removeAll(report.getExclusions());
+        Set<String> candidateSet = new HashSet<>(candidates);
+        ImportRegistry importRegistry = beanFactory.containsSingleton(IMPORT_REGISTRY_BEAN_NAME)
+                ? (ImportRegistry) beanFactory.getSingleton(IMPORT_REGISTRY_BEAN_NAME) : null;
+
+        Map<String, Usage> usages = new HashMap<>();
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition bd = beanFactory.getBeanDefinition(beanName);
+            boolean configurationClass = bd.getAttribute(ConfigurationClassUtils.CONFIGURATION_CLASS_ATTRIBUTE) != null;
+            String declaringClass = configurationClass ? bd.getBeanClassName() : declaringClass(bd);
+            String owner = declaringClass != null ? owner(declaringClass, candidateSet, importRegistry) : null;
+            if (owner == null) {
+                continue; // 应用自己的 bean, 或者由 ImportBeanDefinitionRegistrar 注册的
+            }
+            Usage usage = usages.computeIfAbsent(owner, k -> new Usage());
+            if (configurationClass && bd instanceof AnnotatedBeanDefinition) {
+                AnnotationMetadata metadata = ((AnnotatedBeanDefinition) bd).getMetadata();
+                usage.registrar |= importsRegistrar(metadata, beanFactory.getBeanClassLoader(), false);
+                usage.neutralRegistrar |= importsRegistrar(metadata, beanFactory.getBeanClassLoader(), true);
+            } else if (!configurationClass) {
+                usage.beans++;
+                // 非单例无从得知是否用过, 当作用过
+                if (!bd.isSingleton() || beanFactory.containsSingleton(beanName)) {
+                    usage.created++;
+                }
+            }
+        }
+
+        Map<String, ConditionAndOutcomes> outcomes = report.getConditionAndOutcomesBySource();
+        Map<String, String> excluded = new LinkedHashMap<>();
+        for (String candidate : candidates) {
+            if (keep.contains(candidate)) {
+                continue;
+            }
+            ConditionAndOutcomes outcome = outcomes.get(candidate);
+            Usage usage = usages.get(candidate);
+            if (outcome != null && !outcome.isFullMatch()) {
+                excluded.put(candidate, "条件不满足");
+            } else if (usage == null || usage.registrar) {
+                // 没有被导入(应用没有用 @EnableAutoConfiguration), 或者导入了 ImportBeanDefinitionRegistrar
+            } else if (usage.beans == 0 && !usage.neutralRegistrar) {
+                excluded.put(candidate, "没有注册 bean");
+            } else if (usage.beans > 0 && usage.created == 0) {
+                excluded.put(candidate, "注册的 " + usage.beans + " 个 bean 都没有被创建");
+            }
+        }
+        log.info("{} 个自动配置候选中 {} 个可以排除", candidates.size(), excluded.size());
+        return excluded;
+    }
+
+    private static String declaringClass(BeanDefinition bd) {
+        if (bd instanceof AnnotatedBeanDefinition && ((AnnotatedBeanDefinition) bd).getFactoryMethodMetadata() != null) {
+            return ((AnnotatedBeanDefinition) bd).getFactoryMethodMetadata().getDeclaringClassName();
+        }
+        return null;
+    }
+
+    // 沿着"被谁导入"和"是谁的内部类"向上找, 直到遇到自动配置候选
+    private static String owner(String className, Set<String> candidates, ImportRegistry importRegistry) {
+        Set<String> visited = new HashSet<>();
+        String current = className;
+        while (current != null && visited.add(current)) {
+            if (candidates.contains(current)) {
+                return current;
+            }
+            AnnotationMetadata importer = importRegistry != null ? importRegistry.getImportingClassFor(current) : null;
+            if (importer != null) {
+                current = importer.getClassName();
+            } else {
+                int dollar = current.lastIndexOf('$');
+                current = dollar > 0 ? current.substring(0, dollar) : null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean importsRegistrar(AnnotationMetadata metadata, ClassLoader classLoader, boolean neutral) {
+        for (Iterator<MergedAnnotation<Import>> it = metadata.getAnnotations().stream(Import.class).iterator(); it.hasNext(); ) {
+            for (String name : it.next().getStringArray("value")) {
+                if (NEUTRAL_REGISTRARS.contains(name) == neutral && ClassUtils.isPresent(name, classLoader)
+                    && ImportBeanDefinitionRegistrar.class.isAssignableFrom(ClassUtils.resolveClassName(name, classLoader))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void write(Map<String, String> excluded) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write("# 由 " + getClass().getName() + " 记录, 供 " + LearnedAutoConfigurationFilter.class.getName() + " 使用\n");
+            for (Map.Entry<String, String> entry : excluded.entrySet()) {
+                writer.write("# " + entry.getKey() + ": " + entry.getValue() + "\n");
+            }
+            if (application != null) {
+                writer.write(LearnedAutoConfigurationFilter.APPLICATION_KEY + "=" + application + "\n");
+            }
+            writer.write(LearnedAutoConfigurationFilter.EXCLUDE_KEY + "=");
+            for (Iterator<String> it = excluded.keySet().iterator(); it.hasNext(); ) {
+                writer.write("\\\n" + it.next() + (it.hasNext() ? "," : ""));
+            }
+            writer.write("\n");
+        }
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("排除清单写入 {}", output);
+    }
+
+    private static class Usage {
+        int beans;
+        int created;
+        boolean registrar;
+        boolean neutralRegistrar;
+    }
+}
@@ -0,0 +1,238 @@
+package org.springframework.context.annotation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.Handle;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.SpringAsmInfo;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 找出不需要 CGLIB 增强的 @Configuration 类, 改为 lite 模式
+ * <p>
+ * full 模式的配置类会生成 CGLIB 子类, 只为一件事: @Bean 方法之间互相调用时返回容器中的单例. 没有这种调用的类,
+ * 增强只是白白多生成一个类. 这里在 ConfigurationClassPostProcessor 解析完配置类之后、增强之前, 读取 full 模式配置类
+ * (连同父类、实现的接口、内部类和匿名类)的字节码:
+ * <ul>
+ *     <li>找到对本类层次中 @Bean 方法的调用(包括方法引用 this::bean1), 保持 full, 并记录调用位置</li>
+ *     <li>其它配置类通过注入的引用调用它的 @Bean 方法, 同样保持 full</li>
+ *     <li>其余的改为 lite, 相当于自动加上 proxyBeanMethods = false</li>
+ * </ul>
+ * 只分析配置类自身的字节码: 业务代码拿到配置类对象后直接调用它的 @Bean 方法, 这里看不到, 这样的类需要手动列入 excludedClasses
+ * <p>
+ * 放在这个包里是为了使用包内可见的 ConfigurationClassUtils 常量
+ */
+public class BeanMethodCallAnalyzer implements BeanDefinitionRegistryPostProcessor, BeanClassLoaderAware, Ordered {
+
+    private static final Logger log = LoggerFactory.getLogger(BeanMethodCallAnalyzer.class);
+
+    private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    private Set<String> excludedClasses = new HashSet<>();
+
+    // 保持 full 的配置类 -> 原因
+    private final Map<String, List<String>> kept = new LinkedHashMap<>();
+
+    private final List<String> converted = new ArrayList<>();
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    public void setExcludedClasses(Set<String> excludedClasses) {
+        this.excludedClasses = excludedClasses;
+    }
+
+    // 不是 PriorityOrdered: 一定在 ConfigurationClassPostProcessor 解析之后执行, 又在所有 postProcessBeanFactory(增强)之前
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+        Map<String, List<BeanDefinition>> candidates = new LinkedHashMap<>();
+        for (String beanName : registry.getBeanDefinitionNames()) {
+            BeanDefinition bd = registry.getBeanDefinition(beanName);
+            if (ConfigurationClassUtils.CONFIGURATION_CLASS_FULL.equals(bd.getAttribute(ConfigurationClassUtils.CONFIGURATION_CLASS_ATTRIBUTE))
+                    && bd.getBeanClassName() != null) {
+                candidates.computeIfAbsent(bd.getBeanClassName(), k -> new ArrayList<>()).add(bd);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        CachingMetadataReaderFactory metadataReaderFactory = new CachingMetadataReaderFactory(classLoader);
+        Map<String, ConfigClass> configs = new LinkedHashMap<>();
+        List<Call> calls = new ArrayList<>();
+        Map<String, List<Call>> scanned = new LinkedHashMap<>();
+        for (String className : candidates.keySet()) {
+            ConfigClass config = new ConfigClass();
+            try {
+                Deque<String> types = new ArrayDeque<>();
+                types.add(className);
+                while (!types.isEmpty()) {
+                    String type = types.poll();
+                    if (type.startsWith("java.") || !config.hierarchy.add(internalName(type))) {
+                        continue;
+                    }
+                    MetadataReader reader = metadataReaderFactory.getMetadataReader(type);
+                    for (MethodMetadata method : reader.getAnnotationMetadata().getAnnotatedMethods(Bean.class.getName())) {
+                        config.beanMethods.add(method.getMethodName());
+                    }
+                    scan(internalName(type), scanned);
+                    // 接口的 default 方法也可以是 @Bean 方法, 同样要看它们之间的调用
+                    if (reader.getClassMetadata().getSuperClassName() != null) {
+                        types.add(reader.getClassMetadata().getSuperClassName());
+                    }
+                    types.addAll(Arrays.asList(reader.getClassMetadata().getInterfaceNames()));
+                }
+            } catch (IOException ex) {
+                config.reasons.add("无法读取字节码: " + ex.getMessage()); // 读不到就保持原样
+            }
+            configs.put(className, config);
+        }
+        scanned.values().forEach(calls::addAll);
+
+        for (Map.Entry<String, ConfigClass> entry : configs.entrySet()) {
+            ConfigClass config = entry.getValue();
+            if (excludedClasses.contains(entry.getKey())) {
+                config.reasons.add("在 excludedClasses 中");
+            }
+            for (Call call : calls) {
+                if (config.hierarchy.contains(call.owner) && config.beanMethods.contains(call.name)) {
+                    config.reasons.add(call.toString());
+                }
+            }
+            if (config.reasons.isEmpty()) {
+                for (BeanDefinition bd : candidates.get(entry.getKey())) {
+                    bd.setAttribute(ConfigurationClassUtils.CONFIGURATION_CLASS_ATTRIBUTE, ConfigurationClassUtils.CONFIGURATION_CLASS_LITE);
+                }
+                converted.add(entry.getKey());
+            } else {
+                kept.put(entry.getKey(), config.reasons);
+            }
+        }
+        log.debug("分析 {} 个 full 模式配置类耗时 {} ms, 改为 lite: {}", configs.size(), (System.nanoTime() - start) / 1_000_000, converted);
+        kept.forEach((className, reasons) -> log.info("{} 保持 full 模式: {}", className, reasons));
+    }
+
+    private static String internalName(String className) {
+        return className.replace('.', '/');
+    }
+
+    // 扫描一个类及其内部类、匿名类中的方法调用
+    private void scan(String internalName, Map<String, List<Call>> scanned) throws IOException {
+        if (scanned.containsKey(internalName)) {
+            return;
+        }
+        List<Call> calls = new ArrayList<>();
+        scanned.put(internalName, calls);
+        Set<String> nested = new LinkedHashSet<>();
+        InputStream in = classLoader.getResourceAsStream(internalName + ".class");
+        if (in == null) {
+            throw new IOException(internalName + ".class not found");
+        }
+        try (InputStream stream = in) {
+            new ClassReader(stream).accept(new ClassVisitor(SpringAsmInfo.ASM_VERSION) {
+                @Override
+                public void visitInnerClass(String name, String outerName, String innerName, int access) {
+                    if (name.startsWith(internalName + "$")) {
+                        nested.add(name);
+                    }
+                }
+
+                @Override
+                public MethodVisitor visitMethod(int access, String methodName, String descriptor, String signature, String[] exceptions) {
+                    String location = internalName.replace('/', '.') + "." + methodName;
+                    return new MethodVisitor(SpringAsmInfo.ASM_VERSION) {
+                        @Override
+                        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean isInterface) {
+                            calls.add(new Call(location, owner, name));
+                        }
+
+                        @Override
+                        public void visitInvokeDynamicInsn(String name, String desc, Handle bootstrap, Object... args) {
+                            for (Object arg : args) {
+                                if (arg instanceof Handle) {
+                                    calls.add(new Call(location, ((Handle) arg).getOwner(), ((Handle) arg).getName()));
+                                }
+                            }
+                        }
+                    };
+                }
+            }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        for (String name : nested) {
+            scan(name, scanned);
+        }
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    }
+
+    /**
+     * 改为 lite 的配置类
+     */
+    public List<String> getConverted() {
+        return converted;
+    }
+
+    /**
+     * 保持 full 的配置类, 以及找到的 @Bean 方法调用
+     */
+    public Map<String, List<String>> getKept() {
+        return kept;
+    }
+
+    private static class ConfigClass {
+        final Set<String> hierarchy = new HashSet<>();
+        final Set<String> beanMethods = new HashSet<>();
+        final List<String> reasons = new ArrayList<>();
+    }
+
+    private static class Call {
+        final String location;
+        final String owner;
+        final String name;
+
+        Call(String location, String owner, String name) {
+            this.location = location;
+            this.owner = owner;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return location + " -> " + name + "()";
+        }
+    }
+}
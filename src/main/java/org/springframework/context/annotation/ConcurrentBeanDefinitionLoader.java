@@ -0,0 +1,292 @@
+package org.springframework.context.annotation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultBeanNameGenerator;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 并发加载 bean 定义: 注解类、XML、组件扫描各自读进一个暂存的注册表, 再按添加顺序合并
+ * <p>
+ * 原来的 AnnotatedBeanDefinitionReader.register、XmlBeanDefinitionReader.loadBeanDefinitions、
+ * ClassPathBeanDefinitionScanner.scan 一个接一个执行, 加载时间是各来源之和. 这里:
+ * <ul>
+ *     <li>每个来源在线程池中读进自己的 DefaultListableBeanFactory(继承目标的覆盖开关、类加载器), 互不干扰</li>
+ *     <li>全部读完后按添加来源的顺序、每个来源内按注册顺序, 调用目标的 registerBeanDefinition 合并,
+ *     覆盖规则(是否允许覆盖、BeanDefinitionOverrideException)由目标照常处理, 结果与顺序加载相同</li>
+ *     <li>扫描到的 bean 与之前的来源同名时, 与 ClassPathBeanDefinitionScanner.checkCandidate 一样:
+ *     兼容的跳过, 不兼容的抛 ConflictingBeanDefinitionException</li>
+ *     <li>AnnotationConfigUtils 注册的内部后处理器等基础设施 bean, 目标中已有的跳过</li>
+ *     <li>XML 中没有 id 的 bean 名字(如 com.foo.Bean#0)在各自的暂存注册表中编号, 合并时按目标注册表重新生成,
+ *     以类名为别名也按目标重新判断, 与顺序加载一样</li>
+ * </ul>
+ * 注意 @Conditional 在读取时求值, 这时看到的只是本来源的暂存注册表; 依赖别的来源注册了什么的条件, 需要顺序加载
+ * <p>
+ * 放在这个包里是为了抛出与扫描器相同的 ConflictingBeanDefinitionException(包内可见)
+ */
+public class ConcurrentBeanDefinitionLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentBeanDefinitionLoader.class);
+
+    private final DefaultListableBeanFactory beanFactory;
+
+    private final Environment environment;
+
+    private final ResourceLoader resourceLoader;
+
+    private final List<Source> sources = new ArrayList<>();
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private volatile List<LoadRecord> report = Collections.emptyList();
+
+    public ConcurrentBeanDefinitionLoader(DefaultListableBeanFactory beanFactory, Environment environment, ResourceLoader resourceLoader) {
+        this.beanFactory = beanFactory;
+        this.environment = environment;
+        this.resourceLoader = resourceLoader;
+    }
+
+    public void setParallelism(int parallelism) {
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    public ConcurrentBeanDefinitionLoader register(Class<?>... componentClasses) {
+        return add("register " + Arrays.toString(componentClasses),
+                registry -> new AnnotatedBeanDefinitionReader(registry, environment).register(componentClasses));
+    }
+
+    public ConcurrentBeanDefinitionLoader loadXml(Resource... resources) {
+        return add("xml " + Arrays.toString(resources), registry -> {
+            XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(registry);
+            reader.setEnvironment(environment);
+            reader.setResourceLoader(resourceLoader);
+            reader.setBeanNameGenerator((definition, r) -> {
+                String name = DefaultBeanNameGenerator.INSTANCE.generateBeanName(definition, r);
+                ((Staging) registry).generated.add(name);
+                return name;
+            });
+            reader.loadBeanDefinitions(resources);
+        });
+    }
+
+    public ConcurrentBeanDefinitionLoader scan(String... basePackages) {
+        return add("scan " + Arrays.toString(basePackages),
+                registry -> new ClassPathBeanDefinitionScanner(registry, true, environment, resourceLoader).scan(basePackages));
+    }
+
+    /**
+     * 其它来源: loader 把 bean 定义注册到给它的暂存注册表中
+     */
+    public ConcurrentBeanDefinitionLoader add(String description, Consumer<DefaultListableBeanFactory> loader) {
+        sources.add(new Source(description, loader));
+        return this;
+    }
+
+    /**
+     * 加载所有来源并合并到目标 BeanFactory
+     *
+     * @return 合并进目标的 bean 定义数
+     */
+    public int load() {
+        if (sources.isEmpty()) {
+            return 0;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, sources.size()), r -> {
+            Thread thread = new Thread(r, "bean-definitions-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<Staging>> futures = new ArrayList<>();
+        try {
+            for (Source source : sources) {
+                futures.add(executor.submit(() -> read(source)));
+            }
+            List<LoadRecord> records = new ArrayList<>();
+            int merged = 0;
+            for (Future<Staging> future : futures) {
+                Staging staging = get(future);
+                int count = merge(staging);
+                merged += count;
+                records.add(new LoadRecord(staging.source.description, staging.thread, staging.duration, count));
+            }
+            report = Collections.unmodifiableList(records);
+            return merged;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 最近一次 load 中每个来源的读取情况, 按添加顺序
+     */
+    public List<LoadRecord> getReport() {
+        return report;
+    }
+
+    private Staging read(Source source) {
+        long start = System.nanoTime();
+        Staging staging = new Staging(source);
+        staging.setAllowBeanDefinitionOverriding(beanFactory.isAllowBeanDefinitionOverriding());
+        staging.setBeanClassLoader(beanFactory.getBeanClassLoader());
+        source.loader.accept(staging);
+        staging.thread = Thread.currentThread().getName();
+        staging.duration = Duration.ofNanos(System.nanoTime() - start);
+        log.debug("{} 读取了 {} 个 bean 定义, 耗时 {} ms", source.description, staging.getBeanDefinitionCount(), staging.duration.toMillis());
+        return staging;
+    }
+
+    private static Staging get(Future<Staging> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("加载 bean 定义时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BeansException) {
+                throw (BeansException) e.getCause(); // 与顺序加载抛出相同的异常
+            }
+            throw new IllegalStateException("加载 bean 定义失败", e.getCause());
+        }
+    }
+
+    private int merge(Staging staging) {
+        int count = 0;
+        Map<String, String> renamed = new HashMap<>();
+        for (String beanName : staging.getBeanDefinitionNames()) {
+            BeanDefinition bd = staging.getBeanDefinition(beanName);
+            if (staging.generated.contains(beanName)) {
+                String name = DefaultBeanNameGenerator.INSTANCE.generateBeanName(bd, beanFactory);
+                renamed.put(beanName, name);
+                beanFactory.registerBeanDefinition(name, bd);
+                count++;
+                // 与 BeanDefinitionParserDelegate 相同: 生成的名字以类名开头时, 类名没被占用就作为别名
+                String className = bd.getBeanClassName();
+                if (className != null && name.startsWith(className) && name.length() > className.length()
+                    && !beanFactory.isBeanNameInUse(className)) {
+                    beanFactory.registerAlias(name, className);
+                }
+                continue;
+            }
+            if (beanFactory.containsBeanDefinition(beanName)) {
+                if (bd.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE) {
+                    continue; // 如 AnnotationConfigUtils 注册的后处理器, 顺序加载时也只注册一次
+                }
+                if (bd instanceof ScannedGenericBeanDefinition && !checkCandidate(beanName, bd)) {
+                    continue;
+                }
+            }
+            beanFactory.registerBeanDefinition(beanName, bd);
+            count++;
+        }
+        for (String[] alias : staging.aliases) {
+            if (staging.generated.contains(alias[0]) && alias[1].equals(staging.getBeanDefinition(alias[0]).getBeanClassName())) {
+                continue; // 类名别名已在上面按目标重新判断
+            }
+            beanFactory.registerAlias(renamed.getOrDefault(alias[0], alias[0]), alias[1]);
+        }
+        return count;
+    }
+
+    // 与 ClassPathBeanDefinitionScanner.checkCandidate/isCompatible 相同
+    private boolean checkCandidate(String beanName, BeanDefinition newDefinition) {
+        BeanDefinition existing = beanFactory.getBeanDefinition(beanName);
+        BeanDefinition original = existing.getOriginatingBeanDefinition();
+        if (original != null) {
+            existing = original;
+        }
+        boolean compatible = !(existing instanceof ScannedGenericBeanDefinition)
+                || (newDefinition.getSource() != null && newDefinition.getSource().equals(existing.getSource()))
+                || newDefinition.equals(existing);
+        if (!compatible) {
+            throw new ConflictingBeanDefinitionException("Annotation-specified bean name '" + beanName +
+                    "' for bean class [" + newDefinition.getBeanClassName() + "] conflicts with existing, " +
+                    "non-compatible bean definition of same name and class [" + existing.getBeanClassName() + "]");
+        }
+        return false;
+    }
+
+    private static class Source {
+        final String description;
+        final Consumer<DefaultListableBeanFactory> loader;
+
+        Source(String description, Consumer<DefaultListableBeanFactory> loader) {
+            this.description = description;
+            this.loader = loader;
+        }
+    }
+
+    // 暂存注册表, 另外按顺序记下别名
+    private static class Staging extends DefaultListableBeanFactory {
+        final Source source;
+        final List<String[]> aliases = new ArrayList<>();
+        final Set<String> generated = new HashSet<>();
+        String thread;
+        Duration duration;
+
+        Staging(Source source) {
+            this.source = source;
+        }
+
+        @Override
+        public void registerAlias(String name, String alias) {
+            super.registerAlias(name, alias);
+            aliases.add(new String[]{name, alias});
+        }
+    }
+
+    public static class LoadRecord {
+        private final String source;
+        private final String thread;
+        private final Duration duration;
+        private final int count;
+
+        LoadRecord(String source, String thread, Duration duration, int count) {
+            this.source = source;
+            this.thread = thread;
+            this.duration = duration;
+            this.count = count;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return source + " " + count + " 个, " + duration.toMillis() + " ms [" + thread + "]";
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package org.springframework.context.annotation;
+
+import com.itheima.util.BeanDefinitionCodec;
+import com.itheima.util.Fingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.SingletonBeanRegistry;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.lang.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * bean 定义注册表的快照: 同一份构建重复启动时, 跳过配置类解析、组件扫描、XML 解析和条件评估
+ * <p>
+ * 用法: refresh 之前调用 {@link #apply}, 返回 true 时说明快照有效, 调用方可以跳过扫描、XML 等加载.
+ * apply 会把 ConfigurationClassPostProcessor 换成本类的子类:
+ * <ul>
+ *     <li>快照有效时, 直接把快照里的 bean 定义注册进去, 已处理过的配置类带着 CONFIGURATION_CLASS_ATTRIBUTE,
+ *     父类因此找不到待解析的配置类而直接返回, 之后的增强(full 模式的 CGLIB 子类)照常进行</li>
+ *     <li>快照无效时, 父类照常解析, 解析后(其它 BeanDefinitionRegistryPostProcessor 执行之前)保存注册表,
+ *     refresh 成功后写入文件</li>
+ * </ul>
+ * 指纹包括类路径、profile、全部属性源(含系统属性和系统环境变量)、apply 时已注册的 bean 定义以及调用方给出的输入,
+ * 任何一项变化都会退回正常 refresh. 条件可能读取任何一个系统属性或环境变量, 无法知道读了哪些, 只能全部算进去,
+ * 代价是无关的变量变化也会让快照失效
+ * <p>
+ * 放在这个包里是为了恢复 ImportAware 所需的 ImportRegistry(包内可见); 配置类解析时 @PropertySource 会修改 Environment,
+ * 这种情况不保存快照
+ */
+public class RegistrySnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(RegistrySnapshot.class);
+
+    private static final int MAGIC = 0x52534E50;
+
+    private static final int VERSION = 3;
+
+    // 与 ConfigurationClassPostProcessor 中的私有常量相同, ImportAwareBeanPostProcessor 按这个名字找
+    private static final String IMPORT_REGISTRY_BEAN_NAME = ConfigurationClassPostProcessor.class.getName() + ".importRegistry";
+
+    private final Path file;
+
+    private final List<String> inputs;
+
+    private String fingerprint;
+
+    @Nullable
+    private Snapshot restored;
+
+    @Nullable
+    private byte[] captured;
+
+    // apply 时已注册的 bean 定义, 由调用方自己在 refresh 之前注册, 带 instanceSupplier 的可以不保存
+    private Set<String> preRegistered = Collections.emptySet();
+
+    /**
+     * @param file   快照文件
+     * @param inputs 其它影响注册表的输入, 如主类名、启动参数
+     */
+    public RegistrySnapshot(Path file, String... inputs) {
+        this.file = file;
+        this.inputs = Arrays.asList(inputs);
+    }
+
+    /**
+     * 在 refresh 之前、注册了根配置类之后调用
+     *
+     * @return 快照有效, refresh 时将直接恢复注册表, 调用方可以跳过扫描、XML 等 bean 定义的加载
+     */
+    public boolean apply(GenericApplicationContext context) {
+        fingerprint = fingerprint(context);
+        restored = load(context.getClassLoader());
+        installPostProcessor(context);
+        preRegistered = new HashSet<>(Arrays.asList(context.getBeanDefinitionNames()));
+        context.addApplicationListener(new SaveOnRefresh(context));
+        return restored != null;
+    }
+
+    public boolean isRestored() {
+        return restored != null;
+    }
+
+    private String fingerprint(GenericApplicationContext context) {
+        Fingerprint fp = new Fingerprint().add(String.valueOf(VERSION)).addClasspath();
+        inputs.forEach(fp::add);
+        ConfigurableEnvironment environment = context.getEnvironment();
+        fp.add(Arrays.toString(environment.getActiveProfiles())).add(Arrays.toString(environment.getDefaultProfiles()));
+        for (PropertySource<?> source : environment.getPropertySources()) {
+            fp.add(source.getName());
+            if (source instanceof EnumerablePropertySource) {
+                String[] keys = ((EnumerablePropertySource<?>) source).getPropertyNames().clone();
+                Arrays.sort(keys);
+                for (String key : keys) {
+                    fp.add(key).add(String.valueOf(source.getProperty(key)));
+                }
+            }
+        }
+        String[] names = context.getBeanDefinitionNames();
+        Arrays.sort(names);
+        for (String name : names) {
+            fp.add(name).add(context.getBeanDefinition(name).getBeanClassName());
+        }
+        return fp.hex();
+    }
+
+    // 替换已有的 ConfigurationClassPostProcessor 定义, 没有就注册一个
+    private void installPostProcessor(GenericApplicationContext context) {
+        String processorName = AnnotationConfigUtils.CONFIGURATION_ANNOTATION_PROCESSOR_BEAN_NAME;
+        for (String name : context.getBeanDefinitionNames()) {
+            if (ConfigurationClassPostProcessor.class.getName().equals(context.getBeanDefinition(name).getBeanClassName())) {
+                processorName = name;
+                context.removeBeanDefinition(name);
+                break;
+            }
+        }
+        RootBeanDefinition definition = new RootBeanDefinition(SnapshotPostProcessor.class, () -> new SnapshotPostProcessor(this));
+        definition.setRole(BeanDefinition.ROLE_INFRASTRUCTURE);
+        context.registerBeanDefinition(processorName, definition);
+    }
+
+    @Nullable
+    private Snapshot load(@Nullable ClassLoader classLoader) {
+        if (!Files.isRegularFile(file)) {
+            log.debug("快照 {} 不存在", file);
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.info("快照 {} 格式不符, 正常 refresh", file);
+                return null;
+            }
+            if (!fingerprint.equals(BeanDefinitionCodec.readString(in))) {
+                log.info("指纹已变化, 正常 refresh");
+                return null;
+            }
+            Snapshot snapshot = new Snapshot();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry();
+                String name = BeanDefinitionCodec.readString(in);
+                entry.beanMethodName = BeanDefinitionCodec.readString(in);
+                entry.aliases = new String[in.readInt()];
+                for (int j = 0; j < entry.aliases.length; j++) {
+                    entry.aliases[j] = BeanDefinitionCodec.readString(in);
+                }
+                entry.definition = BeanDefinitionCodec.read(in, classLoader);
+                snapshot.entries.put(name, entry);
+            }
+            int imports = in.readInt();
+            for (int i = 0; i < imports; i++) {
+                String imported = BeanDefinitionCodec.readString(in);
+                snapshot.imports.put(imported, BeanDefinitionCodec.readString(in));
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            log.warn("快照 {} 读取失败, 正常 refresh: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    private void restore(BeanDefinitionRegistry registry, @Nullable ClassLoader classLoader) {
+        for (Map.Entry<String, Entry> e : restored.entries.entrySet()) {
+            String name = e.getKey();
+            Entry entry = e.getValue();
+            if (registry.containsBeanDefinition(name)) {
+                // 启动代码自己注册的定义(根配置类、内置处理器等), 只补上解析时留下的标记
+                BeanDefinition existing = registry.getBeanDefinition(name);
+                for (String attribute : entry.definition.attributeNames()) {
+                    if (!existing.hasAttribute(attribute)) {
+                        existing.setAttribute(attribute, entry.definition.getAttribute(attribute));
+                    }
+                }
+            } else {
+                AbstractBeanDefinition definition = entry.definition;
+                if (entry.beanMethodName != null) {
+                    definition = new BeanMethodDefinition((RootBeanDefinition) definition, entry.beanMethodName);
+                }
+                registry.registerBeanDefinition(name, definition);
+            }
+            for (String alias : entry.aliases) {
+                if (!registry.isAlias(alias) && !registry.containsBeanDefinition(alias)) {
+                    registry.registerAlias(name, alias);
+                }
+            }
+        }
+        if (registry instanceof SingletonBeanRegistry && !((SingletonBeanRegistry) registry).containsSingleton(IMPORT_REGISTRY_BEAN_NAME)) {
+            ((SingletonBeanRegistry) registry).registerSingleton(IMPORT_REGISTRY_BEAN_NAME,
+                    new RestoredImportRegistry(restored.imports, new CachingMetadataReaderFactory(classLoader)));
+        }
+        log.info("从快照恢复了 {} 个 bean 定义", restored.entries.size());
+    }
+
+    /*
+        只保存注册表里现有的定义. 带 instanceSupplier 的定义无法保存: 调用方在 apply 之前注册的, 每次启动都会重新注册, 跳过即可;
+        解析配置类时注册的(如 ImportBeanDefinitionRegistrar 用 registerBean 注册), 恢复时就丢了, 这种情况不保存快照
+     */
+    private void capture(BeanDefinitionRegistry registry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            BeanDefinitionCodec.writeString(out, fingerprint);
+            List<String> names = new ArrayList<>();
+            for (String name : registry.getBeanDefinitionNames()) {
+                BeanDefinition definition = registry.getBeanDefinition(name);
+                if (definition instanceof AbstractBeanDefinition && ((AbstractBeanDefinition) definition).getInstanceSupplier() != null) {
+                    if (!preRegistered.contains(name)) {
+                        log.info("bean {} 的定义带 instanceSupplier, 不是 refresh 之前注册的, 不保存快照", name);
+                        return;
+                    }
+                    continue;
+                }
+                names.add(name);
+            }
+            out.writeInt(names.size());
+            Map<String, String> imports = new LinkedHashMap<>();
+            ImportRegistry importRegistry = registry instanceof SingletonBeanRegistry
+                    ? (ImportRegistry) ((SingletonBeanRegistry) registry).getSingleton(IMPORT_REGISTRY_BEAN_NAME) : null;
+            for (String name : names) {
+                BeanDefinition definition = registry.getBeanDefinition(name);
+                BeanDefinitionCodec.writeString(out, name);
+                BeanDefinitionCodec.writeString(out, beanMethodName(definition));
+                String[] aliases = registry.getAliases(name);
+                out.writeInt(aliases.length);
+                for (String alias : aliases) {
+                    BeanDefinitionCodec.writeString(out, alias);
+                }
+                BeanDefinitionCodec.write(out, definition);
+
+                String className = definition.getBeanClassName();
+                if (importRegistry != null && className != null
+                    && definition.getAttribute(ConfigurationClassUtils.CONFIGURATION_CLASS_ATTRIBUTE) != null) {
+                    AnnotationMetadata importing = importRegistry.getImportingClassFor(className);
+                    if (importing != null) {
+                        imports.put(className, importing.getClassName());
+                    }
+                }
+            }
+            out.writeInt(imports.size());
+            for (Map.Entry<String, String> entry : imports.entrySet()) {
+                BeanDefinitionCodec.writeString(out, entry.getKey());
+                BeanDefinitionCodec.writeString(out, entry.getValue());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.info("注册表无法保存为快照: {}", e.getMessage());
+            return;
+        }
+        captured = bytes.toByteArray();
+    }
+
+    // @Bean 方法产生的定义: 恢复时仍要求工厂方法带 @Bean 且名字对应, 以区分重载
+    @Nullable
+    private static String beanMethodName(BeanDefinition definition) {
+        if (!(definition instanceof AnnotatedBeanDefinition) || !(definition instanceof RootBeanDefinition)) {
+            return null;
+        }
+        MethodMetadata method = ((AnnotatedBeanDefinition) definition).getFactoryMethodMetadata();
+        if (method == null) {
+            return null;
+        }
+        Map<String, Object> bean = method.getAnnotationAttributes(Bean.class.getName());
+        String[] names = bean != null ? (String[]) bean.get("name") : null;
+        return names != null && names.length > 0 ? names[0] : method.getMethodName();
+    }
+
+    private void save() {
+        if (captured == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(temp, captured);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("注册表快照已保存到 {}, {} 字节", file, captured.length);
+        } catch (IOException e) {
+            log.warn("注册表快照保存失败: {}", e.toString());
+        } finally {
+            captured = null;
+        }
+    }
+
+    private static List<String> propertySourceNames(@Nullable Environment environment) {
+        List<String> names = new ArrayList<>();
+        if (environment instanceof ConfigurableEnvironment) {
+            for (PropertySource<?> source : ((ConfigurableEnvironment) environment).getPropertySources()) {
+                names.add(source.getName());
+            }
+        }
+        return names;
+    }
+
+    private static class Snapshot {
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        final Map<String, String> imports = new LinkedHashMap<>();
+    }
+
+    private static class Entry {
+        @Nullable
+        String beanMethodName;
+        String[] aliases;
+        AbstractBeanDefinition definition;
+    }
+
+    static class SnapshotPostProcessor extends ConfigurationClassPostProcessor {
+        private final RegistrySnapshot snapshot;
+        @Nullable
+        private Environment environment;
+        @Nullable
+        private ClassLoader classLoader;
+
+        SnapshotPostProcessor(RegistrySnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            super.setEnvironment(environment);
+            this.environment = environment;
+        }
+
+        @Override
+        public void setBeanClassLoader(ClassLoader beanClassLoader) {
+            super.setBeanClassLoader(beanClassLoader);
+            this.classLoader = beanClassLoader;
+        }
+
+        @Override
+        public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+            if (snapshot.restored != null) {
+                snapshot.restore(registry, classLoader);
+                super.postProcessBeanDefinitionRegistry(registry); // 已全部标记为处理过, 父类直接返回
+                return;
+            }
+            List<String> sources = propertySourceNames(environment);
+            super.postProcessBeanDefinitionRegistry(registry);
+            if (!sources.equals(propertySourceNames(environment))) {
+                log.info("配置类解析时修改了 Environment(@PropertySource), 不保存快照");
+                return;
+            }
+            snapshot.capture(registry);
+        }
+    }
+
+    /**
+     * 恢复的 @Bean 方法定义, 与 ConfigurationClassBeanDefinition 一样匹配工厂方法
+     */
+    @SuppressWarnings("serial")
+    private static class BeanMethodDefinition extends RootBeanDefinition {
+        private final String derivedBeanName;
+
+        BeanMethodDefinition(RootBeanDefinition original, String derivedBeanName) {
+            super(original);
+            this.derivedBeanName = derivedBeanName;
+        }
+
+        @Override
+        public boolean isFactoryMethod(Method candidate) {
+            return super.isFactoryMethod(candidate) && BeanAnnotationHelper.isBeanAnnotated(candidate)
+                   && BeanAnnotationHelper.determineBeanNameFor(candidate).equals(derivedBeanName);
+        }
+
+        @Override
+        public RootBeanDefinition cloneBeanDefinition() {
+            return new BeanMethodDefinition(this, derivedBeanName);
+        }
+    }
+
+    /**
+     * 被导入的类 -> 导入它的类, 元数据用到时才读取
+     */
+    private static class RestoredImportRegistry implements ImportRegistry {
+        private final Map<String, String> imports;
+        private final MetadataReaderFactory metadataReaderFactory;
+
+        RestoredImportRegistry(Map<String, String> imports, MetadataReaderFactory metadataReaderFactory) {
+            this.imports = new LinkedHashMap<>(imports);
+            this.metadataReaderFactory = metadataReaderFactory;
+        }
+
+        @Override
+        @Nullable
+        public AnnotationMetadata getImportingClassFor(String importedClass) {
+            String importing = imports.get(importedClass);
+            if (importing == null) {
+                return null;
+            }
+            try {
+                return metadataReaderFactory.getMetadataReader(importing).getAnnotationMetadata();
+            } catch (IOException e) {
+                throw new IllegalStateException("无法读取 " + importing + " 的元数据", e);
+            }
+        }
+
+        @Override
+        public void removeImportingClass(String importingClass) {
+            imports.values().removeIf(importingClass::equals);
+        }
+    }
+
+    private class SaveOnRefresh implements ApplicationListener<ContextRefreshedEvent> {
+        private final GenericApplicationContext context;
+
+        SaveOnRefresh(GenericApplicationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void onApplicationEvent(ContextRefreshedEvent event) {
+            if (event.getApplicationContext() == context) {
+                save();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.springframework.core.env;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * 取属性未解析嵌套占位符的原始值
+ * <p>
+ * AbstractPropertyResolver#getPropertyAsRawString 是 protected 的, 所以放在这个包里
+ */
+public abstract class RawPropertyAccessor {
+
+    private RawPropertyAccessor() {
+    }
+
+    public static boolean supports(PropertyResolver resolver) {
+        return resolver instanceof AbstractPropertyResolver;
+    }
+
+    /**
+     * 按 resolver 自己的规则(优先级、宽松名称)查找, 但不解析值中的占位符
+     */
+    @Nullable
+    public static String getRawProperty(PropertyResolver resolver, String key) {
+        return ((AbstractPropertyResolver) resolver).getPropertyAsRawString(key);
+    }
+}
@@ -0,0 +1,170 @@
+package org.springframework.core.io.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.UrlResource;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 预先合并的 spring.factories 索引
+ * <p>
+ * SpringFactoriesLoader 第一次使用某个类加载器时, 要枚举类路径上每个 jar 的 META-INF/spring.factories 并逐个解析,
+ * 依赖多的 fat jar 上这一步不便宜. 这里分成两步:
+ * <ul>
+ *     <li>构建时 {@link #main} 把当前类路径上的所有 spring.factories 合并成一个文件 {@value #INDEX_LOCATION},
+ *     放进应用自己的输出目录, 随应用打包. 键排好序, 每个键的实现类保持类路径顺序并去重, 与 SpringFactoriesLoader 的结果相同</li>
+ *     <li>运行时 {@link #install} 只查找这一个资源, 把解析结果放进 SpringFactoriesLoader 的缓存(包内可见),
+ *     之后 SpringApplication、AutoConfigurationImportSelector 等所有调用方都直接命中缓存</li>
+ * </ul>
+ * SpringApplication 的构造方法就会读取 spring.factories(初始化器、监听器), 所以必须在它之前安装:
+ * 用 {@link #run} 代替 SpringApplication.run, 或者在 main 的第一行调用 install
+ * 索引按构建时的类路径生成, 运行时不再核对; 类路径变了(如开发时增减依赖)需要重新生成,
+ * 或者用 -Dspring.factories.index.ignore=true 退回逐个 jar 读取
+ */
+public final class IndexedSpringFactoriesLoader {
+
+    public static final String INDEX_LOCATION = "META-INF/spring.factories.idx";
+
+    public static final String IGNORE_PROPERTY = "spring.factories.index.ignore";
+
+    private static final Logger log = LoggerFactory.getLogger(IndexedSpringFactoriesLoader.class);
+
+    private IndexedSpringFactoriesLoader() {
+    }
+
+    /**
+     * 与 {@link SpringFactoriesLoader#loadFactoryNames} 相同, 有索引时优先使用索引
+     */
+    public static List<String> loadFactoryNames(Class<?> factoryType, @Nullable ClassLoader classLoader) {
+        install(classLoader);
+        return SpringFactoriesLoader.loadFactoryNames(factoryType, classLoader);
+    }
+
+    /**
+     * 与 {@link SpringFactoriesLoader#loadFactories} 相同, 有索引时优先使用索引
+     */
+    public static <T> List<T> loadFactories(Class<T> factoryType, @Nullable ClassLoader classLoader) {
+        install(classLoader);
+        return SpringFactoriesLoader.loadFactories(factoryType, classLoader);
+    }
+
+    /**
+     * 先安装索引, 再与 {@link SpringApplication#run(Class, String...)} 相同地启动
+     */
+    public static ConfigurableApplicationContext run(Class<?> primarySource, String... args) {
+        install(ClassUtils.getDefaultClassLoader()); // 与 SpringApplication 使用的类加载器相同
+        return SpringApplication.run(primarySource, args);
+    }
+
+    /**
+     * 用索引填充 SpringFactoriesLoader 对这个类加载器的缓存
+     *
+     * @return 是否使用了索引; 缓存已存在、找不到索引或被禁用时返回 false
+     */
+    public static boolean install(@Nullable ClassLoader classLoader) {
+        ClassLoader classLoaderToUse = classLoader != null ? classLoader : SpringFactoriesLoader.class.getClassLoader();
+        if (SpringFactoriesLoader.cache.containsKey(classLoaderToUse) || Boolean.getBoolean(IGNORE_PROPERTY)) {
+            return false;
+        }
+        URL url = classLoaderToUse.getResource(INDEX_LOCATION);
+        if (url == null) {
+            return false;
+        }
+        Map<String, List<String>> factories = new HashMap<>();
+        try {
+            Properties properties = PropertiesLoaderUtils.loadProperties(new UrlResource(url));
+            for (String factoryTypeName : properties.stringPropertyNames()) {
+                String[] names = StringUtils.commaDelimitedListToStringArray(properties.getProperty(factoryTypeName));
+                List<String> implementations = new ArrayList<>(names.length);
+                for (String name : names) {
+                    implementations.add(name.trim());
+                }
+                factories.put(factoryTypeName.trim(), Collections.unmodifiableList(implementations));
+            }
+        } catch (IOException e) {
+            log.warn("读取 {} 失败, 退回逐个读取 spring.factories", url, e);
+            return false;
+        }
+        // 并发时别的线程可能已经按原来的方式填好了, 结果相同, 不覆盖
+        boolean installed = SpringFactoriesLoader.cache.putIfAbsent(classLoaderToUse, factories) == null;
+        log.debug("从 {} 加载了 {} 种工厂", url, factories.size());
+        return installed;
+    }
+
+    /**
+     * 构建步骤: 合并当前类路径上的所有 spring.factories, 写到 args[0] 目录下的 {@value #INDEX_LOCATION}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("用法: IndexedSpringFactoriesLoader <输出目录, 如 target/classes>");
+            System.exit(2);
+        }
+        Path output = Paths.get(args[0]).resolve(INDEX_LOCATION);
+        ClassLoader classLoader = IndexedSpringFactoriesLoader.class.getClassLoader();
+        List<URL> sources = new ArrayList<>();
+        Map<String, Set<String>> merged = merge(classLoader, sources);
+        write(output, merged, sources);
+        System.out.printf("合并了 %d 个 spring.factories, 共 %d 种工厂, 写入 %s%n", sources.size(), merged.size(), output);
+    }
+
+    // 与 SpringFactoriesLoader.loadSpringFactories 的合并方式相同: 按类路径顺序, 同一个键下去重
+    static Map<String, Set<String>> merge(ClassLoader classLoader, List<URL> sources) throws IOException {
+        Map<String, Set<String>> merged = new TreeMap<>();
+        Enumeration<URL> urls = classLoader.getResources(SpringFactoriesLoader.FACTORIES_RESOURCE_LOCATION);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            sources.add(url);
+            Properties properties = PropertiesLoaderUtils.loadProperties(new UrlResource(url));
+            for (Map.Entry<?, ?> entry : properties.entrySet()) {
+                Set<String> implementations = merged.computeIfAbsent(((String) entry.getKey()).trim(), k -> new LinkedHashSet<>());
+                for (String name : StringUtils.commaDelimitedListToStringArray((String) entry.getValue())) {
+                    implementations.add(name.trim());
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static void write(Path output, Map<String, Set<String>> merged, List<URL> sources) throws IOException {
+        Files.createDirectories(output.getParent());
+        Path tmp = Files.createTempFile(output.getParent(), "spring.factories", ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) { // 注释以外都是 ASCII, 按 ISO-8859-1 读取也一样
+            writer.write("# 由 " + IndexedSpringFactoriesLoader.class.getName() + " 生成, 请勿手工修改\n");
+            for (URL source : sources) {
+                writer.write("# " + source + "\n");
+            }
+            for (Map.Entry<String, Set<String>> entry : merged.entrySet()) {
+                writer.write("\n" + entry.getKey() + "=");
+                for (Iterator<String> it = entry.getValue().iterator(); it.hasNext(); ) {
+                    writer.write("\\\n" + it.next() + (it.hasNext() ? "," : ""));
+                }
+                writer.write("\n");
+            }
+        }
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}